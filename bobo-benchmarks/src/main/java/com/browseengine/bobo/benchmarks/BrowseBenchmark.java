@@ -0,0 +1,85 @@
+package com.browseengine.bobo.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.api.FacetSpec.FacetSortSpec;
+
+/**
+ * Browses with facets on <code>color</code>, <code>category</code> and <code>tag</code>, with
+ * <code>postFilters</code> of them selected. Selections of expanded facets are not pre filters but
+ * post filters of {@link com.browseengine.bobo.search.BoboSearcher#search}, so this covers the
+ * search loop with 0, 1 or N facet validators and the facet counting of the hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BrowseBenchmark {
+  private static final String[] FACETS = { SyntheticIndex.COLOR, SyntheticIndex.CATEGORY,
+      SyntheticIndex.TAG };
+
+  @Param({ "0", "1", "3" })
+  public int postFilters;
+
+  private BoboBrowser _browser;
+
+  @Setup(Level.Trial)
+  public void setUp(SyntheticIndex index) throws IOException {
+    _browser = new BoboBrowser(index.getBoboReader());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    // releases the references the browser holds on the segment readers
+    _browser.close();
+  }
+
+  @Benchmark
+  public int browse() throws Exception {
+    BrowseRequest req = new BrowseRequest();
+    req.setQuery(SyntheticIndex.liveQuery());
+    req.setCount(10);
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    spec.setMaxCount(10);
+    spec.setExpandSelection(true);
+    for (int i = 0; i < FACETS.length; ++i) {
+      req.setFacetSpec(FACETS[i], spec);
+      if (i < postFilters) {
+        BrowseSelection sel = new BrowseSelection(FACETS[i]);
+        sel.addValue(SyntheticIndex.value(0));
+        sel.addValue(SyntheticIndex.value(1));
+        req.addSelection(sel);
+      }
+    }
+    BrowseResult result = _browser.browse(req);
+    int numHits = result.getNumHits();
+    for (String name : FACETS) {
+      numHits += result.getFacetAccessor(name).getFacets().size();
+    }
+    result.close();
+    return numHits;
+  }
+}
@@ -0,0 +1,95 @@
+package com.browseengine.bobo.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.api.FacetAccessible;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.api.FacetSpec.FacetSortSpec;
+import com.browseengine.bobo.facets.CombinedFacetAccessible;
+import com.browseengine.bobo.facets.FacetCountCollector;
+import com.browseengine.bobo.facets.FacetCountCollectorSource;
+import com.browseengine.bobo.facets.FacetHandler;
+
+/**
+ * Facet counting and merging: {@link FacetCountCollector#collect(int)} of every document of every
+ * segment, and {@link CombinedFacetAccessible#getFacets()} of the segment counts, with or without
+ * the global ordinals of the facet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FacetCountBenchmark {
+  @Param({ SyntheticIndex.COLOR, SyntheticIndex.TAG })
+  public String facet;
+
+  @Param({ "10", "0" })
+  public int maxCount;
+
+  @Param({ "false", "true" })
+  public boolean globalOrdinals;
+
+  private FacetSpec _spec;
+  private List<FacetAccessible> _counts;
+
+  @Setup(Level.Trial)
+  public void setUp(SyntheticIndex index) {
+    _spec = new FacetSpec();
+    _spec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    _spec.setMaxCount(maxCount);
+    _counts = new ArrayList<>();
+    for (FacetCountCollector collector : countSegments(index.getBoboReader())) {
+      _counts.add(collector);
+    }
+  }
+
+  @Benchmark
+  public List<FacetCountCollector> collect(SyntheticIndex index) {
+    return countSegments(index.getBoboReader());
+  }
+
+  @Benchmark
+  public int merge(SyntheticIndex index) {
+    CombinedFacetAccessible merged = new CombinedFacetAccessible(_spec, _counts);
+    if (globalOrdinals) {
+      merged.setGlobalOrdinalMap(index.getBoboReader().getGlobalOrdinalMap(facet));
+    }
+    return merged.getFacets().size();
+  }
+
+  private List<FacetCountCollector> countSegments(BoboMultiReader reader) {
+    List<FacetCountCollector> collectors = new ArrayList<>();
+    int docBase = 0;
+    for (BoboSegmentReader segment : reader.getSubReaders()) {
+      FacetHandler<?> handler = segment.getFacetHandler(facet);
+      FacetCountCollectorSource source = handler.getFacetCountCollectorSource(null, _spec);
+      FacetCountCollector collector = source.getFacetCountCollector(segment, docBase);
+      int maxDoc = segment.maxDoc();
+      for (int doc = 0; doc < maxDoc; ++doc) {
+        collector.collect(doc);
+      }
+      collectors.add(collector);
+      docBase += maxDoc;
+    }
+    return collectors;
+  }
+}
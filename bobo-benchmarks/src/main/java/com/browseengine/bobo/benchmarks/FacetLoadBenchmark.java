@@ -0,0 +1,57 @@
+package com.browseengine.bobo.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.AtomicReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
+import com.browseengine.bobo.facets.data.TermListFactory;
+
+/**
+ * Loading of the facet data of every segment: {@link FacetDataCache#load} of the single valued
+ * <code>color</code> and {@link MultiValueFacetDataCache#load} of the multi valued
+ * <code>tag</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FacetLoadBenchmark {
+  @Benchmark
+  public List<FacetDataCache<String>> loadSingleValue(SyntheticIndex index) throws IOException {
+    List<FacetDataCache<String>> caches = new ArrayList<>();
+    for (AtomicReader segment : index.getSegments()) {
+      FacetDataCache<String> cache = new FacetDataCache<>();
+      cache.load(SyntheticIndex.COLOR, segment, TermListFactory.StringListFactory);
+      caches.add(cache);
+    }
+    return caches;
+  }
+
+  @Benchmark
+  public List<MultiValueFacetDataCache<String>> loadMultiValue(SyntheticIndex index)
+      throws IOException {
+    List<MultiValueFacetDataCache<String>> caches = new ArrayList<>();
+    for (AtomicReader segment : index.getSegments()) {
+      MultiValueFacetDataCache<String> cache = new MultiValueFacetDataCache<>();
+      cache.load(SyntheticIndex.TAG, segment, TermListFactory.StringListFactory);
+      caches.add(cache);
+    }
+    return caches;
+  }
+}
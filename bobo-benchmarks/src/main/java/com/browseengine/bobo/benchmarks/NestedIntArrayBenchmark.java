@@ -0,0 +1,90 @@
+package com.browseengine.bobo.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
+import com.browseengine.bobo.util.BigNestedIntArray;
+
+/**
+ * Lookups in the {@link BigNestedIntArray} of the multi valued <code>tag</code> over all
+ * documents: reading the values, counting them and testing for the most frequent value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NestedIntArrayBenchmark {
+  private List<MultiValueFacetDataCache<?>> _caches;
+
+  @Setup(Level.Trial)
+  public void setUp(SyntheticIndex index) {
+    _caches = new ArrayList<>();
+    for (BoboSegmentReader segment : index.getBoboReader().getSubReaders()) {
+      _caches.add((MultiValueFacetDataCache<?>) segment.getFacetData(SyntheticIndex.TAG));
+    }
+  }
+
+  @Benchmark
+  public long getData() {
+    long sum = 0;
+    int[] buf = new int[BigNestedIntArray.MAX_ITEMS];
+    for (MultiValueFacetDataCache<?> cache : _caches) {
+      BigNestedIntArray array = cache._nestedArray;
+      int size = array.size();
+      for (int doc = 0; doc < size; ++doc) {
+        int n = array.getData(doc, buf);
+        for (int i = 0; i < n; ++i) {
+          sum += buf[i];
+        }
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int[] count() {
+    int[] counts = null;
+    for (MultiValueFacetDataCache<?> cache : _caches) {
+      BigNestedIntArray array = cache._nestedArray;
+      counts = new int[cache.valArray.size()];
+      int size = array.size();
+      for (int doc = 0; doc < size; ++doc) {
+        array.countNoReturn(doc, counts);
+      }
+    }
+    return counts;
+  }
+
+  @Benchmark
+  public int contains() {
+    int found = 0;
+    for (MultiValueFacetDataCache<?> cache : _caches) {
+      BigNestedIntArray array = cache._nestedArray;
+      int value = cache.valArray.indexOf(SyntheticIndex.value(0));
+      int size = array.size();
+      for (int doc = 0; doc < size; ++doc) {
+        if (array.contains(doc, value)) {
+          found++;
+        }
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,69 @@
+package com.browseengine.bobo.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.SortField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+
+/**
+ * Top K of the hits by <code>price</code> with {@link com.browseengine.bobo.sort.SortCollectorImpl},
+ * without facets, optionally grouped by <code>color</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortBenchmark {
+  @Param({ "10", "1000" })
+  public int count;
+
+  @Param({ "", SyntheticIndex.COLOR })
+  public String groupBy;
+
+  private BoboBrowser _browser;
+
+  @Setup(Level.Trial)
+  public void setUp(SyntheticIndex index) throws IOException {
+    _browser = new BoboBrowser(index.getBoboReader());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    // releases the references the browser holds on the segment readers
+    _browser.close();
+  }
+
+  @Benchmark
+  public int topDocs() throws Exception {
+    BrowseRequest req = new BrowseRequest();
+    req.setQuery(SyntheticIndex.liveQuery());
+    req.setCount(count);
+    req.setSort(new SortField[] { new SortField(SyntheticIndex.PRICE, SortField.Type.CUSTOM, false) });
+    if (!groupBy.isEmpty()) {
+      req.setGroupBy(new String[] { groupBy });
+    }
+    BrowseResult result = _browser.browse(req);
+    int numHits = result.getHits().length;
+    result.close();
+    return numHits;
+  }
+}
@@ -0,0 +1,183 @@
+package com.browseengine.bobo.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+/**
+ * Synthetic index shared by the benchmarks of a trial. Documents have the fields:
+ * <ul>
+ * <li><code>color</code>: one value out of <code>cardinality</code>,</li>
+ * <li><code>category</code>: one value out of <code>cardinality / 10</code>,</li>
+ * <li><code>tag</code>: one to four values out of <code>cardinality</code>,</li>
+ * <li><code>price</code>: a zero padded number, for sorting,</li>
+ * <li><code>live</code>: "true" on 90% of the documents, queried so that browsing does not take
+ * the match all path.</li>
+ * </ul>
+ * Values are drawn from a Zipf distribution with exponent <code>skew</code>, 0 being uniform,
+ * value <code>v0000000</code> is the most frequent one. The documents are split evenly in
+ * <code>numSegments</code> segments, which are not merged.
+ */
+@State(Scope.Benchmark)
+public class SyntheticIndex {
+  public static final String COLOR = "color";
+  public static final String CATEGORY = "category";
+  public static final String TAG = "tag";
+  public static final String PRICE = "price";
+  public static final String LIVE = "live";
+
+  @Param({ "100000" })
+  public int numDocs;
+
+  @Param({ "1", "8" })
+  public int numSegments;
+
+  @Param({ "1000" })
+  public int cardinality;
+
+  @Param({ "0", "1" })
+  public double skew;
+
+  private Directory _directory;
+  private DirectoryReader _reader;
+  private BoboMultiReader _boboReader;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    _directory = new RAMDirectory();
+    int docsPerSegment = (numDocs + numSegments - 1) / numSegments;
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new KeywordAnalyzer());
+    config.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+    config.setMaxBufferedDocs(docsPerSegment + 1);
+    config.setRAMBufferSizeMB(1024);
+    IndexWriter writer = new IndexWriter(_directory, config);
+
+    Random rand = new Random(42);
+    Zipf values = new Zipf(cardinality, skew);
+    Zipf categories = new Zipf(Math.max(1, cardinality / 10), skew);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField(COLOR, value(values.next(rand)), Store.NO));
+      doc.add(new StringField(CATEGORY, value(categories.next(rand)), Store.NO));
+      int numTags = 1 + rand.nextInt(4);
+      for (int j = 0; j < numTags; ++j) {
+        doc.add(new StringField(TAG, value(values.next(rand)), Store.NO));
+      }
+      doc.add(new StringField(PRICE, value(rand.nextInt(1000000)), Store.NO));
+      doc.add(new StringField(LIVE, rand.nextInt(10) == 0 ? "false" : "true", Store.NO));
+      writer.addDocument(doc);
+      if ((i + 1) % docsPerSegment == 0) {
+        writer.commit();
+      }
+    }
+    writer.close();
+
+    _reader = DirectoryReader.open(_directory);
+    _boboReader = BoboMultiReader.getInstance(_reader, createFacetHandlers());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    _boboReader.close();
+    _reader.close();
+    _directory.close();
+  }
+
+  /**
+   * @return new handlers of the facets of the index.
+   */
+  public static List<FacetHandler<?>> createFacetHandlers() {
+    return new ArrayList<>(Arrays.asList(new FacetHandler<?>[] { new SimpleFacetHandler(COLOR),
+        new SimpleFacetHandler(CATEGORY), new MultiValueFacetHandler(TAG),
+        new SimpleFacetHandler(PRICE) }));
+  }
+
+  /**
+   * @param n rank of a value, 0 being the most frequent one.
+   * @return indexed value.
+   */
+  public static String value(int n) {
+    return String.format("v%07d", n);
+  }
+
+  /**
+   * @return query matching 90% of the documents.
+   */
+  public static Query liveQuery() {
+    return new TermQuery(new Term(LIVE, "true"));
+  }
+
+  public Directory getDirectory() {
+    return _directory;
+  }
+
+  /**
+   * @return the segments of the index, without facet data.
+   */
+  public List<AtomicReader> getSegments() {
+    List<AtomicReader> segments = new ArrayList<>();
+    for (AtomicReaderContext ctx : _reader.leaves()) {
+      segments.add(ctx.reader());
+    }
+    return segments;
+  }
+
+  /**
+   * @return the index with the facet data of {@link #createFacetHandlers()} loaded.
+   */
+  public BoboMultiReader getBoboReader() {
+    return _boboReader;
+  }
+
+  /**
+   * Draws ranks from a Zipf distribution by binary search on the cumulative weights.
+   */
+  private static final class Zipf {
+    private final double[] _cumulative;
+
+    Zipf(int n, double exponent) {
+      _cumulative = new double[n];
+      double sum = 0;
+      for (int i = 0; i < n; ++i) {
+        sum += 1.0 / Math.pow(i + 1, exponent);
+        _cumulative[i] = sum;
+      }
+    }
+
+    int next(Random rand) {
+      double r = rand.nextDouble() * _cumulative[_cumulative.length - 1];
+      int pos = Arrays.binarySearch(_cumulative, r);
+      return Math.min(pos < 0 ? -pos - 1 : pos, _cumulative.length - 1);
+    }
+  }
+}
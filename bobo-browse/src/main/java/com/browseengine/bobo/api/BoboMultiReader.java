@@ -27,17 +27,40 @@ package com.browseengine.bobo.api;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.Term;
 
 import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.data.AbstractTermStringList;
+import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.FacetDataSnapshotStore;
+import com.browseengine.bobo.facets.data.GlobalOrdinalMap;
 
 public class BoboMultiReader extends FilterDirectoryReader {
 
 	protected List<BoboSegmentReader> _subReaders = new ArrayList<>();
+	protected final Collection<FacetHandler<?>> _facetHandlers;
+	protected final FacetDataSnapshotStore _snapshotStore;
+	// global ordinal maps by facet name, each built once by the first thread asking for it
+	private final ConcurrentMap<String, FutureTask<GlobalOrdinalMap>> _globalOrdinalMaps =
+			new ConcurrentHashMap<>();
 
 	/**
 	 * Factory.
@@ -57,6 +80,182 @@ public class BoboMultiReader extends FilterDirectoryReader {
 		return boboReader;
 	}
 
+	/**
+	 * Factory loading the facet data on the given executor. Handlers that do not depend on each
+	 * other are loaded concurrently, on all segments at once, handlers are only loaded after the
+	 * handlers they depend on. The executor should be bounded, it is not shut down.
+	 *
+	 * @param reader        Index reader.
+	 * @param facetHandlers .
+	 * @param executor      executor to load the facet data on.
+	 * @return new instance each time.
+	 * @throws IOException io.
+	 */
+	public static BoboMultiReader getInstance(DirectoryReader reader,
+			Collection<FacetHandler<?>> facetHandlers, ExecutorService executor) throws IOException {
+		return getInstance(reader, facetHandlers, executor, null);
+	}
+
+	/**
+	 * Factory keeping the facet data in snapshot files, segments that have a valid snapshot map
+	 * it instead of loading from the index, the others write one once loaded. Readers reopened
+	 * with {@link #openIfChanged(BoboMultiReader, DirectoryReader)} use the same store.
+	 *
+	 * @param reader        Index reader.
+	 * @param facetHandlers .
+	 * @param executor      executor to load the facet data on, null to load on the calling thread.
+	 * @param snapshotStore store of the facet data snapshots, null for none.
+	 * @return new instance each time.
+	 * @throws IOException io.
+	 */
+	public static BoboMultiReader getInstance(DirectoryReader reader,
+			Collection<FacetHandler<?>> facetHandlers, ExecutorService executor,
+			FacetDataSnapshotStore snapshotStore) throws IOException {
+		BoboMultiReader boboReader = new BoboMultiReader(reader, facetHandlers, snapshotStore);
+		if (executor == null) {
+			boboReader.facetInit();
+		} else {
+			boboReader.facetInit(Collections.<Object, BoboSegmentReader> emptyMap(), executor);
+		}
+		return boboReader;
+	}
+
+	/**
+	 * Wraps a reopened reader, reusing the facet data of the segments whose core has not changed
+	 * since <code>previous</code> was opened. Only newly flushed or merged segments load their
+	 * facet data from the index. The previous reader stays open and is still owned by the caller.
+	 *
+	 * @param previous  bobo reader opened on an earlier point in time of the same index.
+	 * @param newReader reopened directory reader, e.g. from {@link DirectoryReader#openIfChanged}.
+	 * @return new instance sharing the facet data of unchanged segments.
+	 * @throws IOException io.
+	 */
+	public static BoboMultiReader openIfChanged(BoboMultiReader previous, DirectoryReader newReader)
+			throws IOException {
+		return openIfChanged(previous, newReader, null);
+	}
+
+	/**
+	 * Same as {@link #openIfChanged(BoboMultiReader, DirectoryReader)}, the facet data of new
+	 * segments is loaded on the given executor.
+	 *
+	 * @param previous  bobo reader opened on an earlier point in time of the same index.
+	 * @param newReader reopened directory reader.
+	 * @param executor  executor to load the facet data on, null to load on the calling thread.
+	 * @return new instance sharing the facet data of unchanged segments.
+	 * @throws IOException io.
+	 */
+	public static BoboMultiReader openIfChanged(BoboMultiReader previous, DirectoryReader newReader,
+			ExecutorService executor) throws IOException {
+		BoboMultiReader boboReader = new BoboMultiReader(newReader, previous._facetHandlers,
+				previous._snapshotStore);
+		Map<Object, BoboSegmentReader> previousSegments = new HashMap<>();
+		for (BoboSegmentReader r : previous._subReaders) {
+			previousSegments.put(r.getInnerReader().getCoreCacheKey(), r);
+		}
+		if (executor == null) {
+			boboReader.facetInit(previousSegments);
+		} else {
+			boboReader.facetInit(previousSegments, executor);
+		}
+		// build the global ordinals in use before the new generation is published, extending the
+		// maps of the previous one
+		for (Map.Entry<String, FutureTask<GlobalOrdinalMap>> entry : previous._globalOrdinalMaps
+				.entrySet()) {
+			FutureTask<GlobalOrdinalMap> task = entry.getValue();
+			if (!task.isDone()) {
+				// still being built, left to the first use
+				continue;
+			}
+			GlobalOrdinalMap map = previous.getGlobalOrdinalMap(entry.getKey(), task);
+			if (map != null) {
+				FutureTask<GlobalOrdinalMap> extended = boboReader.newGlobalOrdinalMapTask(
+						entry.getKey(), map);
+				boboReader._globalOrdinalMaps.put(entry.getKey(), extended);
+				extended.run();
+			}
+		}
+		return boboReader;
+	}
+
+	/**
+	 * Reopens the underlying directory reader and wraps it the same way as
+	 * {@link #openIfChanged(BoboMultiReader, DirectoryReader)}.
+	 *
+	 * @param previous bobo reader to refresh.
+	 * @return new instance, or null if the index has not changed.
+	 * @throws IOException io.
+	 */
+	public static BoboMultiReader openIfChanged(BoboMultiReader previous) throws IOException {
+		DirectoryReader newReader = DirectoryReader.openIfChanged(previous.in);
+		if (newReader == null) {
+			return null;
+		}
+		return openIfChanged(previous, newReader);
+	}
+
+	/**
+	 * Gets the global ordinals of the values of a facet over all segments. Maps in use are built
+	 * when a reader is reopened, others on first use. Threads asking for a map being built wait
+	 * for it, the maps of other facets are not blocked.
+	 *
+	 * @param name facet name.
+	 * @return map, or null if the facet data of the segments is not a {@link FacetDataCache} with
+	 *         an {@link AbstractTermStringList} dictionary, the only ones top facets are merged on.
+	 */
+	public GlobalOrdinalMap getGlobalOrdinalMap(String name) {
+		FutureTask<GlobalOrdinalMap> task = _globalOrdinalMaps.get(name);
+		if (task == null) {
+			FutureTask<GlobalOrdinalMap> newTask = newGlobalOrdinalMapTask(name, null);
+			task = _globalOrdinalMaps.putIfAbsent(name, newTask);
+			if (task == null) {
+				task = newTask;
+				task.run();
+			}
+		}
+		return getGlobalOrdinalMap(name, task);
+	}
+
+	private GlobalOrdinalMap getGlobalOrdinalMap(String name, FutureTask<GlobalOrdinalMap> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			// the map only speeds up merging, go without it
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			// the next call tries again
+			_globalOrdinalMaps.remove(name, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private FutureTask<GlobalOrdinalMap> newGlobalOrdinalMapTask(final String name,
+			final GlobalOrdinalMap previous) {
+		return new FutureTask<>(new Callable<GlobalOrdinalMap>() {
+			@Override
+			public GlobalOrdinalMap call() {
+				List<FacetDataCache<?>> caches = new ArrayList<>(_subReaders.size());
+				for (BoboSegmentReader r : _subReaders) {
+					Object data = r.getFacetData(name);
+					if (!(data instanceof FacetDataCache)
+							|| !(((FacetDataCache<?>) data).valArray instanceof AbstractTermStringList)) {
+						return null;
+					}
+					caches.add((FacetDataCache<?>) data);
+				}
+				return GlobalOrdinalMap.build(caches, previous);
+			}
+		});
+	}
+
 	@Override
 	protected void doClose() throws IOException {
 		// do nothing
@@ -67,11 +266,24 @@ public class BoboMultiReader extends FilterDirectoryReader {
 	 * @param facetHandlers .
 	 * @throws IOException io.
 	 */
-	@SuppressWarnings("unchecked")
 	protected BoboMultiReader(DirectoryReader reader, Collection<FacetHandler<?>> facetHandlers)
 			throws IOException {
-		super(reader, new BoboSubReaderWrapper(facetHandlers));
+		this(reader, facetHandlers, null);
+	}
+
+	/**
+	 * @param reader        .
+	 * @param facetHandlers .
+	 * @param snapshotStore store of the facet data snapshots, may be null.
+	 * @throws IOException io.
+	 */
+	@SuppressWarnings("unchecked")
+	protected BoboMultiReader(DirectoryReader reader, Collection<FacetHandler<?>> facetHandlers,
+			FacetDataSnapshotStore snapshotStore) throws IOException {
+		super(reader, new BoboSubReaderWrapper(facetHandlers, snapshotStore));
 		_subReaders = (List<BoboSegmentReader>) getSequentialSubReaders();
+		_facetHandlers = facetHandlers;
+		_snapshotStore = snapshotStore;
 	}
 
 	protected void facetInit() throws IOException {
@@ -80,6 +292,151 @@ public class BoboMultiReader extends FilterDirectoryReader {
 		}
 	}
 
+	/**
+	 * @param previousSegments readers of an earlier generation keyed by segment core cache key.
+	 * @throws IOException io.
+	 */
+	protected void facetInit(Map<Object, BoboSegmentReader> previousSegments) throws IOException {
+		for (BoboSegmentReader r : _subReaders) {
+			r.facetInit(previousSegments.get(r.getInnerReader().getCoreCacheKey()));
+		}
+	}
+
+	/**
+	 * Loads the facet data of the segments not found in <code>previousSegments</code> on the
+	 * executor, one task per segment and handler. Handlers are loaded level by level of their
+	 * dependency graph and every loading thread gets its own work area.
+	 *
+	 * @param previousSegments readers of an earlier generation keyed by segment core cache key.
+	 * @param executor         executor to load the facet data on.
+	 * @throws IOException io.
+	 */
+	protected void facetInit(Map<Object, BoboSegmentReader> previousSegments,
+			ExecutorService executor) throws IOException {
+		List<BoboSegmentReader> newSegments = new ArrayList<>(_subReaders.size());
+		for (BoboSegmentReader r : _subReaders) {
+			BoboSegmentReader previous = previousSegments.get(r.getInnerReader().getCoreCacheKey());
+			if (previous != null) {
+				r.facetInit(previous);
+			} else {
+				r.initialize(_facetHandlers);
+				newSegments.add(r);
+			}
+		}
+		if (newSegments.isEmpty()) {
+			return;
+		}
+
+		final ThreadLocal<BoboSegmentReader.WorkArea> workAreas = new ThreadLocal<>() {
+			@Override
+			protected BoboSegmentReader.WorkArea initialValue() {
+				return new BoboSegmentReader.WorkArea();
+			}
+		};
+		for (List<FacetHandler<?>> level : getLoadLevels(_facetHandlers)) {
+			List<Callable<Void>> tasks = new ArrayList<>(level.size() * newSegments.size());
+			for (final BoboSegmentReader r : newSegments) {
+				for (final FacetHandler<?> handler : level) {
+					tasks.add(new Callable<Void>() {
+						@Override
+						public Void call() throws IOException {
+							r.loadFacetData(handler, workAreas.get());
+							return null;
+						}
+					});
+				}
+			}
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while loading facet data", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Links every handler to the handlers it depends on and groups them so that a handler only
+	 * depends on handlers of earlier groups.
+	 */
+	private static List<List<FacetHandler<?>>> getLoadLevels(Collection<FacetHandler<?>> facetHandlers)
+			throws IOException {
+		Map<String, FacetHandler<?>> handlerMap = new LinkedHashMap<>();
+		for (FacetHandler<?> handler : facetHandlers) {
+			handlerMap.put(handler.getName(), handler);
+		}
+		Map<String, Integer> levels = new HashMap<>();
+		List<List<FacetHandler<?>>> result = new ArrayList<>();
+		for (String name : handlerMap.keySet()) {
+			int level = getLoadLevel(name, handlerMap, levels, new HashSet<String>());
+			while (result.size() <= level) {
+				result.add(new ArrayList<FacetHandler<?>>());
+			}
+			result.get(level).add(handlerMap.get(name));
+		}
+		return result;
+	}
+
+	private static int getLoadLevel(String name, Map<String, FacetHandler<?>> handlerMap,
+			Map<String, Integer> levels, Set<String> visited) throws IOException {
+		Integer level = levels.get(name);
+		if (level != null) {
+			return level;
+		}
+		visited.add(name);
+		FacetHandler<?> facetHandler = handlerMap.get(name);
+		int max = -1;
+		for (String f : facetHandler.getDependsOn()) {
+			if (name.equals(f)) {
+				continue;
+			}
+			if (visited.contains(f)) {
+				throw new IOException("Facet handler dependency cycle detected, facet handler: " + name
+						+ " not loaded");
+			}
+			FacetHandler<?> depended = handlerMap.get(f);
+			if (depended == null) {
+				throw new IOException("unable to load facet handler: " + f);
+			}
+			max = Math.max(max, getLoadLevel(f, handlerMap, levels, visited));
+			facetHandler.putDependedFacetHandler(depended);
+		}
+		visited.remove(name);
+		levels.put(name, max + 1);
+		return max + 1;
+	}
+
+	/**
+	 * Loads the section search metadata caches of terms in all segments now rather than on the
+	 * first query, see {@link BoboSegmentReader#get(Term)}.
+	 *
+	 * @param terms terms whose payloads are the metadata.
+	 */
+	public void loadMetaDataCaches(Term... terms) {
+		for (BoboSegmentReader r : _subReaders) {
+			for (Term term : terms) {
+				r.get(term);
+			}
+		}
+	}
+
+	/**
+	 * @param budget heap budget of the section search metadata caches of each segment in bytes.
+	 */
+	public void setMetaDataCacheBudget(long budget) {
+		for (BoboSegmentReader r : _subReaders) {
+			r.setMetaDataCacheBudget(budget);
+		}
+	}
+
 	public List<BoboSegmentReader> getSubReaders() {
 		return _subReaders;
 	}
@@ -92,6 +449,7 @@ public class BoboMultiReader extends FilterDirectoryReader {
 
 		private final BoboSegmentReader.WorkArea workArea = new BoboSegmentReader.WorkArea();
 		private Collection<FacetHandler<?>> _facetHandlers = null;
+		private FacetDataSnapshotStore _snapshotStore = null;
 
 		/**
 		 * Constructor.
@@ -101,10 +459,24 @@ public class BoboMultiReader extends FilterDirectoryReader {
 			_facetHandlers = facetHandlers;
 		}
 
+		/**
+		 * Constructor.
+		 * @param facetHandlers .
+		 * @param snapshotStore store of the facet data snapshots, may be null.
+		 */
+		public BoboSubReaderWrapper(Collection<FacetHandler<?>> facetHandlers,
+				FacetDataSnapshotStore snapshotStore) {
+			_facetHandlers = facetHandlers;
+			_snapshotStore = snapshotStore;
+		}
+
 		@Override
 		public AtomicReader wrap(AtomicReader reader) {
 			try {
-				return new BoboSegmentReader(reader, _facetHandlers, null, workArea);
+				BoboSegmentReader boboReader = new BoboSegmentReader(reader, _facetHandlers, null,
+						workArea);
+				boboReader._snapshotStore = _snapshotStore;
+				return boboReader;
 			} catch (IOException e) {
 				e.printStackTrace();
 				throw new RuntimeException(e);
@@ -25,6 +25,7 @@
 
 package com.browseengine.bobo.api;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
@@ -32,6 +33,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.DocumentStoredFieldVisitor;
@@ -39,25 +41,44 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.Term;
 
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.RuntimeFacetHandler;
 import com.browseengine.bobo.facets.RuntimeFacetHandlerFactory;
+import com.browseengine.bobo.facets.data.FacetDataSnapshotStore;
+import com.browseengine.bobo.search.section.IntMetaDataCache;
+import com.browseengine.bobo.search.section.MetaDataCache;
+import com.browseengine.bobo.search.section.MetaDataCacheProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BoboSegmentReader extends FilterAtomicReader {
+public class BoboSegmentReader extends FilterAtomicReader implements MetaDataCacheProvider {
 	private static final Logger logger = LoggerFactory.getLogger(BoboSegmentReader.class);
 
+	/**
+	 * Default heap budget of the section search metadata caches of a segment, in bytes.
+	 */
+	public static final long DEFAULT_META_DATA_CACHE_BUDGET = 64L << 20;
+
 	protected Map<String, FacetHandler<?>> _facetHandlerMap;
 
 	protected Collection<FacetHandler<?>> _facetHandlers;
 	protected Collection<RuntimeFacetHandlerFactory<?, ?>> _runtimeFacetHandlerFactories;
 	protected Map<String, RuntimeFacetHandlerFactory<?, ?>> _runtimeFacetHandlerFactoryMap;
 	protected WorkArea _workArea;
+	protected FacetDataSnapshotStore _snapshotStore;
+
+	// concurrent so that handlers of one segment can be loaded in parallel, null data is not kept
+	private final Map<String, Object> _facetDataMap = new ConcurrentHashMap<>();
+	// section search metadata caches by term, loaded once and shared by the searching threads
+	private final Map<Term, IntMetaDataCache> _metaDataCacheMap = new ConcurrentHashMap<>();
+	private long _metaDataCacheBudget = DEFAULT_META_DATA_CACHE_BUDGET;
+	private long _metaDataCacheSize = 0;
 
-	private final Map<String, Object> _facetDataMap = new HashMap<>();
 	private final ThreadLocal<Map<String, Object>> _runtimeFacetDataMap = new ThreadLocal<>() {
 		@Override
 		protected Map<String, Object> initialValue() {
@@ -93,6 +114,9 @@ public class BoboSegmentReader extends FilterAtomicReader {
 	}
 
 	public Object putFacetData(String name, Object data) {
+		if (data == null) {
+			return _facetDataMap.remove(name);
+		}
 		return _facetDataMap.put(name, data);
 	}
 
@@ -140,6 +164,60 @@ public class BoboSegmentReader extends FilterAtomicReader {
 		_runtimeFacetHandlerMap.set(null);
 	}
 
+	/**
+	 * Gets the metadata cache of a term for section search, loading it on first use, so that
+	 * {@link com.browseengine.bobo.search.section.IntMetaDataQuery} does not decode payloads on
+	 * every query. A cache that does not fit in the budget of the segment is not loaded.
+	 *
+	 * @param term term whose payloads are the metadata.
+	 * @return cache, or null if it is over budget or cannot be loaded.
+	 */
+	@Override
+	public MetaDataCache get(Term term) {
+		IntMetaDataCache cache = _metaDataCacheMap.get(term);
+		if (cache != null) {
+			return cache;
+		}
+		synchronized (_metaDataCacheMap) {
+			cache = _metaDataCacheMap.get(term);
+			if (cache != null) {
+				return cache;
+			}
+			// a cache takes at least an int per doc
+			if (_metaDataCacheSize + maxDoc() * 4L > _metaDataCacheBudget) {
+				return null;
+			}
+			try {
+				cache = new IntMetaDataCache(term, this);
+			} catch (IOException e) {
+				logger.warn("unable to load metadata cache of " + term, e);
+				return null;
+			}
+			_metaDataCacheSize += cache.sizeInBytes();
+			_metaDataCacheMap.put(term, cache);
+			return cache;
+		}
+	}
+
+	/**
+	 * @param budget heap budget of the section search metadata caches of this segment in bytes,
+	 *               caches loaded already are kept.
+	 */
+	public void setMetaDataCacheBudget(long budget) {
+		synchronized (_metaDataCacheMap) {
+			_metaDataCacheBudget = budget;
+		}
+	}
+
+	/**
+	 * @return approximate heap size of the loaded section search metadata caches in bytes.
+	 */
+	public long getMetaDataCacheSize() {
+		synchronized (_metaDataCacheMap) {
+			return _metaDataCacheSize;
+		}
+	}
+
 	@Override
 	protected void doClose() throws IOException {
 		// do nothing
@@ -170,21 +248,67 @@ public class BoboSegmentReader extends FilterAtomicReader {
 				}
 			}
 
-			long start = System.currentTimeMillis();
-			facetHandler.loadFacetData(this, workArea);
-			long end = System.currentTimeMillis();
-			if (logger.isDebugEnabled()) {
-				StringBuilder buf = new StringBuilder();
-				buf.append("facetHandler loaded: ").append(name).append(", took: ").append(end - start)
-						.append(" ms");
-				logger.debug(buf.toString());
-			}
+			loadFacetData(facetHandler, workArea);
 			loaded.add(name);
 		}
 	}
 
-	private void loadFacetHandlers(WorkArea workArea) throws IOException {
-		Set<String> loaded = new HashSet<>();
+	/**
+	 * Loads the facet data of a single handler, the handlers it depends on must be loaded and
+	 * linked already.
+	 *
+	 * @param facetHandler handler to load
+	 * @param workArea     work area, not shared with other threads
+	 * @throws IOException io.
+	 */
+	protected void loadFacetData(FacetHandler<?> facetHandler, WorkArea workArea)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		facetHandler.loadFacetData(this, workArea);
+		long end = System.currentTimeMillis();
+		Object data = _facetDataMap.get(facetHandler.getName());
+		if (data instanceof Closeable) {
+			closeWithSegment((Closeable) data);
+		}
+		if (logger.isDebugEnabled()) {
+			StringBuilder buf = new StringBuilder();
+			buf.append("facetHandler loaded: ").append(facetHandler.getName()).append(", took: ")
+					.append(end - start).append(" ms");
+			logger.debug(buf.toString());
+		}
+	}
+
+	/**
+	 * Closes the data, releasing memory it keeps off the heap, once the segment core is closed.
+	 * Readers reopened on the same core share the data until then.
+	 */
+	private void closeWithSegment(final Closeable data) {
+		if (in instanceof SegmentReader) {
+			((SegmentReader) in).addCoreClosedListener(new SegmentReader.CoreClosedListener() {
+				@Override
+				public void onClose(SegmentReader owner) {
+					closeFacetData(data);
+				}
+			});
+		} else {
+			in.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+				@Override
+				public void onClose(IndexReader reader) {
+					closeFacetData(data);
+				}
+			});
+		}
+	}
+
+	private static void closeFacetData(Closeable data) {
+		try {
+			data.close();
+		} catch (IOException e) {
+			logger.warn("unable to close facet data", e);
+		}
+	}
+
+	private void loadFacetHandlers(WorkArea workArea, Set<String> loaded) throws IOException {
 		Set<String> visited = new HashSet<>();
 
 		for (String name : _facetHandlerMap.keySet()) {
@@ -223,7 +347,41 @@ public class BoboSegmentReader extends FilterAtomicReader {
 
 	protected void facetInit() throws IOException {
 		initialize(_facetHandlers);
-		loadFacetHandlers(_workArea);
+		loadFacetHandlers(_workArea, new HashSet<String>());
+	}
+
+	/**
+	 * Initializes the facets reusing the facet data already loaded by a reader on the same
+	 * segment core, only handlers the previous reader did not load are loaded from the index.
+	 * Reused data reflects the deletions seen when it was loaded, docs deleted since are
+	 * still excluded at search time through the live docs.
+	 *
+	 * @param previous reader on the same segment core, may be null
+	 * @throws IOException io.
+	 */
+	protected void facetInit(BoboSegmentReader previous) throws IOException {
+		if (previous == null) {
+			facetInit();
+			return;
+		}
+		initialize(_facetHandlers);
+		// metadata caches reflect the deletions seen when loaded, they are kept for the same reader
+		synchronized (previous._metaDataCacheMap) {
+			_metaDataCacheBudget = previous._metaDataCacheBudget;
+			if (previous.in == in) {
+				_metaDataCacheMap.putAll(previous._metaDataCacheMap);
+				_metaDataCacheSize = previous._metaDataCacheSize;
+			}
+		}
+		Set<String> loaded = new HashSet<>();
+		for (String name : _facetHandlerMap.keySet()) {
+			if (previous._facetHandlerMap.get(name) == _facetHandlerMap.get(name)
+					&& previous._facetDataMap.containsKey(name)) {
+				_facetDataMap.put(name, previous._facetDataMap.get(name));
+				loaded.add(name);
+			}
+		}
+		loadFacetHandlers(_workArea, loaded);
 	}
 
 	/**
@@ -293,11 +451,31 @@ public class BoboSegmentReader extends FilterAtomicReader {
 		if (!(visitor instanceof DocumentStoredFieldVisitor)) {
 			return;
 		}
+		addFacetValues(docID, ((DocumentStoredFieldVisitor) visitor).getDocument(), null);
+	}
 
-		Document doc = ((DocumentStoredFieldVisitor) visitor).getDocument();
+	/**
+	 * Gets some stored fields of a doc, with the values of the facets among them.
+	 *
+	 * @param docid doc id.
+	 * @param fieldnames names of the fields and facets to load.
+	 * @return document.
+	 * @throws IOException
+	 */
+	public Document getStoredFields(int docid, Set<String> fieldnames) throws IOException {
+		DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fieldnames);
+		super.document(docid, visitor);
+		Document doc = visitor.getDocument();
+		addFacetValues(docid, doc, fieldnames);
+		return doc;
+	}
 
+	private void addFacetValues(int docID, Document doc, Set<String> fieldnames) {
 		Collection<FacetHandler<?>> facetHandlers = _facetHandlerMap.values();
 		for (FacetHandler<?> facetHandler : facetHandlers) {
+			if (fieldnames != null && !fieldnames.contains(facetHandler.getName())) {
+				continue;
+			}
 			String[] vals = facetHandler.getFieldValues(this, docID);
 			if (vals != null) {
 				String[] values = doc.getValues(facetHandler.getName());
@@ -358,10 +536,19 @@ public class BoboSegmentReader extends FilterAtomicReader {
 		copy._runtimeFacetHandlerFactories = this._runtimeFacetHandlerFactories;
 		copy._runtimeFacetHandlerFactoryMap = this._runtimeFacetHandlerFactoryMap;
 		copy._workArea = this._workArea;
+		copy._snapshotStore = this._snapshotStore;
 		copy._facetDataMap.putAll(this._facetDataMap);
+		copy._metaDataCacheBudget = this._metaDataCacheBudget;
 		return copy;
 	}
 
+	/**
+	 * @return store the facet data of this segment is snapshotted to, null if none.
+	 */
+	public FacetDataSnapshotStore getFacetDataSnapshotStore() {
+		return _snapshotStore;
+	}
+
 	public AtomicReader getInnerReader() {
 		return in;
 	}
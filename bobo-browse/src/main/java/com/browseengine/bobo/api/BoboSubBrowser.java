@@ -24,6 +24,7 @@ import com.browseengine.bobo.facets.FacetHandlerInitializerParam;
 import com.browseengine.bobo.facets.RuntimeFacetHandler;
 import com.browseengine.bobo.facets.RuntimeFacetHandlerFactory;
 import com.browseengine.bobo.facets.filter.AndFilter;
+import com.browseengine.bobo.facets.filter.FacetFilterCache;
 import com.browseengine.bobo.facets.filter.RandomAccessFilter;
 import com.browseengine.bobo.search.BoboSearcher;
 import com.browseengine.bobo.search.FacetHitCollector;
@@ -42,6 +43,7 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 	private final HashMap<String, FacetHandler<?>> _runtimeFacetHandlerMap;
 	private HashMap<String, FacetHandler<?>> _allFacetHandlerMap;
 	private ArrayList<RuntimeFacetHandler<?>> _runtimeFacetHandlers = null;
+	private FacetFilterCache _filterCache = null;
 
 	@Override
 	public IndexReader getIndexReader() {
@@ -56,6 +58,19 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 		_allFacetHandlerMap = null;
 	}
 
+	/**
+	 * Sets the cache of the selection filters of the facet handlers loaded with the reader.
+	 *
+	 * @param filterCache cache, may be null.
+	 */
+	public void setFilterCache(FacetFilterCache filterCache) {
+		_filterCache = filterCache;
+	}
+
+	public FacetFilterCache getFilterCache() {
+		return _filterCache;
+	}
+
 	private boolean isNoQueryNoFilter(BrowseRequest req) {
 		Query q = req.getQuery();
 		Filter filter = req.getFilter();
@@ -130,10 +145,22 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 		return map.keySet();
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void browse(BrowseRequest req, Weight w, Collector collector,
 			Map<String, FacetAccessible> facetMap, int start) throws BrowseException {
+		browse(req, w, collector, facetMap, start, null);
+	}
+
+	/**
+	 * Browses the segment like {@link #browse(BrowseRequest, Weight, Collector, Map, int)},
+	 * adding the timings and counters of the browse to stats.
+	 *
+	 * @param stats stats of the browse, may be null
+	 */
+	@SuppressWarnings("unchecked")
+	public void browse(BrowseRequest req, Weight w, Collector collector,
+			Map<String, FacetAccessible> facetMap, int start, BrowseStats stats)
+			throws BrowseException {
 
 		if (_reader == null) {
 			return;
@@ -186,6 +213,7 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 		boolean isNoQueryNoFilter = isNoQueryNoFilter(req);
 
 		boolean isDefaultSearch = isNoQueryNoFilter && selCount == 0;
+		long filterStart = stats == null ? 0L : System.nanoTime();
 		try {
 
 			for (String name : fields) {
@@ -203,7 +231,11 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 
 				RandomAccessFilter filter = null;
 				if (sel != null) {
-					filter = handler.buildFilter(sel);
+					if (_filterCache != null && _reader.getFacetHandlerMap().get(name) == handler) {
+						filter = _filterCache.getFilter(handler, sel);
+					} else {
+						filter = handler.buildFilter(sel);
+					}
 				}
 
 				if (ospec == null) {
@@ -254,7 +286,12 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 				}
 			}
 
+			if (stats != null) {
+				stats.addFilterTime(System.nanoTime() - filterStart);
+			}
+
 			setFacetHitCollectorList(facetHitCollectorList);
+			setBrowseStats(stats);
 
 			try {
 				search(w, finalFilter, collector, start, req.getMapReduceWrapper());
@@ -338,10 +375,23 @@ public class BoboSubBrowser extends BoboSearcher implements Browsable {
 
 	@Override
 	public void doClose() throws IOException {
+		clearRuntimeFacetHandlers();
+	}
+
+	/**
+	 * Closes the runtime facet handlers of the last browse and forgets them, so that the browser
+	 * can serve another request.
+	 */
+	public void clearRuntimeFacetHandlers() {
 		if (_runtimeFacetHandlers != null) {
 			for (RuntimeFacetHandler<?> handler : _runtimeFacetHandlers) {
 				handler.close();
 			}
+			_runtimeFacetHandlers = null;
+		}
+		if (!_runtimeFacetHandlerMap.isEmpty()) {
+			_runtimeFacetHandlerMap.clear();
+			_allFacetHandlerMap = null;
 		}
 		if (_reader != null) {
 			_reader.clearRuntimeFacetData();
@@ -0,0 +1,68 @@
+package com.browseengine.bobo.api;
+
+import java.io.Serializable;
+
+import com.browseengine.bobo.sort.MultiDocIdComparator.MultiDocIdComparable;
+
+/**
+ * Position of a hit in the sort order of a browse, used to page deep into the hits without an
+ * offset: the next page is browsed with {@link BrowseRequest#setSearchAfter(BrowseCursor)} set to
+ * the {@link BrowseResult#getCursor()} of the previous one.
+ * <p>
+ * A cursor is only meaningful for the same sort on the same reader, as it holds the sort value and
+ * the doc id of the hit.
+ */
+public class BrowseCursor implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final Comparable<?> _value;
+	private final int _docid;
+
+	/**
+	 * @param value sort value of the hit, see {@link BrowseHit#getComparable()}.
+	 * @param docid doc id of the hit.
+	 */
+	public BrowseCursor(Comparable<?> value, int docid) {
+		if (value instanceof MultiDocIdComparable) {
+			// do not hold on to the segment the value was read from
+			value = ((MultiDocIdComparable) value).getValues();
+		}
+		_value = value;
+		_docid = docid;
+	}
+
+	/**
+	 * @param hit last hit of a page.
+	 */
+	public BrowseCursor(BrowseHit hit) {
+		this(hit.getComparable(), hit.getDocid());
+	}
+
+	public Comparable<?> getValue() {
+		return _value;
+	}
+
+	public int getDocid() {
+		return _docid;
+	}
+
+	@Override
+	public int hashCode() {
+		return (_value == null ? 0 : _value.hashCode()) * 31 + _docid;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof BrowseCursor)) {
+			return false;
+		}
+		BrowseCursor other = (BrowseCursor) o;
+		return _docid == other._docid
+				&& (_value == null ? other._value == null : _value.equals(other._value));
+	}
+
+	@Override
+	public String toString() {
+		return "after: " + _value + ", docid: " + _docid;
+	}
+}
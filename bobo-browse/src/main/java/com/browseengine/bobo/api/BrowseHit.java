@@ -1,5 +1,7 @@
 package com.browseengine.bobo.api;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -13,6 +15,8 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.search.Explanation;
 
+import com.browseengine.bobo.facets.FacetHandler;
+
 /**
  * A hit from a browse
  */
@@ -222,7 +226,19 @@ public class BrowseHit implements Serializable {
 	 * @see #getField(String)
 	 */
 	public String[] getFields(String field) {
-		return _fieldValues != null ? _fieldValues.get(field) : null;
+		if (_fieldValues != null && _fieldValues.containsKey(field)) {
+			return _fieldValues.get(field);
+		}
+		FacetHandler<?> handler = getLazyFacetHandler(field);
+		if (handler == null) {
+			return null;
+		}
+		String[] values = handler.getFieldValues(_lazyReader, _lazyDoc);
+		if (_fieldValues == null) {
+			_fieldValues = new HashMap<>();
+		}
+		_fieldValues.put(field, values);
+		return values;
 	}
 
 	/**
@@ -233,7 +249,69 @@ public class BrowseHit implements Serializable {
 	 * @see #getRawField(String)
 	 */
 	public Object[] getRawFields(String field) {
-		return _rawFieldValues != null ? _rawFieldValues.get(field) : null;
+		if (_rawFieldValues != null && _rawFieldValues.containsKey(field)) {
+			return _rawFieldValues.get(field);
+		}
+		FacetHandler<?> handler = getLazyFacetHandler(field);
+		if (handler == null) {
+			return null;
+		}
+		Object[] values = handler.getRawFieldValues(_lazyReader, _lazyDoc);
+		if (_rawFieldValues == null) {
+			_rawFieldValues = new HashMap<>();
+		}
+		_rawFieldValues.put(field, values);
+		return values;
+	}
+
+	private FacetHandler<?> getLazyFacetHandler(String field) {
+		return _lazyFacetHandlers != null ? _lazyFacetHandlers.get(field) : null;
+	}
+
+	/**
+	 * Sets the facet handlers whose values of this hit are resolved on first access instead of
+	 * up front. The values must be read before the reader is closed, or be resolved with
+	 * {@link #resolveFieldValues()}.
+	 *
+	 * @param reader segment reader of the hit
+	 * @param doc doc id of the hit in <code>reader</code>
+	 * @param facetHandlers handlers by name, their facet data must not be runtime data
+	 * @return self
+	 */
+	public BrowseHit setLazyFieldValues(BoboSegmentReader reader, int doc,
+			Map<String, FacetHandler<?>> facetHandlers) {
+		_lazyReader = reader;
+		_lazyDoc = doc;
+		_lazyFacetHandlers = facetHandlers;
+		return this;
+	}
+
+	/**
+	 * Resolves all lazy field values of this hit and of its group hits, after that they no longer
+	 * reference the reader.
+	 *
+	 * @return self
+	 */
+	public BrowseHit resolveFieldValues() {
+		if (_lazyFacetHandlers != null) {
+			for (String field : _lazyFacetHandlers.keySet()) {
+				getFields(field);
+				getRawFields(field);
+			}
+			_lazyFacetHandlers = null;
+			_lazyReader = null;
+		}
+		if (_groupHits != null) {
+			for (BrowseHit hit : _groupHits) {
+				hit.resolveFieldValues();
+			}
+		}
+		return this;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		resolveFieldValues();
+		out.defaultWriteObject();
 	}
 
 	/**
@@ -273,6 +351,9 @@ public class BrowseHit implements Serializable {
 
 	private Map<String, String[]> _fieldValues;
 	private Map<String, Object[]> _rawFieldValues;
+	private transient BoboSegmentReader _lazyReader;
+	private transient int _lazyDoc;
+	private transient Map<String, FacetHandler<?>> _lazyFacetHandlers;
 	private transient Comparable<?> _comparable;
 	private List<SerializableField> _storedFields;
 	private int _groupPosition; // the position of the _groupField inside groupBy request.
@@ -339,6 +420,10 @@ public class BrowseHit implements Serializable {
 		return this;
 	}
 
+	/**
+	 * @return the top hits of the group of this hit in sort order, starting with this hit, or null
+	 *         unless requested with {@link BrowseRequest#setMaxPerGroup(int)}.
+	 */
 	public BrowseHit[] getGroupHits() {
 		return _groupHits;
 	}
@@ -400,6 +485,7 @@ public class BrowseHit implements Serializable {
 	 * @see #setFieldValues(Map)
 	 */
 	public Map<String, String[]> getFieldValues() {
+		resolveFieldValues();
 		return _fieldValues;
 	}
 
@@ -422,6 +508,7 @@ public class BrowseHit implements Serializable {
 	 * @see #setRawFieldValues(Map)
 	 */
 	public Map<String, Object[]> getRawFieldValues() {
+		resolveFieldValues();
 		return _rawFieldValues;
 	}
 
@@ -517,7 +604,7 @@ public class BrowseHit implements Serializable {
 		StringBuilder buffer = new StringBuilder();
 		buffer.append("docid: ").append(docid).append('\n');
 		buffer.append("score: ").append(score).append('\n');
-		buffer.append("field values: ").append(toString(_fieldValues)).append('\n');
+		buffer.append("field values: ").append(toString(getFieldValues())).append('\n');
 		return buffer.toString();
 	}
 }
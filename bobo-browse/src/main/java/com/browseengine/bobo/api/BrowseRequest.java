@@ -78,7 +78,10 @@ public class BrowseRequest implements Serializable {
   private int _maxPerGroup;
   private boolean _collectDocIdCache;
   private Set<String> _termVectorsToFetch;
+  private Set<String> _fieldsToFetch;
   private BoboMapFunctionWrapper mapReduceWrapper;
+  private boolean _collectStats;
+  private BrowseCursor _searchAfter;
 
   public Set<String> getTermVectorsToFetch() {
     return _termVectorsToFetch;
@@ -88,6 +91,24 @@ public class BrowseRequest implements Serializable {
     _termVectorsToFetch = termVectorsToFetch;
   }
 
+  /**
+   * Gets the fields whose facet values and stored fields are returned with the hits.
+   * @return field names, null for all fields.
+   */
+  public Set<String> getFieldsToFetch() {
+    return _fieldsToFetch;
+  }
+
+  /**
+   * Restricts the facet values and stored fields returned with the hits to the given fields.
+   * @param fieldsToFetch field names, null for all fields.
+   * @return self
+   */
+  public BrowseRequest setFieldsToFetch(Set<String> fieldsToFetch) {
+    _fieldsToFetch = fieldsToFetch;
+    return this;
+  }
+
   public boolean isShowExplanation() {
     return _showExplanation;
   }
@@ -218,6 +239,12 @@ public class BrowseRequest implements Serializable {
     return _maxPerGroup;
   }
 
+  /**
+   * Sets how many hits of each group are returned with {@link BrowseHit#getGroupHits()} when
+   * grouping by a single field.
+   * @param maxPerGroup number of hits per group, 1 or less for the first hit only.
+   * @return self
+   */
   public BrowseRequest setMaxPerGroup(int maxPerGroup) {
     _maxPerGroup = maxPerGroup;
     return this;
@@ -305,6 +332,29 @@ public class BrowseRequest implements Serializable {
     return this;
   }
 
+  /**
+   * Gets the cursor the hits are returned after.
+   * @return cursor, null to page with the offset only
+   * @see #setSearchAfter(BrowseCursor)
+   */
+  public BrowseCursor getSearchAfter() {
+    return _searchAfter;
+  }
+
+  /**
+   * Only returns the hits sorting after the cursor, typically the {@link BrowseResult#getCursor()}
+   * of the previous page. Unlike a deep offset, this keeps only the hits of one page while
+   * collecting. The offset still applies, counted from the cursor. Not supported with group by.
+   *
+   * @param searchAfter cursor, null to page with the offset only
+   * @return self
+   * @see #getSearchAfter()
+   */
+  public BrowseRequest setSearchAfter(BrowseCursor searchAfter) {
+    _searchAfter = searchAfter;
+    return this;
+  }
+
   /**
    * Set the search query
    *
@@ -379,6 +429,21 @@ public class BrowseRequest implements Serializable {
     return this;
   }
 
+  public boolean isCollectStats() {
+    return _collectStats;
+  }
+
+  /**
+   * Requests the phase timings and work counters of the browse with the result, see
+   * {@link BrowseResult#getStats()}.
+   * @param collectStats whether to collect stats.
+   * @return self
+   */
+  public BrowseRequest setCollectStats(boolean collectStats) {
+    _collectStats = collectStats;
+    return this;
+  }
+
   /**
    * Add a sort spec
    *
@@ -423,6 +488,9 @@ public class BrowseRequest implements Serializable {
     StringBuilder buf = new StringBuilder();
     buf.append("query: ").append(_query).append('\n');
     buf.append("page: [").append(_offset).append(',').append(_count).append("]\n");
+    if (_searchAfter != null) {
+      buf.append("search after: ").append(_searchAfter).append('\n');
+    }
     buf.append("sort spec: ").append(_sortSpecs).append('\n');
     buf.append("selections: ").append(_selections).append('\n');
     buf.append("facet spec: ").append(_facetSpecMap).append('\n');
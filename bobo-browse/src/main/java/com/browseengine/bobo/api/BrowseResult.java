@@ -77,6 +77,8 @@ public class BrowseResult implements Serializable {
 	private long time;
 	private MapReduceResult mapReduceResult;
 	private List<String> errors;
+	private BrowseStats stats;
+	private BrowseCursor cursor;
 	private static final BrowseHit[] NO_HITS = new BrowseHit[0];
 
 	/**
@@ -274,6 +276,22 @@ public class BrowseResult implements Serializable {
 		return hits == null ? NO_HITS : hits;
 	}
 
+	/**
+	 * Resolves the lazy field values of all hits, so that they can be read after the browser of
+	 * the result is closed or given back to its pool.
+	 *
+	 * @return self
+	 * @see BrowseHit#resolveFieldValues()
+	 */
+	public BrowseResult resolveFieldValues() {
+		if (hits != null) {
+			for (BrowseHit hit : hits) {
+				hit.resolveFieldValues();
+			}
+		}
+		return this;
+	}
+
 	/**
 	 * Sets the search time in milliseconds
 	 *
@@ -294,6 +312,33 @@ public class BrowseResult implements Serializable {
 		return time;
 	}
 
+	/**
+	 * Gets the phase timings and work counters of the browse.
+	 *
+	 * @return stats, null unless requested with {@link BrowseRequest#setCollectStats(boolean)}
+	 */
+	public BrowseStats getStats() {
+		return stats;
+	}
+
+	public void setStats(BrowseStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Gets the position of the last hit, to browse the next page with
+	 * {@link BrowseRequest#setSearchAfter(BrowseCursor)}.
+	 *
+	 * @return cursor, null if there are no hits
+	 */
+	public BrowseCursor getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(BrowseCursor cursor) {
+		this.cursor = cursor;
+	}
+
 	/**
 	 * Gets all the facet collections
 	 *
@@ -0,0 +1,212 @@
+package com.browseengine.bobo.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Phase timings and work counters of one browse request. Times are in nanoseconds.
+ * <p>
+ * Segments may be searched concurrently, so the phase times are sums over the segments and not
+ * wall times. The facet times, the time spent counting the hits of each facet, and the time spent
+ * building the doc id sets of the filters of a segment are part of the segment search times.
+ *
+ * @see BrowseRequest#setCollectStats(boolean)
+ * @see com.browseengine.bobo.jmx.BrowseStatsAggregator
+ */
+public class BrowseStats implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final AtomicLong _filterTime = new AtomicLong();
+	private final AtomicLong _searchTime = new AtomicLong();
+	private final AtomicLong _mergeTime = new AtomicLong();
+	private final AtomicLong _hitsTime = new AtomicLong();
+	private volatile long _totalTime;
+	private final List<Long> _segmentSearchTimes = new ArrayList<>();
+	private final ConcurrentHashMap<String, AtomicLong> _facetTimes = new ConcurrentHashMap<>();
+
+	private final AtomicLong _docsScored = new AtomicLong();
+	private final AtomicLong _docsValidated = new AtomicLong();
+	private final AtomicLong _postFilterMisses = new AtomicLong();
+	private final AtomicLong _countBytes = new AtomicLong();
+
+	/**
+	 * @param nanos time spent building the filters of the selections.
+	 */
+	public void addFilterTime(long nanos) {
+		_filterTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nanos time spent searching a segment, facet counting included.
+	 */
+	public void addSegmentSearchTime(long nanos) {
+		_searchTime.addAndGet(nanos);
+		synchronized (_segmentSearchTimes) {
+			_segmentSearchTimes.add(nanos);
+		}
+	}
+
+	/**
+	 * @param name facet name.
+	 * @param nanos time spent counting the hits of the facet in a segment.
+	 */
+	public void addFacetTime(String name, long nanos) {
+		AtomicLong time = _facetTimes.get(name);
+		if (time == null) {
+			AtomicLong newTime = new AtomicLong();
+			time = _facetTimes.putIfAbsent(name, newTime);
+			if (time == null) {
+				time = newTime;
+			}
+		}
+		time.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nanos time spent merging the facets and the hits of the segments.
+	 */
+	public void addMergeTime(long nanos) {
+		_mergeTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nanos time spent building the hits.
+	 */
+	public void addHitsTime(long nanos) {
+		_hitsTime.addAndGet(nanos);
+	}
+
+	public void setTotalTime(long nanos) {
+		_totalTime = nanos;
+	}
+
+	public void addDocsScored(long docs) {
+		_docsScored.addAndGet(docs);
+	}
+
+	public void addDocsValidated(long docs) {
+		_docsValidated.addAndGet(docs);
+	}
+
+	public void addPostFilterMisses(long docs) {
+		_postFilterMisses.addAndGet(docs);
+	}
+
+	public void addCountBytes(long bytes) {
+		_countBytes.addAndGet(bytes);
+	}
+
+	public long getFilterTime() {
+		return _filterTime.get();
+	}
+
+	public long getSearchTime() {
+		return _searchTime.get();
+	}
+
+	/**
+	 * @return search time of each segment, in the order they were searched.
+	 */
+	public long[] getSegmentSearchTimes() {
+		synchronized (_segmentSearchTimes) {
+			long[] times = new long[_segmentSearchTimes.size()];
+			for (int i = 0; i < times.length; ++i) {
+				times[i] = _segmentSearchTimes.get(i);
+			}
+			return times;
+		}
+	}
+
+	/**
+	 * @return time spent counting the hits of each facet, by facet name.
+	 */
+	public Map<String, Long> getFacetTimes() {
+		Map<String, Long> times = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry : _facetTimes.entrySet()) {
+			times.put(entry.getKey(), entry.getValue().get());
+		}
+		return times;
+	}
+
+	/**
+	 * @return time spent counting the hits of all facets.
+	 */
+	public long getFacetTime() {
+		long time = 0;
+		for (AtomicLong facetTime : _facetTimes.values()) {
+			time += facetTime.get();
+		}
+		return time;
+	}
+
+	public long getMergeTime() {
+		return _mergeTime.get();
+	}
+
+	public long getHitsTime() {
+		return _hitsTime.get();
+	}
+
+	public long getTotalTime() {
+		return _totalTime;
+	}
+
+	/**
+	 * @return number of hits passed to the hit collector.
+	 */
+	public long getDocsScored() {
+		return _docsScored.get();
+	}
+
+	/**
+	 * @return number of docs matching the query and the filters, checked against the post filters
+	 *         of the selections with expanded facets.
+	 */
+	public long getDocsValidated() {
+		return _docsValidated.get();
+	}
+
+	/**
+	 * @return number of docs missing exactly one post filter, only counted for that facet.
+	 */
+	public long getPostFilterMisses() {
+		return _postFilterMisses.get();
+	}
+
+	/**
+	 * @return estimated number of bytes of the count arrays of the facet count collectors.
+	 */
+	public long getCountBytes() {
+		return _countBytes.get();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("total: ").append(_totalTime / 1000).append("us");
+		buf.append(", filter: ").append(getFilterTime() / 1000).append("us");
+		buf.append(", search: ").append(getSearchTime() / 1000).append("us");
+		buf.append(", merge: ").append(getMergeTime() / 1000).append("us");
+		buf.append(", hits: ").append(getHitsTime() / 1000).append("us");
+		buf.append(", facets: {");
+		boolean first = true;
+		for (Map.Entry<String, Long> entry : getFacetTimes().entrySet()) {
+			if (!first) {
+				buf.append(", ");
+			}
+			first = false;
+			buf.append(entry.getKey()).append(": ").append(entry.getValue() / 1000).append("us");
+		}
+		buf.append("}");
+		buf.append(", scored: ").append(getDocsScored());
+		buf.append(", validated: ").append(getDocsValidated());
+		buf.append(", post filter misses: ").append(getPostFilterMisses());
+		buf.append(", count bytes: ").append(getCountBytes());
+		return buf.toString();
+	}
+}
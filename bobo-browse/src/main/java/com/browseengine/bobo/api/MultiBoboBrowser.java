@@ -9,6 +9,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
@@ -22,8 +26,15 @@ import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.similarities.Similarity;
 
+import com.browseengine.bobo.api.FacetSpec.FacetSortSpec;
+import com.browseengine.bobo.facets.CombinedFacetAccessible;
 import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.RuntimeFacetHandler;
+import com.browseengine.bobo.facets.data.GlobalOrdinalMap;
+import com.browseengine.bobo.facets.filter.FacetFilterCache;
+import com.browseengine.bobo.jmx.BrowseStatsAggregator;
 import com.browseengine.bobo.sort.SortCollector;
+import com.browseengine.bobo.sort.SortCollectorImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,10 +45,14 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
   private static final Logger logger = LoggerFactory.getLogger(MultiBoboBrowser.class);
 
   private IndexSearcher _indexSearcher = null;
+  private ExecutorService _executorService = null;
+  private FacetFilterCache _filterCache = null;
+  private BoboMultiReader _reader = null;
   protected Browsable[] _subBrowsers;
 
   public MultiBoboBrowser(BoboMultiReader reader) throws IOException {
     this(reader._subReaders);
+    _reader = reader;
   }
 
   public MultiBoboBrowser(List<BoboSegmentReader> segmentReaders) throws IOException {
@@ -74,9 +89,77 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
     return readers;
   }
 
+  /**
+   * Sets the executor used to search the sub-browsers concurrently. When set, each segment is
+   * browsed on its own task with a segment-local sort collector and facet collectors, and the
+   * results are merged afterwards. Pass null to go back to sequential browsing.
+   * @param executorService executor to run the per-segment searches on, may be null
+   */
+  public void setExecutorService(ExecutorService executorService) {
+    _executorService = executorService;
+  }
+
+  public ExecutorService getExecutorService() {
+    return _executorService;
+  }
+
+  /**
+   * Sets the cache of the per segment doc id sets of the facet selections. The cache should be
+   * shared by the browsers of an index, browsers are usually created per request.
+   * @param filterCache cache, may be null to disable caching
+   */
+  public void setFilterCache(FacetFilterCache filterCache) {
+    _filterCache = filterCache;
+    for (Browsable subBrowser : _subBrowsers) {
+      if (subBrowser instanceof BoboSubBrowser) {
+        ((BoboSubBrowser) subBrowser).setFilterCache(filterCache);
+      } else if (subBrowser instanceof MultiBoboBrowser) {
+        ((MultiBoboBrowser) subBrowser).setFilterCache(filterCache);
+      }
+    }
+  }
+
+  public FacetFilterCache getFilterCache() {
+    return _filterCache;
+  }
+
+  /**
+   * @return reader the browser was created on, null if it was created on segment readers or
+   *         browsers.
+   */
+  public BoboMultiReader getBoboMultiReader() {
+    return _reader;
+  }
+
+  /**
+   * Closes the runtime facet handlers of the last browse and forgets them, so that the browser
+   * can serve another request instead of being closed.
+   */
+  public void clearRuntimeFacetHandlers() {
+    for (Browsable subBrowser : _subBrowsers) {
+      if (subBrowser instanceof BoboSubBrowser) {
+        ((BoboSubBrowser) subBrowser).clearRuntimeFacetHandlers();
+      }
+    }
+  }
+
+  /**
+   * Gets the global ordinals of a facet, see {@link BoboMultiReader#getGlobalOrdinalMap(String)}.
+   * @param name facet name
+   * @return map, or null if the browser was not created on a {@link BoboMultiReader} or the
+   *         facet has no global ordinals
+   */
+  public GlobalOrdinalMap getGlobalOrdinalMap(String name) {
+    return _reader == null ? null : _reader.getGlobalOrdinalMap(name);
+  }
+
   public void browse(BrowseRequest req, final Collector hc, Map<String, FacetAccessible> facetMap)
       throws BrowseException {
-    Weight w = null;
+    Weight w = createWeight(req);
+    browse(req, w, hc, facetMap, 0, null);
+  }
+
+  private Weight createWeight(BrowseRequest req) throws BrowseException {
     try {
       Query q = req.getQuery();
       MatchAllDocsQuery matchAllDocsQuery = new MatchAllDocsQuery();
@@ -89,16 +172,25 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
         q = QueriesSupport.combineAnd(matchAllDocsQuery, q);
       }
       req.setQuery(q);
-      w = _indexSearcher.createNormalizedWeight(q);
+      return _indexSearcher.createNormalizedWeight(q);
     } catch (Exception ioe) {
       throw new BrowseException(ioe.getMessage(), ioe);
     }
-    browse(req, w, hc, facetMap, 0);
   }
 
   @Override
   public void browse(BrowseRequest req, Weight w, final Collector hc,
       Map<String, FacetAccessible> facetMap, int start) throws BrowseException {
+    browse(req, w, hc, facetMap, start, null);
+  }
+
+  /**
+   * Browses the sub-browsers like {@link #browse(BrowseRequest, Weight, Collector, Map, int)},
+   * adding the timings and counters of the browse to stats.
+   * @param stats stats of the browse, may be null
+   */
+  public void browse(BrowseRequest req, Weight w, final Collector hc,
+      Map<String, FacetAccessible> facetMap, int start, BrowseStats stats) throws BrowseException {
     // index empty
     if (_subBrowsers == null || _subBrowsers.length == 0) {
       return;
@@ -109,19 +201,9 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
       Map<String, FacetAccessible> facetColMap = new HashMap<>();
       for (int i = 0; i < _subBrowsers.length; i++) {
         try {
-          _subBrowsers[i].browse(req, w, hc, facetColMap, (start + readerBase(i)));
+          browse(_subBrowsers[i], req, w, hc, facetColMap, (start + readerBase(i)), stats);
         } finally {
-          Set<Entry<String, FacetAccessible>> entries = facetColMap.entrySet();
-          for (Entry<String, FacetAccessible> entry : entries) {
-            String name = entry.getKey();
-            FacetAccessible facetAccessor = entry.getValue();
-            List<FacetAccessible> list = mergedMap.get(name);
-            if (list == null) {
-              list = new ArrayList<>(_subBrowsers.length);
-              mergedMap.put(name, list);
-            }
-            list.add(facetAccessor);
-          }
+          addSubFacets(mergedMap, facetColMap, _subBrowsers.length);
           facetColMap.clear();
         }
       }
@@ -129,19 +211,173 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
       if (req.getMapReduceWrapper() != null) {
         req.getMapReduceWrapper().finalizePartition();
       }
-      Set<Entry<String, List<FacetAccessible>>> entries = mergedMap.entrySet();
-      for (Entry<String, List<FacetAccessible>> entry : entries) {
-        String name = entry.getKey();
-        FacetHandler<?> handler = getFacetHandler(name);
-        try {
-          List<FacetAccessible> subList = entry.getValue();
-          if (subList != null) {
-            FacetAccessible merged = handler.merge(req.getFacetSpec(name), subList);
-            facetMap.put(name, merged);
+      mergeFacets(req, mergedMap, facetMap, stats);
+    }
+  }
+
+  private static void browse(Browsable subBrowser, BrowseRequest req, Weight w, Collector hc,
+      Map<String, FacetAccessible> facetMap, int start, BrowseStats stats) throws BrowseException {
+    if (subBrowser instanceof BoboSubBrowser) {
+      ((BoboSubBrowser) subBrowser).browse(req, w, hc, facetMap, start, stats);
+    } else if (subBrowser instanceof MultiBoboBrowser) {
+      ((MultiBoboBrowser) subBrowser).browse(req, w, hc, facetMap, start, stats);
+    } else {
+      subBrowser.browse(req, w, hc, facetMap, start);
+    }
+  }
+
+  private void mergeFacets(BrowseRequest req, Map<String, List<FacetAccessible>> mergedMap,
+      Map<String, FacetAccessible> facetMap, BrowseStats stats) {
+    long start = stats == null ? 0L : System.nanoTime();
+    Set<Entry<String, List<FacetAccessible>>> entries = mergedMap.entrySet();
+    for (Entry<String, List<FacetAccessible>> entry : entries) {
+      String name = entry.getKey();
+      FacetHandler<?> handler = getFacetHandler(name);
+      try {
+        List<FacetAccessible> subList = entry.getValue();
+        if (subList != null) {
+          FacetSpec fspec = req.getFacetSpec(name);
+          FacetAccessible merged = handler.merge(fspec, subList);
+          if (merged instanceof CombinedFacetAccessible && fspec != null
+              && fspec.getOrderBy() == FacetSortSpec.OrderHitsDesc && fspec.getMaxCount() > 0) {
+            ((CombinedFacetAccessible) merged).setGlobalOrdinalMap(getGlobalOrdinalMap(name));
           }
-        } catch (Exception e) {
-          logger.error(e.getMessage(), e);
+          facetMap.put(name, merged);
+        }
+      } catch (Exception e) {
+        logger.error(e.getMessage(), e);
+      }
+    }
+    if (stats != null) {
+      stats.addMergeTime(System.nanoTime() - start);
+    }
+  }
+
+  private static void addSubFacets(Map<String, List<FacetAccessible>> mergedMap,
+      Map<String, FacetAccessible> facetColMap, int numSubBrowsers) {
+    Set<Entry<String, FacetAccessible>> entries = facetColMap.entrySet();
+    for (Entry<String, FacetAccessible> entry : entries) {
+      String name = entry.getKey();
+      FacetAccessible facetAccessor = entry.getValue();
+      List<FacetAccessible> list = mergedMap.get(name);
+      if (list == null) {
+        list = new ArrayList<>(numSubBrowsers);
+        mergedMap.put(name, list);
+      }
+      list.add(facetAccessor);
+    }
+  }
+
+  /**
+   * Whether the request can be browsed with one task per sub-browser. The map reduce wrapper is
+   * shared across segments and is not thread-safe, so those requests stay sequential.
+   */
+  private boolean isParallel(BrowseRequest req) {
+    return _executorService != null && _subBrowsers.length > 1 && req.getMapReduceWrapper() == null;
+  }
+
+  /**
+   * Browses every sub-browser on the executor, each into its own segment-local sort collector and
+   * facet map, then merges the collectors into the given one and the facets through
+   * {@link FacetHandler#merge(FacetSpec, List)}.
+   */
+  private void parallelBrowse(final BrowseRequest req, final SortCollectorImpl collector,
+      Map<String, FacetAccessible> facetMap, final BrowseStats stats) throws BrowseException {
+    final Weight w = createWeight(req);
+    List<Future<SubBrowseResult>> futures = new ArrayList<>(_subBrowsers.length);
+    for (int i = 0; i < _subBrowsers.length; i++) {
+      final Browsable subBrowser = _subBrowsers[i];
+      final int start = readerBase(i);
+      final SortCollectorImpl subCollector = (SortCollectorImpl) getSortCollector(req.getSort(),
+        req.getQuery(), req.getOffset(), req.getCount(), req.isFetchStoredFields(),
+        req.getTermVectorsToFetch(), req.getGroupBy(), req.getMaxPerGroup(),
+        req.getCollectDocIdCache());
+      subCollector.setSearchAfter(req.getSearchAfter());
+      futures.add(_executorService.submit(new Callable<SubBrowseResult>() {
+        @Override
+        public SubBrowseResult call() throws Exception {
+          SubBrowseResult res = new SubBrowseResult(subCollector);
+          try {
+            browse(subBrowser, req, w, subCollector, res.facetMap, start, stats);
+          } finally {
+            res.detachRuntimeFacets(subBrowser);
+          }
+          return res;
         }
+      }));
+    }
+
+    Map<String, List<FacetAccessible>> mergedMap = new HashMap<>();
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        SubBrowseResult res;
+        try {
+          res = futures.get(i).get();
+        } catch (ExecutionException e) {
+          cancel(futures, i + 1);
+          Throwable cause = e.getCause();
+          throw (cause instanceof BrowseException) ? (BrowseException) cause : new BrowseException(
+              String.valueOf(cause.getMessage()), cause);
+        } catch (InterruptedException e) {
+          cancel(futures, i);
+          Thread.currentThread().interrupt();
+          throw new BrowseException("interrupted while browsing segments", e);
+        }
+        res.attachRuntimeFacets(_subBrowsers[i]);
+        long start = stats == null ? 0L : System.nanoTime();
+        collector.merge(res.collector);
+        if (stats != null) {
+          stats.addMergeTime(System.nanoTime() - start);
+        }
+        addSubFacets(mergedMap, res.facetMap, _subBrowsers.length);
+      }
+    } finally {
+      mergeFacets(req, mergedMap, facetMap, stats);
+    }
+  }
+
+  /**
+   * Cancels the sub-browser searches not waited for yet, interrupting the running ones, so that a
+   * failed request does not keep the executor busy.
+   */
+  private static void cancel(List<Future<SubBrowseResult>> futures, int from) {
+    for (int i = from; i < futures.size(); i++) {
+      futures.get(i).cancel(true);
+    }
+  }
+
+  /**
+   * Output of one sub-browser search. Runtime facet data lives in thread locals of the segment
+   * reader, so it is carried back to the calling thread, which builds the hits and closes the
+   * runtime facet handlers.
+   */
+  private static class SubBrowseResult {
+    final SortCollectorImpl collector;
+    final Map<String, FacetAccessible> facetMap = new HashMap<>();
+    Map<String, Object> runtimeFacetDataMap;
+    Map<String, RuntimeFacetHandler<?>> runtimeFacetHandlerMap;
+
+    SubBrowseResult(SortCollectorImpl collector) {
+      this.collector = collector;
+    }
+
+    void detachRuntimeFacets(Browsable subBrowser) {
+      IndexReader reader = subBrowser.getIndexReader();
+      if (reader instanceof BoboSegmentReader) {
+        BoboSegmentReader segmentReader = (BoboSegmentReader) reader;
+        runtimeFacetDataMap = segmentReader.getRuntimeFacetDataMap();
+        runtimeFacetHandlerMap = segmentReader.getRuntimeFacetHandlerMap();
+        segmentReader.clearRuntimeFacetData();
+        segmentReader.clearRuntimeFacetHandler();
+      }
+    }
+
+    void attachRuntimeFacets(Browsable subBrowser) {
+      IndexReader reader = subBrowser.getIndexReader();
+      if (reader instanceof BoboSegmentReader) {
+        BoboSegmentReader segmentReader = (BoboSegmentReader) reader;
+        segmentReader.setRuntimeFacetDataMap(runtimeFacetDataMap);
+        segmentReader.setRuntimeFacetHandlerMap(runtimeFacetHandlerMap);
       }
     }
   }
@@ -162,6 +398,7 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
       return result;
     }
     long start = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
     int offset = req.getOffset();
     int count = req.getCount();
 
@@ -169,15 +406,48 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
       throw new IllegalArgumentException("both offset and count must be > 0: " + offset + "/"
           + count);
     }
-    SortCollector collector = getSortCollector(req.getSort(), req.getQuery(), offset, count,
-      req.isFetchStoredFields(), req.getTermVectorsToFetch(), req.getGroupBy(),
+    String[] groupBy = req.getGroupBy();
+    if (req.getSearchAfter() != null && groupBy != null && groupBy.length > 0) {
+      throw new IllegalArgumentException("search after is not supported with group by");
+    }
+    BrowseStatsAggregator aggregator = BrowseStatsAggregator.getInstance();
+    BrowseStats stats = null;
+    if (req.isCollectStats() || aggregator.isEnabled()) {
+      stats = new BrowseStats();
+    }
+    doBrowse(req, result, stats);
+    long end = System.currentTimeMillis();
+    result.setTime(end - start);
+    if (stats != null) {
+      stats.setTotalTime(System.nanoTime() - startNanos);
+      aggregator.record(stats);
+      if (req.isCollectStats()) {
+        result.setStats(stats);
+      }
+    }
+    // set the transaction ID to trace transactions
+    result.setTid(req.getTid());
+    return result;
+  }
+
+  private void doBrowse(BrowseRequest req, BrowseResult result, BrowseStats stats)
+      throws BrowseException {
+    SortCollector collector = getSortCollector(req.getSort(), req.getQuery(), req.getOffset(),
+      req.getCount(), req.isFetchStoredFields(), req.getTermVectorsToFetch(), req.getGroupBy(),
       req.getMaxPerGroup(), req.getCollectDocIdCache());
+    collector.setFieldsToFetch(req.getFieldsToFetch());
+    collector.setSearchAfter(req.getSearchAfter());
 
     Map<String, FacetAccessible> facetCollectors = new HashMap<>();
-    browse(req, collector, facetCollectors);
+    if (isParallel(req) && collector instanceof SortCollectorImpl) {
+      parallelBrowse(req, (SortCollectorImpl) collector, facetCollectors, stats);
+    } else {
+      browse(req, createWeight(req), collector, facetCollectors, 0, stats);
+    }
     if (req.getMapReduceWrapper() != null) {
       result.setMapReduceResult(req.getMapReduceWrapper().getResult());
     }
+    long hitsStart = stats == null ? 0L : System.nanoTime();
     BrowseHit[] hits = null;
     try {
       hits = collector.topDocs();
@@ -201,18 +471,20 @@ public class MultiBoboBrowser extends MultiReader implements Browsable {
       }
     }
 
+    if (stats != null) {
+      stats.addHitsTime(System.nanoTime() - hitsStart);
+    }
+
     result.setHits(hits);
+    if (hits.length > 0) {
+      result.setCursor(new BrowseCursor(hits[hits.length - 1]));
+    }
     result.setNumHits(collector.getTotalHits());
     result.setNumGroups(collector.getTotalGroups());
     result.setGroupAccessibles(collector.getGroupAccessibles());
     result.setSortCollector(collector);
     result.setTotalDocs(numDocs());
     result.addAll(facetCollectors);
-    long end = System.currentTimeMillis();
-    result.setTime(end - start);
-    // set the transaction ID to trace transactions
-    result.setTid(req.getTid());
-    return result;
   }
 
   /**
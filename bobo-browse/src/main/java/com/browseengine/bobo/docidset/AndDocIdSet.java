@@ -3,6 +3,7 @@ package com.browseengine.bobo.docidset;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
@@ -23,6 +24,14 @@ public class AndDocIdSet extends ImmutableDocSet implements Serializable {
 
   }
 
+  private static final Comparator<DocIdSetIterator> COST_COMPARATOR =
+      new Comparator<DocIdSetIterator>() {
+        @Override
+        public int compare(DocIdSetIterator o1, DocIdSetIterator o2) {
+          return Long.compare(o1.cost(), o2.cost());
+        }
+      };
+
   private List<DocIdSet> sets = null;
   private final int nonNullSize; // excludes nulls
 
@@ -44,6 +53,7 @@ public class AndDocIdSet extends ImmutableDocSet implements Serializable {
   class AndDocIdSetIterator extends DocIdSetIterator {
     int lastReturn = -1;
     private DocIdSetIterator[] iterators = null;
+    private final long cost;
 
     AndDocIdSetIterator() throws IOException {
       if (nonNullSize < 1) throw new IllegalArgumentException("Minimum one iterator required");
@@ -57,6 +67,9 @@ public class AndDocIdSet extends ImmutableDocSet implements Serializable {
           iterators[j++] = dcit;
         }
       }
+      // lead with the sparsest iterator, the others are only advanced to its candidates
+      Arrays.sort(iterators, COST_COMPARATOR);
+      cost = iterators.length > 0 ? iterators[0].cost() : 0;
       lastReturn = (iterators.length > 0 ? -1 : DocIdSetIterator.NO_MORE_DOCS);
     }
 
@@ -128,8 +141,7 @@ public class AndDocIdSet extends ImmutableDocSet implements Serializable {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return cost;
     }
   }
 
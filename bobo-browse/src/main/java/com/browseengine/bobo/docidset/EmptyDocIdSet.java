@@ -25,7 +25,6 @@ public final class EmptyDocIdSet extends RandomAccessDocIdSet {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
       return 0;
     }
   }
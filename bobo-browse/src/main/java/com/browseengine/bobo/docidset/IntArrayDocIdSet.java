@@ -99,8 +99,7 @@ public class IntArrayDocIdSet extends DocSet implements Serializable {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return pos + 1;
     }
   }
 
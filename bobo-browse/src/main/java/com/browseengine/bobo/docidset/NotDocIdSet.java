@@ -23,6 +23,7 @@ public class NotDocIdSet extends ImmutableDocSet implements Serializable {
     int lastReturn = -1;
     private DocIdSetIterator it1 = null;
     private int innerDocid = -1;
+    private long cost;
 
     NotDocIdSetIterator() throws IOException {
       initialize();
@@ -30,6 +31,7 @@ public class NotDocIdSet extends ImmutableDocSet implements Serializable {
 
     private void initialize() throws IOException {
       it1 = innerSet.iterator();
+      cost = Math.max(0L, max - it1.cost());
 
       try {
         if ((innerDocid = it1.nextDoc()) == DocIdSetIterator.NO_MORE_DOCS) it1 = null;
@@ -81,8 +83,7 @@ public class NotDocIdSet extends ImmutableDocSet implements Serializable {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return cost;
     }
   }
 
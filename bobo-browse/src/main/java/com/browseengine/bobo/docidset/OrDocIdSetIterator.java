@@ -21,15 +21,20 @@ public class OrDocIdSetIterator extends DocIdSetIterator {
   private int _curDoc;
   private final Item[] _heap;
   private int _size;
+  private final long _cost;
 
   OrDocIdSetIterator(List<DocIdSet> sets) throws IOException {
     _curDoc = -1;
     _heap = new Item[sets.size()];
     _size = 0;
+    long cost = 0;
     for (DocIdSet set : sets) {
-      _heap[_size++] = new Item(set.iterator() == null ? DocIdSet.EMPTY_DOCIDSET.iterator()
-          : set.iterator());
+      DocIdSetIterator iter = set.iterator();
+      if (iter == null) iter = DocIdSet.EMPTY_DOCIDSET.iterator();
+      _heap[_size++] = new Item(iter);
+      cost += iter.cost();
     }
+    _cost = cost;
     if (_size == 0) _curDoc = DocIdSetIterator.NO_MORE_DOCS;
   }
 
@@ -144,8 +149,7 @@ public class OrDocIdSetIterator extends DocIdSetIterator {
 
   @Override
   public long cost() {
-    // TODO Auto-generated method stub
-    return 0;
+    return _cost;
   }
 
 }
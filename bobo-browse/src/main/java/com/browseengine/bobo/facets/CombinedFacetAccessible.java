@@ -20,12 +20,14 @@ import com.browseengine.bobo.api.FloatFacetIterator;
 import com.browseengine.bobo.api.IntFacetIterator;
 import com.browseengine.bobo.api.LongFacetIterator;
 import com.browseengine.bobo.api.ShortFacetIterator;
+import com.browseengine.bobo.facets.data.GlobalOrdinalMap;
 import com.browseengine.bobo.facets.impl.CombinedDoubleFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedFloatFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedIntFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedLongFacetIterator;
 import com.browseengine.bobo.facets.impl.CombinedShortFacetIterator;
+import com.browseengine.bobo.facets.impl.TopFacetMerger;
 
 /**
  * @author nnarkhed
@@ -36,12 +38,21 @@ public class CombinedFacetAccessible implements FacetAccessible {
   protected final List<FacetAccessible> _list;
   protected final FacetSpec _fspec;
   protected boolean _closed;
+  private GlobalOrdinalMap _globalOrdinalMap = null;
 
   public CombinedFacetAccessible(FacetSpec fspec, List<FacetAccessible> list) {
     _list = list;
     _fspec = fspec;
   }
 
+  /**
+   * Sets the global ordinals of the facet, used to merge the segment counts as ints.
+   * @param globalOrdinalMap global ordinals, may be null.
+   */
+  public void setGlobalOrdinalMap(GlobalOrdinalMap globalOrdinalMap) {
+    _globalOrdinalMap = globalOrdinalMap;
+  }
+
   @Override
   public String toString() {
     return "_list:" + _list + " _fspec:" + _fspec;
@@ -118,6 +129,12 @@ public class CombinedFacetAccessible implements FacetAccessible {
         if (++cnt >= maxCnt) break;
       }
     } else if (FacetSortSpec.OrderHitsDesc.equals(_fspec.getOrderBy())) {
+      if (maxCnt != Integer.MAX_VALUE && minHits > 0) {
+        TopFacetMerger merger = TopFacetMerger.newInstance(_list, _globalOrdinalMap);
+        if (merger != null) {
+          return merger.getTopFacets(maxCnt, minHits);
+        }
+      }
       comparator = new Comparator<>() {
         @Override
         public int compare(BrowseFacet f1, BrowseFacet f2) {
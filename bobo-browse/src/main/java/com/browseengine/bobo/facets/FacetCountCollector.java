@@ -17,6 +17,18 @@ public interface FacetCountCollector extends FacetAccessible {
    */
   void collect(int docid);
 
+  /**
+   * Collects a block of hits, in increasing doc id order. Implementations override this to count
+   * the block in a tight loop instead of one interface call per hit.
+   * @param docs doc ids.
+   * @param len number of doc ids in <code>docs</code>.
+   */
+  default void collect(int[] docs, int len) {
+    for (int i = 0; i < len; ++i) {
+      collect(docs[i]);
+    }
+  }
+
   /**
    * Collects all hits. This is called once per request by the facet engine in certain scenarios. 
    */
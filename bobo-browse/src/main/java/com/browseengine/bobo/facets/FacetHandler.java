@@ -43,6 +43,7 @@ public abstract class FacetHandler<D> {
 	private final Set<String> _dependsOn;
 	private final Map<String, FacetHandler<?>> _dependedFacetHandlers;
 	private TermCountSize _termCountSize;
+	private boolean _offHeap;
 
 	public static enum TermCountSize {
 		small, medium, large
@@ -78,6 +79,22 @@ public abstract class FacetHandler<D> {
 		return _termCountSize;
 	}
 
+	/**
+	 * Keeps the per document arrays of the facet data in direct memory instead of on the heap,
+	 * for handlers that support it. The memory is released when the segment is closed.
+	 *
+	 * @param offHeap true for direct memory
+	 * @return this
+	 */
+	public FacetHandler<D> setOffHeap(boolean offHeap) {
+		_offHeap = offHeap;
+		return this;
+	}
+
+	public boolean isOffHeap() {
+		return _offHeap;
+	}
+
 	/**
 	 * Constructor
 	 *
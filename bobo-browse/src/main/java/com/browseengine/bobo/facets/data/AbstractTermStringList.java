@@ -0,0 +1,25 @@
+package com.browseengine.bobo.facets.data;
+
+/**
+ * Sorted dictionary of string terms. Top facets and global ordinals of string facets are merged
+ * across segments on these lists, comparing values with
+ * {@link #compareValues(int, AbstractTermStringList, int)} rather than creating them.
+ */
+public abstract class AbstractTermStringList extends TermValueList<String> {
+
+	protected AbstractTermStringList(int capacity) {
+		super(capacity);
+	}
+
+	/**
+	 * Compares a value of this list with a value of another list of the same class, in the order
+	 * values are added to the lists.
+	 *
+	 * @param index index of the value of this list.
+	 * @param other list of the same class.
+	 * @param otherIndex index of the value of the other list.
+	 * @return negative, zero or positive as the value of this list is less than, equal to or
+	 *         greater than the other value.
+	 */
+	public abstract int compareValues(int index, AbstractTermStringList other, int otherIndex);
+}
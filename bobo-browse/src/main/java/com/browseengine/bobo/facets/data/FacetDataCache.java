@@ -3,8 +3,10 @@ package com.browseengine.bobo.facets.data;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.DocsEnum;
@@ -23,8 +25,11 @@ import com.browseengine.bobo.util.BigByteArray;
 import com.browseengine.bobo.util.BigIntArray;
 import com.browseengine.bobo.util.BigSegmentedArray;
 import com.browseengine.bobo.util.BigShortArray;
+import com.browseengine.bobo.util.DirectBigByteArray;
+import com.browseengine.bobo.util.DirectBigIntArray;
+import com.browseengine.bobo.util.DirectBigShortArray;
 
-public class FacetDataCache<T> implements Serializable {
+public class FacetDataCache<T> implements Serializable, Closeable {
   /**
    *
    */
@@ -36,6 +41,16 @@ public class FacetDataCache<T> implements Serializable {
   public int[] minIDs;
   public int[] maxIDs;
 
+  private boolean _offHeap = false;
+
+  /**
+   * Maximum number of parsed ranges kept by {@link #getRangeIndexes(String)}, so that ad-hoc ranges
+   * do not grow the cache without bound.
+   */
+  public static final int MAX_CACHED_RANGES = 1024;
+
+  private transient ConcurrentHashMap<String, int[]> _rangeIndexes;
+
   public FacetDataCache(BigSegmentedArray orderArray, TermValueList<T> valArray, int[] freqs,
       int[] minIDs, int[] maxIDs, TermCountSize termCountSize) {
     this.orderArray = orderArray;
@@ -58,14 +73,74 @@ public class FacetDataCache<T> implements Serializable {
     return valIdx <= 0 ? 0 : 1;
   }
 
-  private final static BigSegmentedArray newInstance(int termCount, int maxDoc) {
+  /**
+   * Makes {@link #load(String, AtomicReader, TermListFactory)} allocate the order array in direct
+   * memory instead of on the heap, it is then released by {@link #close()}.
+   *
+   * @param offHeap true for direct memory.
+   * @return this.
+   */
+  public FacetDataCache<T> setOffHeap(boolean offHeap) {
+    _offHeap = offHeap;
+    return this;
+  }
+
+  public boolean isOffHeap() {
+    return _offHeap;
+  }
+
+  /**
+   * Releases the memory of an order array kept outside of the heap, the cache must not be used
+   * anymore after that. Heap data is left to the garbage collector.
+   */
+  @Override
+  public void close() throws IOException {
+    if (orderArray instanceof Closeable) {
+      ((Closeable) orderArray).close();
+    }
+  }
+
+  /**
+   * Gets the order index bounds of a range string parsed earlier on this segment, see
+   * {@link com.browseengine.bobo.facets.filter.FacetRangeFilter#parse(FacetDataCache, String)}.
+   *
+   * @param rangeString range string.
+   * @return inclusive start and end order indexes, or null if not cached. The array is shared
+   *         and must not be modified.
+   */
+  public int[] getRangeIndexes(String rangeString) {
+    return getRangeIndexCache().get(rangeString);
+  }
+
+  /**
+   * Caches the order index bounds of a range string, unless {@link #MAX_CACHED_RANGES} ranges are
+   * cached already.
+   *
+   * @param rangeString range string.
+   * @param range inclusive start and end order indexes.
+   */
+  public void putRangeIndexes(String rangeString, int[] range) {
+    ConcurrentHashMap<String, int[]> cache = getRangeIndexCache();
+    if (cache.size() < MAX_CACHED_RANGES) {
+      cache.put(rangeString, range);
+    }
+  }
+
+  private synchronized ConcurrentHashMap<String, int[]> getRangeIndexCache() {
+    if (_rangeIndexes == null) {
+      _rangeIndexes = new ConcurrentHashMap<>();
+    }
+    return _rangeIndexes;
+  }
+
+  private BigSegmentedArray newInstance(int termCount, int maxDoc) {
     // we use < instead of <= to take into consideration "missing" value (zero element in the
     // dictionary)
     if (termCount < Byte.MAX_VALUE) {
-      return new BigByteArray(maxDoc);
+      return _offHeap ? DirectBigByteArray.allocate(maxDoc) : new BigByteArray(maxDoc);
     } else if (termCount < Short.MAX_VALUE) {
-      return new BigShortArray(maxDoc);
-    } else return new BigIntArray(maxDoc);
+      return _offHeap ? DirectBigShortArray.allocate(maxDoc) : new BigShortArray(maxDoc);
+    } else return _offHeap ? DirectBigIntArray.allocate(maxDoc) : new BigIntArray(maxDoc);
   }
 
   protected int getDictValueCount(AtomicReader reader, String field) throws IOException {
@@ -96,6 +171,11 @@ public class FacetDataCache<T> implements Serializable {
 
   public void load(String fieldName, AtomicReader reader, TermListFactory<T> listFactory)
       throws IOException {
+    FacetDataSnapshotStore snapshots = getClass() == FacetDataCache.class
+        ? FacetDataSnapshotStore.getInstance(reader) : null;
+    if (snapshots != null && snapshots.load(this, fieldName, reader, listFactory)) {
+      return;
+    }
     String field = fieldName.intern();
     int maxDoc = reader.maxDoc();
 
@@ -191,6 +271,10 @@ public class FacetDataCache<T> implements Serializable {
       this.maxIDs[0] = doc;
     }
     this.freqs[0] = reader.numDocs() - totalFreq;
+
+    if (snapshots != null) {
+      snapshots.save(this, fieldName, reader);
+    }
   }
 
   private static int[] convertString(FacetDataCache<?> dataCache, String[] vals) {
@@ -0,0 +1,430 @@
+package com.browseengine.bobo.facets.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.util.BigSegmentedArray;
+import com.browseengine.bobo.util.DirectBufferUtil;
+import com.browseengine.bobo.util.DirectBigByteArray;
+import com.browseengine.bobo.util.DirectBigIntArray;
+import com.browseengine.bobo.util.DirectBigShortArray;
+
+/**
+ * Keeps loaded facet data in snapshot files, one per segment and field, so that opening the
+ * same segment again, e.g. after a restart, maps the data back instead of walking the postings.
+ * <p>
+ * The order array of a {@link FacetDataCache} is used straight from the mapped file and does
+ * not take Java heap, the file is unmapped when the cache is closed. The nested array of a
+ * {@link MultiValueFacetDataCache} is copied back to the heap. The dictionary is always rebuilt
+ * from the terms of the field, so the snapshot does not depend on the {@link TermListFactory}.
+ * A snapshot is ignored when the segment, its deletions or the terms of the field no longer
+ * match, and is then written again. Segment names restart when an index is rebuilt from scratch,
+ * so the segment is also matched on the creation time recorded by the index writer and the size
+ * of its files.
+ * <p>
+ * Only the exact {@link FacetDataCache} and {@link MultiValueFacetDataCache} classes are
+ * snapshotted. The directory should be dedicated to one index, snapshots of segments that were
+ * merged away are removed by {@link #removeStaleSnapshots(IndexReader)}.
+ */
+public class FacetDataSnapshotStore {
+  private static final Logger logger = LoggerFactory.getLogger(FacetDataSnapshotStore.class);
+
+  private static final int MAGIC = 0x424F424F;
+  private static final int VERSION = 2;
+
+  private static final String FILE_PREFIX = "bobo-";
+  private static final String SINGLE_VALUE_EXTENSION = ".fdc";
+  private static final String MULTI_VALUE_EXTENSION = ".mvfdc";
+
+  private final File _dir;
+
+  /**
+   * @param dir directory of the snapshot files, created if missing.
+   * @throws IOException if the directory cannot be created.
+   */
+  public FacetDataSnapshotStore(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("unable to create snapshot directory: " + dir);
+    }
+    _dir = dir;
+  }
+
+  public File getDirectory() {
+    return _dir;
+  }
+
+  /**
+   * Deletes the snapshots of segments that are not part of the given reader.
+   *
+   * @param reader reader on the current commit of the index.
+   * @return number of deleted files.
+   */
+  public int removeStaleSnapshots(IndexReader reader) {
+    Set<String> segmentNames = new HashSet<>();
+    for (AtomicReaderContext context : reader.leaves()) {
+      String segmentName = getSegmentName(context.reader());
+      if (segmentName != null) {
+        segmentNames.add(segmentName);
+      }
+    }
+    int count = 0;
+    File[] files = _dir.listFiles();
+    if (files == null) {
+      return count;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (!name.startsWith(FILE_PREFIX)) {
+        continue;
+      }
+      int end = name.indexOf('-', FILE_PREFIX.length());
+      if (end < 0 || segmentNames.contains(name.substring(FILE_PREFIX.length(), end))) {
+        continue;
+      }
+      if (file.delete()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the store configured on the reader, null if there is none.
+   */
+  static FacetDataSnapshotStore getInstance(AtomicReader reader) {
+    if (reader instanceof BoboSegmentReader) {
+      return ((BoboSegmentReader) reader).getFacetDataSnapshotStore();
+    }
+    return null;
+  }
+
+  /**
+   * Loads <code>cache</code> from its snapshot.
+   *
+   * @return false if there is no usable snapshot, the cache is then left untouched.
+   */
+  <T> boolean load(FacetDataCache<T> cache, String field, AtomicReader reader,
+      TermListFactory<T> listFactory) {
+    File file = getFile(reader, field, SINGLE_VALUE_EXTENSION);
+    if (file == null || !file.isFile()) {
+      return false;
+    }
+    ByteBuffer buffer = null;
+    try {
+      buffer = map(file);
+      Terms terms = reader.terms(field);
+      if (!readHeader(buffer, reader, terms)) {
+        logger.info("ignoring stale facet data snapshot: " + file);
+        return false;
+      }
+      int termCount = buffer.getInt();
+      int[] freqs = readInts(buffer, termCount);
+      int[] minIDs = readInts(buffer, termCount);
+      int[] maxIDs = readInts(buffer, termCount);
+      int width = buffer.getInt();
+      int capacity = buffer.getInt();
+      ByteBuffer orderBuffer = buffer.slice();
+      orderBuffer.limit(capacity * width);
+      TermValueList<T> list = readTermList(terms, listFactory, termCount);
+      if (list == null) {
+        return false;
+      }
+      BigSegmentedArray order;
+      if (width == 1) {
+        order = new DirectBigByteArray(orderBuffer, reader.maxDoc(), buffer);
+      } else if (width == 2) {
+        order = new DirectBigShortArray(orderBuffer.asShortBuffer(), reader.maxDoc(), buffer);
+      } else {
+        order = new DirectBigIntArray(orderBuffer.asIntBuffer(), reader.maxDoc(), buffer);
+      }
+      buffer = null; // owned by the order array from now on
+      cache.orderArray = order;
+      cache.valArray = list;
+      cache.freqs = freqs;
+      cache.minIDs = minIDs;
+      cache.maxIDs = maxIDs;
+      return true;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("unable to read facet data snapshot: " + file + ", reloading", e);
+      return false;
+    } finally {
+      DirectBufferUtil.free(buffer);
+    }
+  }
+
+  /**
+   * Loads <code>cache</code> from its snapshot.
+   *
+   * @return false if there is no usable snapshot, the cache is then left untouched.
+   */
+  <T> boolean load(MultiValueFacetDataCache<T> cache, String field, AtomicReader reader,
+      TermListFactory<T> listFactory) {
+    File file = getFile(reader, field, MULTI_VALUE_EXTENSION);
+    if (file == null || !file.isFile()) {
+      return false;
+    }
+    ByteBuffer buffer = null;
+    try {
+      buffer = map(file);
+      Terms terms = reader.terms(field);
+      if (!readHeader(buffer, reader, terms)) {
+        logger.info("ignoring stale facet data snapshot: " + file);
+        return false;
+      }
+      int termCount = buffer.getInt();
+      int[] freqs = readInts(buffer, termCount);
+      int[] minIDs = readInts(buffer, termCount);
+      int[] maxIDs = readInts(buffer, termCount);
+      if (buffer.getInt() != cache._maxItems) {
+        return false;
+      }
+      TermValueList<T> list = readTermList(terms, listFactory, termCount);
+      if (list == null) {
+        return false;
+      }
+      cache._nestedArray.read(buffer.slice().asIntBuffer());
+      cache.valArray = list;
+      cache.freqs = freqs;
+      cache.minIDs = minIDs;
+      cache.maxIDs = maxIDs;
+      return true;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("unable to read facet data snapshot: " + file + ", reloading", e);
+      return false;
+    } finally {
+      // the nested array was copied to the heap
+      DirectBufferUtil.free(buffer);
+    }
+  }
+
+  /**
+   * Writes the snapshot of a freshly loaded <code>cache</code>, failures are only logged.
+   */
+  void save(FacetDataCache<?> cache, String field, AtomicReader reader) {
+    File file = getFile(reader, field, SINGLE_VALUE_EXTENSION);
+    if (file == null) {
+      return;
+    }
+    File tmp = null;
+    try {
+      tmp = File.createTempFile(FILE_PREFIX, ".tmp", _dir);
+      try (DataOutputStream out = open(tmp)) {
+        writeHeader(out, reader, reader.terms(field));
+        writeTermData(out, cache);
+        BigSegmentedArray order = cache.orderArray;
+        int width = order.maxValue() == Byte.MAX_VALUE ? 1
+            : order.maxValue() == Short.MAX_VALUE ? 2 : 4;
+        int capacity = order.capacity();
+        out.writeInt(width);
+        out.writeInt(capacity);
+        for (int i = 0; i < capacity; ++i) {
+          if (width == 1) {
+            out.writeByte(order.get(i));
+          } else if (width == 2) {
+            out.writeShort(order.get(i));
+          } else {
+            out.writeInt(order.get(i));
+          }
+        }
+      }
+      commit(tmp, file);
+      tmp = null;
+    } catch (IOException e) {
+      logger.warn("unable to write facet data snapshot: " + file, e);
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Writes the snapshot of a freshly loaded <code>cache</code>, failures are only logged.
+   */
+  void save(MultiValueFacetDataCache<?> cache, String field, AtomicReader reader) {
+    File file = getFile(reader, field, MULTI_VALUE_EXTENSION);
+    if (file == null) {
+      return;
+    }
+    File tmp = null;
+    try {
+      tmp = File.createTempFile(FILE_PREFIX, ".tmp", _dir);
+      try (DataOutputStream out = open(tmp)) {
+        writeHeader(out, reader, reader.terms(field));
+        writeTermData(out, cache);
+        out.writeInt(cache._maxItems);
+        cache._nestedArray.write(out);
+      }
+      commit(tmp, file);
+      tmp = null;
+    } catch (IOException e) {
+      logger.warn("unable to write facet data snapshot: " + file, e);
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  private File getFile(AtomicReader reader, String field, String extension) {
+    String segmentName = getSegmentName(reader);
+    if (segmentName == null) {
+      return null;
+    }
+    StringBuilder buf = new StringBuilder(FILE_PREFIX).append(segmentName).append('-');
+    for (int i = 0; i < field.length(); ++i) {
+      char c = field.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+        buf.append(c);
+      } else {
+        buf.append('%').append(String.format("%04x", (int) c));
+      }
+    }
+    return new File(_dir, buf.append(extension).toString());
+  }
+
+  private static SegmentReader getSegmentReader(AtomicReader reader) {
+    while (reader instanceof BoboSegmentReader) {
+      reader = ((BoboSegmentReader) reader).getInnerReader();
+    }
+    return reader instanceof SegmentReader ? (SegmentReader) reader : null;
+  }
+
+  private static String getSegmentName(AtomicReader reader) {
+    SegmentReader segmentReader = getSegmentReader(reader);
+    return segmentReader == null ? null : segmentReader.getSegmentName();
+  }
+
+  /**
+   * @return creation time of the segment, -1 if the writer did not record it.
+   */
+  private static long getSegmentTimestamp(SegmentInfo info) {
+    String timestamp = info.getDiagnostics() == null ? null : info.getDiagnostics().get(
+      "timestamp");
+    if (timestamp != null) {
+      try {
+        return Long.parseLong(timestamp);
+      } catch (NumberFormatException e) {
+        // not written by a known writer
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return size of the files of the segment, without its deletions.
+   */
+  private static long getSegmentSize(SegmentInfo info) throws IOException {
+    long size = 0;
+    for (String file : info.files()) {
+      size += info.dir.fileLength(file);
+    }
+    return size;
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static DataOutputStream open(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+  }
+
+  private static void commit(File tmp, File file) throws IOException {
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeHeader(DataOutputStream out, AtomicReader reader, Terms terms)
+      throws IOException {
+    SegmentInfo info = getSegmentReader(reader).getSegmentInfo().info;
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(getSegmentTimestamp(info));
+    out.writeLong(getSegmentSize(info));
+    out.writeInt(reader.maxDoc());
+    out.writeInt(reader.numDocs());
+    out.writeLong(terms == null ? -1 : terms.size());
+    out.writeLong(terms == null ? -1 : terms.getSumDocFreq());
+  }
+
+  private static boolean readHeader(ByteBuffer buffer, AtomicReader reader, Terms terms)
+      throws IOException {
+    SegmentInfo info = getSegmentReader(reader).getSegmentInfo().info;
+    return buffer.getInt() == MAGIC && buffer.getInt() == VERSION
+        && buffer.getLong() == getSegmentTimestamp(info) && buffer.getLong() == getSegmentSize(info)
+        && buffer.getInt() == reader.maxDoc() && buffer.getInt() == reader.numDocs()
+        && buffer.getLong() == (terms == null ? -1 : terms.size())
+        && buffer.getLong() == (terms == null ? -1 : terms.getSumDocFreq());
+  }
+
+  private static void writeTermData(DataOutputStream out, FacetDataCache<?> cache)
+      throws IOException {
+    out.writeInt(cache.freqs.length);
+    for (int[] ints : new int[][] { cache.freqs, cache.minIDs, cache.maxIDs }) {
+      for (int val : ints) {
+        out.writeInt(val);
+      }
+    }
+  }
+
+  private static int[] readInts(ByteBuffer buffer, int count) {
+    if (count < 0 || count > buffer.remaining() / 4) {
+      throw new BufferUnderflowException();
+    }
+    int[] ints = new int[count];
+    IntBuffer intBuffer = buffer.slice().asIntBuffer();
+    intBuffer.get(ints);
+    buffer.position(buffer.position() + count * 4);
+    return ints;
+  }
+
+  /**
+   * Rebuilds the dictionary the same way the loading code does.
+   *
+   * @return null if the number of terms does not match the snapshot.
+   */
+  private static <T> TermValueList<T> readTermList(Terms terms, TermListFactory<T> listFactory,
+      int termCount) throws IOException {
+    @SuppressWarnings("unchecked")
+    TermValueList<T> list = listFactory == null ? (TermValueList<T>) new TermStringList()
+        : listFactory.createTermList();
+    list.add(null);
+    if (terms != null) {
+      TermsEnum termsEnum = terms.iterator(null);
+      BytesRef text;
+      while ((text = termsEnum.next()) != null) {
+        list.add(text.utf8ToString());
+      }
+    }
+    list.seal();
+    return list.size() == termCount ? list : null;
+  }
+}
@@ -0,0 +1,319 @@
+package com.browseengine.bobo.facets.data;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the order indexes of the facet dictionaries of the segments of a reader to global
+ * ordinals, in value order over all segments, so that values of different segments can be
+ * compared, counted and grouped as ints. Global ordinal 0 is the "no value" slot, like order
+ * index 0 of the segments.
+ * <p>
+ * A map is built once per reader generation, see
+ * {@link com.browseengine.bobo.api.BoboMultiReader#getGlobalOrdinalMap(String)}. When a reopen
+ * only adds segments the map of the previous generation is merged with the dictionaries of the
+ * new segments instead of merging all dictionaries again.
+ */
+public final class GlobalOrdinalMap {
+  private final FacetDataCache<?>[] _caches;
+  private final int[][] _segmentOrds;
+  private final int[] _valueSegments;
+  private final int[] _valueOrds;
+
+  private GlobalOrdinalMap(FacetDataCache<?>[] caches, int[][] segmentOrds, int[] valueSegments,
+      int[] valueOrds) {
+    _caches = caches;
+    _segmentOrds = segmentOrds;
+    _valueSegments = valueSegments;
+    _valueOrds = valueOrds;
+  }
+
+  /**
+   * Builds the map of the facet data of the segments of a reader.
+   *
+   * @param caches facet data of the segments, in reader order.
+   * @param previous map of an earlier generation of the reader, may be null.
+   * @return map, or null if the dictionaries are not of the same type.
+   */
+  public static GlobalOrdinalMap build(List<FacetDataCache<?>> caches, GlobalOrdinalMap previous) {
+    int numSegments = caches.size();
+    if (numSegments == 0) {
+      return null;
+    }
+    Class<?> listClass = caches.get(0).valArray.getClass();
+    for (FacetDataCache<?> cache : caches) {
+      if (cache.valArray.getClass() != listClass) {
+        return null;
+      }
+    }
+    FacetDataCache<?>[] cacheArray = caches.toArray(new FacetDataCache<?>[numSegments]);
+
+    // the previous map is reused when no segment was dropped since
+    Map<FacetDataCache<?>, Integer> segments = new IdentityHashMap<>();
+    for (int i = 0; i < numSegments; ++i) {
+      segments.put(cacheArray[i], i);
+    }
+    if (previous != null) {
+      if (previous._caches[0].valArray.getClass() != listClass) {
+        previous = null;
+      } else {
+        for (FacetDataCache<?> cache : previous._caches) {
+          if (!segments.containsKey(cache)) {
+            previous = null;
+            break;
+          }
+        }
+      }
+    }
+    if (previous != null && previous._caches.length == numSegments) {
+      return previous.reorder(cacheArray, segments);
+    }
+
+    // sources to merge: the previous map, if any, and the segments not covered by it
+    int numSources = previous == null ? numSegments : numSegments - previous._caches.length + 1;
+    Source[] sources = new Source[numSources];
+    int[][] segmentOrds = new int[numSegments][];
+    int n = 0;
+    if (previous != null) {
+      int[] valueSegments = new int[previous._valueSegments.length];
+      for (int i = 0; i < valueSegments.length; ++i) {
+        valueSegments[i] = segments.get(previous._caches[previous._valueSegments[i]]);
+      }
+      sources[n++] = Source.ofMap(cacheArray, valueSegments, previous._valueOrds);
+    }
+    for (int i = 0; i < numSegments; ++i) {
+      if (previous == null || previous.getSegmentOrdinals(cacheArray[i]) == null) {
+        segmentOrds[i] = new int[cacheArray[i].valArray.size()];
+        sources[n++] = Source.ofSegment(cacheArray, i, segmentOrds[i]);
+      }
+    }
+
+    int[] valueSegments = new int[16];
+    int[] valueOrds = new int[16];
+    int size = 1;
+    SourceQueue queue = new SourceQueue(sources);
+    while (queue.size() > 0) {
+      Source top = queue.top();
+      if (size == valueSegments.length) {
+        valueSegments = grow(valueSegments);
+        valueOrds = grow(valueOrds);
+      }
+      valueSegments[size] = top.segment();
+      valueOrds[size] = top.ord();
+      TermValueList<?> list = top.list();
+      int ord = top.ord();
+      do {
+        top.globalOrds[top.pos] = size;
+        if (++top.pos < top.size) {
+          queue.updateTop();
+        } else {
+          queue.pop();
+        }
+        top = queue.size() > 0 ? queue.top() : null;
+      } while (top != null && compare(list, ord, top.list(), top.ord()) == 0);
+      size++;
+    }
+
+    if (previous != null) {
+      // renumber the segments of the previous map
+      int[] previousToGlobal = sources[0].globalOrds;
+      for (int i = 0; i < numSegments; ++i) {
+        int[] ords = previous.getSegmentOrdinals(cacheArray[i]);
+        if (ords != null) {
+          segmentOrds[i] = new int[ords.length];
+          for (int j = 1; j < ords.length; ++j) {
+            segmentOrds[i][j] = previousToGlobal[ords[j]];
+          }
+        }
+      }
+    }
+    int[] finalSegments = new int[size];
+    System.arraycopy(valueSegments, 0, finalSegments, 0, size);
+    int[] finalOrds = new int[size];
+    System.arraycopy(valueOrds, 0, finalOrds, 0, size);
+    return new GlobalOrdinalMap(cacheArray, segmentOrds, finalSegments, finalOrds);
+  }
+
+  private GlobalOrdinalMap reorder(FacetDataCache<?>[] caches,
+      Map<FacetDataCache<?>, Integer> segments) {
+    int[][] segmentOrds = new int[caches.length][];
+    for (int i = 0; i < caches.length; ++i) {
+      segmentOrds[i] = getSegmentOrdinals(caches[i]);
+    }
+    int[] valueSegments = new int[_valueSegments.length];
+    for (int i = 0; i < valueSegments.length; ++i) {
+      valueSegments[i] = segments.get(_caches[_valueSegments[i]]);
+    }
+    return new GlobalOrdinalMap(caches, segmentOrds, valueSegments, _valueOrds);
+  }
+
+  /**
+   * @param cache facet data of a segment.
+   * @return global ordinals by order index of the segment, or null if the segment is not mapped.
+   */
+  public int[] getSegmentOrdinals(FacetDataCache<?> cache) {
+    for (int i = 0; i < _caches.length; ++i) {
+      if (_caches[i] == cache) {
+        return _segmentOrds[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return number of global ordinals, including the "no value" slot.
+   */
+  public int size() {
+    return _valueOrds.length;
+  }
+
+  /**
+   * @param ord global ordinal.
+   * @return formatted value.
+   */
+  public String getValue(int ord) {
+    return _caches[_valueSegments[ord]].valArray.get(_valueOrds[ord]);
+  }
+
+  /**
+   * @param ord global ordinal.
+   * @return raw value.
+   */
+  public Object getRawValue(int ord) {
+    return _caches[_valueSegments[ord]].valArray.getRawValue(_valueOrds[ord]);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static int compare(TermValueList<?> list1, int ord1, TermValueList<?> list2, int ord2) {
+    if (list1 instanceof AbstractTermStringList) {
+      return ((AbstractTermStringList) list1).compareValues(ord1, (AbstractTermStringList) list2,
+        ord2);
+    }
+    return ((Comparable) list1.getComparableValue(ord1)).compareTo(list2.getComparableValue(ord2));
+  }
+
+  private static int[] grow(int[] array) {
+    int[] grown = new int[array.length * 2];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  /**
+   * Sorted dictionary to merge, a segment or the values of a previous map. Position 0 is the "no
+   * value" slot and is not merged.
+   */
+  private static final class Source {
+    final FacetDataCache<?>[] caches;
+    final int segment;
+    final int[] segments;
+    final int[] ords;
+    final int[] globalOrds;
+    final int size;
+    final int index;
+    int pos = 1;
+
+    private Source(FacetDataCache<?>[] caches, int segment, int[] segments, int[] ords,
+        int[] globalOrds, int index) {
+      this.caches = caches;
+      this.segment = segment;
+      this.segments = segments;
+      this.ords = ords;
+      this.globalOrds = globalOrds;
+      this.size = globalOrds.length;
+      this.index = index;
+    }
+
+    static Source ofSegment(FacetDataCache<?>[] caches, int segment, int[] globalOrds) {
+      return new Source(caches, segment, null, null, globalOrds, segment + 1);
+    }
+
+    static Source ofMap(FacetDataCache<?>[] caches, int[] segments, int[] ords) {
+      return new Source(caches, -1, segments, ords, new int[ords.length], 0);
+    }
+
+    int segment() {
+      return segments == null ? segment : segments[pos];
+    }
+
+    int ord() {
+      return ords == null ? pos : ords[pos];
+    }
+
+    TermValueList<?> list() {
+      return caches[segment()].valArray;
+    }
+  }
+
+  private static final class SourceQueue {
+    private final Source[] _heap;
+    private int _size = 0;
+
+    SourceQueue(Source[] sources) {
+      _heap = new Source[sources.length];
+      for (Source source : sources) {
+        if (source.size > 1) {
+          _heap[_size] = source;
+          up(_size++);
+        }
+      }
+    }
+
+    int size() {
+      return _size;
+    }
+
+    Source top() {
+      return _heap[0];
+    }
+
+    void pop() {
+      _heap[0] = _heap[--_size];
+      _heap[_size] = null;
+      if (_size > 0) {
+        down(0);
+      }
+    }
+
+    void updateTop() {
+      down(0);
+    }
+
+    private boolean less(Source s1, Source s2) {
+      int cmp = compare(s1.list(), s1.ord(), s2.list(), s2.ord());
+      return cmp < 0 || (cmp == 0 && s1.index < s2.index);
+    }
+
+    private void up(int i) {
+      Source source = _heap[i];
+      while (i > 0) {
+        int parent = (i - 1) >> 1;
+        if (!less(source, _heap[parent])) {
+          break;
+        }
+        _heap[i] = _heap[parent];
+        i = parent;
+      }
+      _heap[i] = source;
+    }
+
+    private void down(int i) {
+      Source source = _heap[i];
+      while (true) {
+        int child = (i << 1) + 1;
+        if (child >= _size) {
+          break;
+        }
+        if (child + 1 < _size && less(_heap[child + 1], _heap[child])) {
+          child++;
+        }
+        if (!less(_heap[child], source)) {
+          break;
+        }
+        _heap[i] = _heap[child];
+        i = child;
+      }
+      _heap[i] = source;
+    }
+  }
+}
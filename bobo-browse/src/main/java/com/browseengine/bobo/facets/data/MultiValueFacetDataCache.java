@@ -70,6 +70,11 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T> {
    */
   public void load(String fieldName, AtomicReader reader, TermListFactory<T> listFactory,
       WorkArea workArea) throws IOException {
+    FacetDataSnapshotStore snapshots = getClass() == MultiValueFacetDataCache.class
+        ? FacetDataSnapshotStore.getInstance(reader) : null;
+    if (snapshots != null && snapshots.load(this, fieldName, reader, listFactory)) {
+      return;
+    }
     String field = fieldName.intern();
     int maxdoc = reader.maxDoc();
     BufferedLoader loader = getBufferedLoader(maxdoc, workArea);
@@ -166,6 +171,10 @@ public class MultiValueFacetDataCache<T> extends FacetDataCache<T> {
       this.maxIDs[0] = doc;
     }
     this.freqs[0] = maxdoc - (int) bitset.cardinality();
+
+    if (snapshots != null) {
+      snapshots.save(this, fieldName, reader);
+    }
   }
 
   /**
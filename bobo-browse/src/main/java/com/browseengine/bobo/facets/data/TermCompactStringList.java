@@ -0,0 +1,335 @@
+package com.browseengine.bobo.facets.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * String term list that keeps its values front coded in one UTF-8 byte array instead of one
+ * {@link String} per value, for dictionaries with many unique values.
+ * <p>
+ * Values are stored in blocks of {@link #BLOCK_SIZE}: the first value of a block in full, the
+ * others as the length of the prefix shared with the previous value plus the remaining bytes.
+ * {@link #indexOf(Object)} binary searches the first values of the blocks and then scans one
+ * block. It and {@link #compareValues(int, AbstractTermStringList, int)} compare bytes, strings
+ * are only created by {@link #get(int)} and {@link #getRawValue(int)}.
+ * <p>
+ * Values are ordered by their UTF-8 bytes, the order of the terms of the index. It is the order
+ * of {@link TermStringList} for all values but those mixing supplementary characters with
+ * characters from U+E000 to U+FFFF.
+ *
+ * @see TermListFactory#CompactStringListFactory
+ */
+public class TermCompactStringList extends AbstractTermStringList {
+
+	/**
+	 * Number of values per front coded block.
+	 */
+	public static final int BLOCK_SIZE = 16;
+
+	private boolean withDummy = true;
+
+	public TermCompactStringList(int capacity) {
+		super(capacity);
+	}
+
+	public TermCompactStringList() {
+		this(-1);
+	}
+
+	private FrontCodedValues values() {
+		return (FrontCodedValues) _innerList;
+	}
+
+	@Override
+	public boolean add(String o) {
+		FrontCodedValues values = values();
+		if (values.size() == 0 && o != null) {
+			withDummy = false; // the first value added is not null
+		}
+		if (o == null) {
+			o = "";
+		}
+		byte[] bytes = o.getBytes(StandardCharsets.UTF_8);
+		if (values.size() > (withDummy ? 1 : 0)
+				&& compare(values._last, values._lastLength, bytes, bytes.length) >= 0) {
+			throw new RuntimeException(
+					"Values need to be added in ascending order. Previous value: "
+					+ new String(values._last, 0, values._lastLength, StandardCharsets.UTF_8)
+					+ " adding value: " + o);
+		}
+		values.append(bytes);
+		return true;
+	}
+
+	@Override
+	protected List<?> buildPrimitiveList(int capacity) {
+		_type = String.class;
+		return new FrontCodedValues(capacity);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (withDummy) {
+			return indexOf(o) > 0;
+		} else {
+			return indexOf(o) >= 0;
+		}
+	}
+
+	@Override
+	public String format(Object o) {
+		return (String) o;
+	}
+
+	@Override
+	public int compareValues(int index, AbstractTermStringList other, int otherIndex) {
+		FrontCodedValues values = values();
+		FrontCodedValues otherValues = ((TermCompactStringList) other).values();
+		byte[] buf = new byte[values._maxLength];
+		byte[] otherBuf = new byte[otherValues._maxLength];
+		return compare(buf, values.decode(index, buf), otherBuf, otherValues.decode(otherIndex,
+			otherBuf));
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (withDummy) {
+			if (o == null) {
+				return -1;
+			}
+			if (o.equals("")) {
+				FrontCodedValues values = values();
+				if (values.size() > 1 && values.length(1) == 0) {
+					return 1;
+				} else {
+					// the key is not contained in the list return (-(insertion point) - 1)
+					// the insertion point of empty string should be 1, 0 is for dummy header
+					return -2;
+				}
+			}
+		}
+		return values().search(((String) o).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void seal() {
+		values().trim();
+	}
+
+	@Override
+	public boolean containsWithType(String val) {
+		return contains(val);
+	}
+
+	@Override
+	public int indexOfWithType(String o) {
+		return indexOf(o);
+	}
+
+	private static int compare(byte[] b1, int len1, byte[] b2, int len2) {
+		int len = Math.min(len1, len2);
+		for (int i = 0; i < len; ++i) {
+			int cmp = (b1[i] & 0xff) - (b2[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return len1 - len2;
+	}
+
+	/**
+	 * Front coded values, the inner list of the term list.
+	 */
+	private static final class FrontCodedValues extends AbstractList<String> {
+		private byte[] _data;
+		private int _dataLength = 0;
+		// offset of the first value of each block in _data
+		private int[] _blockOffsets;
+		private int _size = 0;
+		private int _maxLength = 0;
+		// last value added, for front coding, dropped on trim
+		private byte[] _last = new byte[16];
+		private int _lastLength = 0;
+
+		FrontCodedValues(int capacity) {
+			int blocks = capacity < 0 ? 16 : Math.max(1, (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			_blockOffsets = new int[blocks];
+			_data = new byte[Math.max(64, blocks * BLOCK_SIZE * 4)];
+		}
+
+		void append(byte[] bytes) {
+			int prefix = 0;
+			if (_size % BLOCK_SIZE == 0) {
+				int block = _size / BLOCK_SIZE;
+				if (block == _blockOffsets.length) {
+					_blockOffsets = Arrays.copyOf(_blockOffsets, block * 2);
+				}
+				_blockOffsets[block] = _dataLength;
+			} else {
+				int max = Math.min(_lastLength, bytes.length);
+				while (prefix < max && _last[prefix] == bytes[prefix]) {
+					prefix++;
+				}
+				writeVInt(prefix);
+			}
+			int suffix = bytes.length - prefix;
+			writeVInt(suffix);
+			ensureData(suffix);
+			System.arraycopy(bytes, prefix, _data, _dataLength, suffix);
+			_dataLength += suffix;
+
+			if (_last == null || _last.length < bytes.length) {
+				_last = new byte[Math.max(bytes.length, _last == null ? 16 : _last.length * 2)];
+			}
+			System.arraycopy(bytes, 0, _last, 0, bytes.length);
+			_lastLength = bytes.length;
+			_maxLength = Math.max(_maxLength, bytes.length);
+			_size++;
+		}
+
+		void trim() {
+			_data = Arrays.copyOf(_data, _dataLength);
+			_blockOffsets = Arrays.copyOf(_blockOffsets, (_size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			_last = null;
+			_lastLength = 0;
+		}
+
+		private void ensureData(int extra) {
+			if (_dataLength + extra > _data.length) {
+				_data = Arrays.copyOf(_data, Math.max(_data.length * 2, _dataLength + extra));
+			}
+		}
+
+		private void writeVInt(int i) {
+			ensureData(5);
+			while ((i & ~0x7f) != 0) {
+				_data[_dataLength++] = (byte) ((i & 0x7f) | 0x80);
+				i >>>= 7;
+			}
+			_data[_dataLength++] = (byte) i;
+		}
+
+		/**
+		 * Decodes a value into a buffer.
+		 *
+		 * @param index index of the value.
+		 * @param buf buffer of at least {@link #_maxLength} bytes.
+		 * @return length of the value.
+		 */
+		private int decode(int index, byte[] buf) {
+			Cursor cursor = new Cursor(index / BLOCK_SIZE, buf);
+			for (int i = index % BLOCK_SIZE; i > 0; --i) {
+				cursor.next();
+			}
+			return cursor.next();
+		}
+
+		/**
+		 * Decodes the values of a block one after the other into a buffer.
+		 */
+		private final class Cursor {
+			private final byte[] _buf;
+			private int _pos;
+			private boolean _first = true;
+
+			Cursor(int block, byte[] buf) {
+				_buf = buf;
+				_pos = _blockOffsets[block];
+			}
+
+			/**
+			 * @return length of the next value, decoded into the buffer.
+			 */
+			int next() {
+				int prefix = 0;
+				if (!_first) {
+					prefix = readVInt();
+				}
+				_first = false;
+				int suffix = readVInt();
+				System.arraycopy(_data, _pos, _buf, prefix, suffix);
+				_pos += suffix;
+				return prefix + suffix;
+			}
+
+			private int readVInt() {
+				byte[] data = _data;
+				int b = data[_pos++];
+				int i = b & 0x7f;
+				for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+					b = data[_pos++];
+					i |= (b & 0x7f) << shift;
+				}
+				return i;
+			}
+		}
+
+		int length(int index) {
+			return decode(index, new byte[_maxLength]);
+		}
+
+		/**
+		 * @param key UTF-8 bytes of the value.
+		 * @return index of the value, or (-(insertion point) - 1).
+		 */
+		int search(byte[] key) {
+			byte[] buf = new byte[_maxLength];
+			int numBlocks = (_size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			int lo = 0;
+			int hi = numBlocks - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int cmp = compare(buf, decode(mid * BLOCK_SIZE, buf), key, key.length);
+				if (cmp < 0) {
+					lo = mid + 1;
+				} else if (cmp > 0) {
+					hi = mid - 1;
+				} else {
+					return mid * BLOCK_SIZE;
+				}
+			}
+			// hi is the last block starting below the key
+			if (hi < 0) {
+				return -1;
+			}
+			int end = Math.min(_size, (hi + 1) * BLOCK_SIZE);
+			Cursor cursor = new Cursor(hi, buf);
+			cursor.next();
+			for (int i = hi * BLOCK_SIZE + 1; i < end; ++i) {
+				int cmp = compare(buf, cursor.next(), key, key.length);
+				if (cmp == 0) {
+					return i;
+				}
+				if (cmp > 0) {
+					return -i - 1;
+				}
+			}
+			return -end - 1;
+		}
+
+		@Override
+		public String get(int index) {
+			if (index < 0 || index >= _size) {
+				throw new IndexOutOfBoundsException("index: " + index + ", size: " + _size);
+			}
+			byte[] buf = new byte[_maxLength];
+			return new String(buf, 0, decode(index, buf), StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public int size() {
+			return _size;
+		}
+
+		@Override
+		public void clear() {
+			_dataLength = 0;
+			_size = 0;
+			_maxLength = 0;
+			_lastLength = 0;
+			_last = new byte[16];
+		}
+	}
+}
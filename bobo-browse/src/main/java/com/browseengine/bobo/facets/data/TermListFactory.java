@@ -20,4 +20,21 @@ public interface TermListFactory<T> {
       return String.class;
     }
   };
+
+  /**
+   * Factory of {@link TermCompactStringList}s, for string facets with many unique values.
+   */
+  public static TermListFactory<String> CompactStringListFactory = new TermListFactory<>() {
+    public TermValueList<String> createTermList(int capacity) {
+      return new TermCompactStringList(capacity);
+    }
+
+    public TermValueList<String> createTermList() {
+      return createTermList(-1);
+    }
+
+    public Class<?> getType() {
+      return String.class;
+    }
+  };
 }
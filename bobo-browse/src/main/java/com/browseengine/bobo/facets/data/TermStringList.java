@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class TermStringList extends TermValueList<String> {
+public class TermStringList extends AbstractTermStringList {
 
 	private String sanity = null;
 	private boolean withDummy = true;
@@ -61,6 +61,11 @@ public class TermStringList extends TermValueList<String> {
 		return (String) o;
 	}
 
+	@Override
+	public int compareValues(int index, AbstractTermStringList other, int otherIndex) {
+		return getRawValue(index).compareTo(other.getRawValue(otherIndex));
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public int indexOf(Object o) {
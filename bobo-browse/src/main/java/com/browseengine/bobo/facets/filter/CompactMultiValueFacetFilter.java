@@ -51,13 +51,16 @@ public class CompactMultiValueFacetFilter extends RandomAccessFilter {
     private int _doc;
     private int _maxID;
     private final BigSegmentedArray _orderArray;
+    private final long _cost;
 
     public CompactMultiValueFacetDocIdSetIterator(FacetDataCache<?> dataCache, int[] index, int bits) {
       _bits = bits;
       _doc = Integer.MAX_VALUE;
       _maxID = -1;
       _orderArray = dataCache.orderArray;
+      long freqs = 0;
       for (int i : index) {
+        freqs += dataCache.freqs[i];
         if (_doc > dataCache.minIDs[i]) {
           _doc = dataCache.minIDs[i];
         }
@@ -67,6 +70,8 @@ public class CompactMultiValueFacetFilter extends RandomAccessFilter {
       }
       _doc--;
       if (_doc < 0) _doc = -1;
+      // docs with several of the values are counted once per value
+      _cost = Math.min(freqs, Math.max(0, _maxID - _doc));
     }
 
     @Override
@@ -90,8 +95,7 @@ public class CompactMultiValueFacetFilter extends RandomAccessFilter {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
   }
 
@@ -40,12 +40,14 @@ public class FacetFilter extends RandomAccessFilter {
     protected final int _index;
     protected final int _maxID;
     protected final BigSegmentedArray _orderArray;
+    private final long _cost;
 
     public FacetDocIdSetIterator(FacetDataCache<?> dataCache, int index) {
       _index = index;
       _doc = Math.max(-1, dataCache.minIDs[_index] - 1);
       _maxID = dataCache.maxIDs[_index];
       _orderArray = dataCache.orderArray;
+      _cost = dataCache.freqs[_index];
     }
 
     @Override
@@ -69,8 +71,7 @@ public class FacetFilter extends RandomAccessFilter {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
 
   }
@@ -0,0 +1,309 @@
+package com.browseengine.bobo.facets.filter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.IndexReader;
+
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.api.BrowseSelection.ValueOperation;
+import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.facets.FacetHandler;
+
+/**
+ * Bounded LRU cache of the filters of facet selections and of their per segment
+ * {@link RandomAccessDocIdSet}s and selectivities, so that repeated selections neither build
+ * their filters nor their doc id sets again. It is meant to be shared by all browsers of an
+ * index, see {@link com.browseengine.bobo.api.MultiBoboBrowser#setFilterCache(FacetFilterCache)}.
+ * <p>
+ * Filters are keyed by facet handler instance and selection (values, not values, operation and
+ * properties), doc id sets by segment reader as well, they are dropped when the segment reader is
+ * closed. The cached filters and doc id sets must not depend on anything else, which holds for
+ * the filters of the handlers loaded with the reader, runtime facet handlers are not cached.
+ */
+public class FacetFilterCache {
+  private final int _maxSize;
+  private final LinkedHashMap<Key, Entry> _cache;
+  private final LinkedHashMap<SelectionKey, RandomAccessFilter> _filters;
+  private final Set<Object> _readerKeys = new HashSet<>();
+
+  private long _hitCount = 0;
+  private long _missCount = 0;
+  private long _evictionCount = 0;
+
+  /**
+   * @param maxSize maximum number of cached segment doc id sets.
+   */
+  public FacetFilterCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    _maxSize = maxSize;
+    _cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        if (size() > _maxSize) {
+          _evictionCount++;
+          return true;
+        }
+        return false;
+      }
+    };
+    _filters = new LinkedHashMap<SelectionKey, RandomAccessFilter>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<SelectionKey, RandomAccessFilter> eldest) {
+        return size() > _maxSize;
+      }
+    };
+  }
+
+  /**
+   * Gets the filter of a selection, the handler only builds it when the selection is not cached.
+   * The doc id sets of the returned filter are looked up in this cache.
+   *
+   * @param handler handler of the selection.
+   * @param sel selection.
+   * @return caching filter, or the filter built by <code>handler</code> itself if it is null or
+   *         empty.
+   * @throws IOException if the handler failed to build the filter.
+   */
+  public RandomAccessFilter getFilter(FacetHandler<?> handler, BrowseSelection sel)
+      throws IOException {
+    SelectionKey selection = new SelectionKey(handler, sel);
+    synchronized (this) {
+      if (_filters.containsKey(selection)) {
+        return _filters.get(selection);
+      }
+    }
+    RandomAccessFilter filter = handler.buildFilter(sel);
+    if (filter != null && !(filter instanceof EmptyFilter)) {
+      filter = new CachingFilter(this, selection, filter);
+    }
+    synchronized (this) {
+      _filters.put(selection, filter);
+    }
+    return filter;
+  }
+
+  public int getMaxSize() {
+    return _maxSize;
+  }
+
+  public synchronized int size() {
+    return _cache.size();
+  }
+
+  public synchronized long getHitCount() {
+    return _hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return _missCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return _evictionCount;
+  }
+
+  /**
+   * Drops all entries, the statistics are kept.
+   */
+  public synchronized void clear() {
+    _cache.clear();
+    _filters.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "FacetFilterCache[size=" + _cache.size() + ", maxSize=" + _maxSize + ", hits="
+        + _hitCount + ", misses=" + _missCount + ", evictions=" + _evictionCount + "]";
+  }
+
+  private synchronized RandomAccessDocIdSet getDocIdSet(Key key) {
+    Entry entry = _cache.get(key);
+    if (entry != null && entry.docIdSet != null) {
+      _hitCount++;
+      return entry.docIdSet;
+    }
+    _missCount++;
+    return null;
+  }
+
+  private synchronized double getSelectivity(Key key) {
+    Entry entry = _cache.get(key);
+    return entry == null ? -1 : entry.selectivity;
+  }
+
+  private void putDocIdSet(Key key, AtomicReader reader, RandomAccessDocIdSet docIdSet) {
+    synchronized (this) {
+      getEntry(key).docIdSet = docIdSet;
+      if (!_readerKeys.add(key._readerKey)) {
+        return;
+      }
+    }
+    watch(reader, key._readerKey);
+  }
+
+  private void putSelectivity(Key key, AtomicReader reader, double selectivity) {
+    synchronized (this) {
+      getEntry(key).selectivity = selectivity;
+      if (!_readerKeys.add(key._readerKey)) {
+        return;
+      }
+    }
+    watch(reader, key._readerKey);
+  }
+
+  private Entry getEntry(Key key) {
+    Entry entry = _cache.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      _cache.put(key, entry);
+    }
+    return entry;
+  }
+
+  private void watch(AtomicReader reader, final Object readerKey) {
+    reader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+      @Override
+      public void onClose(IndexReader reader) {
+        purge(readerKey);
+      }
+    });
+  }
+
+  private synchronized void purge(Object readerKey) {
+    _readerKeys.remove(readerKey);
+    Iterator<Key> iter = _cache.keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next()._readerKey == readerKey) {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * The inner reader is keyed rather than the bobo reader, browsers are usually short lived but
+   * the segment readers they wrap are not.
+   */
+  private static AtomicReader getInnerReader(BoboSegmentReader reader) {
+    AtomicReader inner = reader;
+    while (inner instanceof BoboSegmentReader) {
+      inner = ((BoboSegmentReader) inner).getInnerReader();
+    }
+    return inner;
+  }
+
+  private static class Entry {
+    RandomAccessDocIdSet docIdSet = null;
+    double selectivity = -1;
+  }
+
+  private static final class SelectionKey {
+    private final FacetHandler<?> _handler;
+    private final String[] _values;
+    private final String[] _notValues;
+    private final ValueOperation _operation;
+    private final Properties _properties;
+    private final int _hashCode;
+
+    SelectionKey(FacetHandler<?> handler, BrowseSelection sel) {
+      _handler = handler;
+      _values = sel.getValues();
+      _notValues = sel.getNotValues();
+      _operation = sel.getSelectionOperation();
+      _properties = (Properties) sel.getSelectionProperties().clone();
+      _hashCode = System.identityHashCode(handler) * 31 * 31 * 31 + Arrays.hashCode(_values) * 31
+          * 31 + Arrays.hashCode(_notValues) * 31 + _operation.hashCode() + _properties.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SelectionKey)) {
+        return false;
+      }
+      SelectionKey other = (SelectionKey) o;
+      return _handler == other._handler && _operation == other._operation
+          && Arrays.equals(_values, other._values) && Arrays.equals(_notValues, other._notValues)
+          && _properties.equals(other._properties);
+    }
+  }
+
+  private static final class Key {
+    private final Object _readerKey;
+    private final SelectionKey _selection;
+
+    Key(Object readerKey, SelectionKey selection) {
+      _readerKey = readerKey;
+      _selection = selection;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(_readerKey) * 31 + _selection.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return _readerKey == other._readerKey && _selection.equals(other._selection);
+    }
+  }
+
+  private static final class CachingFilter extends RandomAccessFilter {
+    private final FacetFilterCache _cache;
+    private final SelectionKey _selection;
+    private final RandomAccessFilter _filter;
+
+    CachingFilter(FacetFilterCache cache, SelectionKey selection, RandomAccessFilter filter) {
+      _cache = cache;
+      _selection = selection;
+      _filter = filter;
+    }
+
+    @Override
+    public RandomAccessDocIdSet getRandomAccessDocIdSet(BoboSegmentReader reader)
+        throws IOException {
+      AtomicReader inner = getInnerReader(reader);
+      Key key = new Key(inner, _selection);
+      RandomAccessDocIdSet docIdSet = _cache.getDocIdSet(key);
+      if (docIdSet == null) {
+        docIdSet = _filter.getRandomAccessDocIdSet(reader);
+        _cache.putDocIdSet(key, inner, docIdSet);
+      }
+      return docIdSet;
+    }
+
+    @Override
+    public double getFacetSelectivity(BoboSegmentReader reader) {
+      AtomicReader inner = getInnerReader(reader);
+      Key key = new Key(inner, _selection);
+      double selectivity = _cache.getSelectivity(key);
+      if (selectivity < 0) {
+        selectivity = _filter.getFacetSelectivity(reader);
+        _cache.putSelectivity(key, inner, selectivity);
+      }
+      return selectivity;
+    }
+  }
+}
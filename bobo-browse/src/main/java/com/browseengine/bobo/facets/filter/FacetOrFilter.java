@@ -114,6 +114,7 @@ public class FacetOrFilter extends RandomAccessFilter {
     protected int _maxID;
     protected final OpenBitSet _bitset;
     protected final BigSegmentedArray _orderArray;
+    private final long _cost;
 
     public FacetOrDocIdSetIterator(FacetDataCache<?> dataCache, OpenBitSet bitset) {
       _dataCache = dataCache;
@@ -123,11 +124,13 @@ public class FacetOrFilter extends RandomAccessFilter {
       _doc = Integer.MAX_VALUE;
       _maxID = -1;
       int size = _dataCache.valArray.size();
+      long freqs = 0;
 
       for (int i = 0; i < size; ++i) {
         if (!bitset.fastGet(i)) {
           continue;
         }
+        freqs += _dataCache.freqs[i];
         if (_doc > _dataCache.minIDs[i]) {
           _doc = _dataCache.minIDs[i];
         }
@@ -139,6 +142,8 @@ public class FacetOrFilter extends RandomAccessFilter {
       if (_doc < 0) {
         _doc = -1;
       }
+      // docs with several of the values are counted once per value
+      _cost = Math.min(freqs, Math.max(0, _maxID - _doc));
     }
 
     @Override
@@ -162,8 +167,7 @@ public class FacetOrFilter extends RandomAccessFilter {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
   }
 
@@ -53,16 +53,20 @@ public final class FacetRangeFilter extends RandomAccessFilter {
     private final int _start;
     private final int _end;
     private final BigSegmentedArray _orderArray;
+    private final long _cost;
 
     FacetRangeDocIdSetIterator(int start, int end, FacetDataCache<?> dataCache) {
       _start = start;
       _end = end;
+      long freqs = 0;
       for (int i = start; i <= end; ++i) {
+        freqs += dataCache.freqs[i];
         _minID = Math.min(_minID, dataCache.minIDs[i]);
         _maxID = Math.max(_maxID, dataCache.maxIDs[i]);
       }
       _doc = Math.max(-1, _minID - 1);
       _orderArray = dataCache.orderArray;
+      _cost = freqs;
     }
 
     @Override
@@ -87,8 +91,7 @@ public final class FacetRangeFilter extends RandomAccessFilter {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
   }
 
@@ -100,16 +103,21 @@ public final class FacetRangeFilter extends RandomAccessFilter {
     private final int _start;
     private final int _end;
     private final BigNestedIntArray nestedArray;
+    private final long _cost;
 
     MultiFacetRangeDocIdSetIterator(int start, int end, MultiValueFacetDataCache<?> dataCache) {
       _start = start;
       _end = end;
+      long freqs = 0;
       for (int i = start; i <= end; ++i) {
+        freqs += dataCache.freqs[i];
         _minID = Math.min(_minID, dataCache.minIDs[i]);
         _maxID = Math.max(_maxID, dataCache.maxIDs[i]);
       }
       _doc = Math.max(-1, _minID - 1);
       nestedArray = dataCache._nestedArray;
+      // docs with several of the values are counted once per value
+      _cost = Math.min(freqs, Math.max(0, _maxID - _doc));
     }
 
     @Override
@@ -134,8 +142,7 @@ public final class FacetRangeFilter extends RandomAccessFilter {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
   }
 
@@ -166,7 +173,24 @@ public final class FacetRangeFilter extends RandomAccessFilter {
     return list.toIntArray();
   }
 
+  /**
+   * Parses a range string into order indexes of a segment. Ranges are parsed once per segment,
+   * see {@link FacetDataCache#getRangeIndexes(String)}.
+   *
+   * @param dataCache facet data of the segment.
+   * @param rangeString range string like <code>[10 TO 20)</code>.
+   * @return inclusive start and end order indexes, the array is shared and must not be modified.
+   */
   public static int[] parse(FacetDataCache<?> dataCache, String rangeString) {
+    int[] range = dataCache.getRangeIndexes(rangeString);
+    if (range == null) {
+      range = parseIndexes(dataCache, rangeString);
+      dataCache.putRangeIndexes(rangeString, range);
+    }
+    return range;
+  }
+
+  private static int[] parseIndexes(FacetDataCache<?> dataCache, String rangeString) {
     String[] ranges = getRangeStrings(rangeString);
     String lower = ranges[0];
     String upper = ranges[1];
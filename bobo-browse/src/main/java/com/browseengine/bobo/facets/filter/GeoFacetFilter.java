@@ -4,6 +4,7 @@
 package com.browseengine.bobo.facets.filter;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.lucene.search.DocIdSetIterator;
 
@@ -12,6 +13,7 @@ import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
 import com.browseengine.bobo.facets.FacetHandler;
 import com.browseengine.bobo.facets.impl.GeoFacetHandler.GeoFacetData;
 import com.browseengine.bobo.util.BigFloatArray;
+import com.browseengine.bobo.util.GeoGrid;
 import com.browseengine.bobo.util.GeoMatchUtil;
 
 public class GeoFacetFilter extends RandomAccessFilter {
@@ -51,13 +53,14 @@ public class GeoFacetFilter extends RandomAccessFilter {
 
     final GeoFacetData dataCache = _handler.getFacetData(reader);
     return new GeoDocIdSet(dataCache.get_xValArray(), dataCache.get_yValArray(),
-        dataCache.get_zValArray(), _lat, _lon, _rad, maxDoc, _miles);
+        dataCache.get_zValArray(), dataCache.getGrid(), _lat, _lon, _rad, maxDoc, _miles);
   }
 
   private static final class GeoDocIdSet extends RandomAccessDocIdSet {
     private final BigFloatArray _xvals;
     private final BigFloatArray _yvals;
     private final BigFloatArray _zvals;
+    private final GeoGrid _grid;
     private final float _radius;
     private final float _targetX;
     private final float _targetY;
@@ -72,6 +75,7 @@ public class GeoFacetFilter extends RandomAccessFilter {
      * @param xvals       array of x coordinate values for docid
      * @param yvals       array of y coordinate values for docid
      * @param zvals       array of z coordinate values for docid
+     * @param grid        spatial grid of the docs, may be null
      * @param lat         target latitude
      * @param lon         target longitude
      * @param radius      target radius
@@ -79,10 +83,12 @@ public class GeoFacetFilter extends RandomAccessFilter {
      * @param miles       variable to specify if the geo distance calculations are in miles. False indicates distance calculation is in kilometers
      */
     GeoDocIdSet(final BigFloatArray xvals, final BigFloatArray yvals, final BigFloatArray zvals,
-        final float lat, final float lon, final float radius, final int maxdoc, boolean miles) {
+        final GeoGrid grid, final float lat, final float lon, final float radius, final int maxdoc,
+        boolean miles) {
       _xvals = xvals;
       _yvals = yvals;
       _zvals = zvals;
+      _grid = grid;
       _miles = miles;
       if (_miles) _radius = GeoMatchUtil.getMilesRadiusCosine(radius);
       else _radius = GeoMatchUtil.getKMRadiusCosine(radius);
@@ -106,6 +112,15 @@ public class GeoFacetFilter extends RandomAccessFilter {
 
     @Override
     public DocIdSetIterator iterator() {
+      if (_grid != null) {
+        int[] candidates = _grid.getCandidates(_targetX - _delta, _targetX + _delta, _targetY
+            - _delta, _targetY + _delta, _targetZ - _delta, _targetZ + _delta);
+        // null if the range covers too much of the segment, all docs are then checked
+        if (candidates != null) {
+          return new GeoGridDocIdSetIterator(candidates, _xvals, _yvals, _zvals, _targetX,
+              _targetY, _targetZ, _radius);
+        }
+      }
       return new GeoDocIdSetIterator(_xvals, _yvals, _zvals, _targetX, _targetY, _targetZ, _delta,
           _radius, _maxDoc);
     }
@@ -213,8 +228,72 @@ public class GeoFacetFilter extends RandomAccessFilter {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      // every doc of the segment is checked
+      return _maxDoc;
+    }
+  }
+
+  /**
+   * Iterates the docs of the grid cells overlapping the bounding box of the range.
+   */
+  private static final class GeoGridDocIdSetIterator extends DocIdSetIterator {
+    private final int[] _candidates;
+    private final BigFloatArray _xvals;
+    private final BigFloatArray _yvals;
+    private final BigFloatArray _zvals;
+    private final float _radius;
+    private final float _targetX;
+    private final float _targetY;
+    private final float _targetZ;
+    private int _pos;
+    private int _doc;
+
+    GeoGridDocIdSetIterator(int[] candidates, BigFloatArray xvals, BigFloatArray yvals,
+        BigFloatArray zvals, float targetX, float targetY, float targetZ, float radiusCosine) {
+      _candidates = candidates;
+      _xvals = xvals;
+      _yvals = yvals;
+      _zvals = zvals;
+      _targetX = targetX;
+      _targetY = targetY;
+      _targetZ = targetZ;
+      _radius = radiusCosine;
+      _pos = -1;
+      _doc = -1;
+    }
+
+    @Override
+    public int docID() {
+      return _doc;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      while (++_pos < _candidates.length) {
+        int docid = _candidates[_pos];
+        if (inCircle(_xvals.get(docid), _yvals.get(docid), _zvals.get(docid), _targetX, _targetY,
+          _targetZ, _radius)) {
+          _doc = docid;
+          return _doc;
+        }
+      }
+      _doc = DocIdSetIterator.NO_MORE_DOCS;
+      return _doc;
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      if (_doc >= target) {
+        return nextDoc();
+      }
+      int pos = Arrays.binarySearch(_candidates, _pos + 1, _candidates.length, target);
+      _pos = (pos < 0 ? -pos - 1 : pos) - 1;
+      return nextDoc();
+    }
+
+    @Override
+    public long cost() {
+      return _candidates.length;
     }
   }
 
@@ -44,6 +44,8 @@ public final class GeoSimpleFacetFilter extends RandomAccessFilter {
     private final int _longStart;
     private final int _longEnd;
     private final BigSegmentedArray _latOrderArray;
+    private final BigSegmentedArray _longOrderArray;
+    private final long _cost;
 
     GeoSimpleDocIdSetIterator(int latStart, int latEnd, int longStart, int longEnd,
         FacetDataCache<?> latDataCache, FacetDataCache<?> longDataCache) {
@@ -51,16 +53,29 @@ public final class GeoSimpleFacetFilter extends RandomAccessFilter {
       _longStart = longStart;
       _latEnd = latEnd;
       _longEnd = longEnd;
+      // a match is in the doc id span of both the latitude and the longitude range
+      int latMinID = Integer.MAX_VALUE;
+      int latMaxID = -1;
+      long latFreqs = 0;
       for (int i = latStart; i <= latEnd; ++i) {
-        _minID = Math.min(_minID, latDataCache.minIDs[i]);
-        _maxID = Math.max(_maxID, latDataCache.maxIDs[i]);
+        latFreqs += latDataCache.freqs[i];
+        latMinID = Math.min(latMinID, latDataCache.minIDs[i]);
+        latMaxID = Math.max(latMaxID, latDataCache.maxIDs[i]);
       }
+      int longMinID = Integer.MAX_VALUE;
+      int longMaxID = -1;
+      long longFreqs = 0;
       for (int i = longStart; i <= longEnd; ++i) {
-        _minID = Math.min(_minID, longDataCache.minIDs[i]);
-        _maxID = Math.max(_maxID, longDataCache.maxIDs[i]);
+        longFreqs += longDataCache.freqs[i];
+        longMinID = Math.min(longMinID, longDataCache.minIDs[i]);
+        longMaxID = Math.max(longMaxID, longDataCache.maxIDs[i]);
       }
+      _minID = Math.max(latMinID, longMinID);
+      _maxID = Math.min(latMaxID, longMaxID);
       _doc = Math.max(-1, _minID - 1);
       _latOrderArray = latDataCache.orderArray;
+      _longOrderArray = longDataCache.orderArray;
+      _cost = Math.min(Math.min(latFreqs, longFreqs), Math.max(0, _maxID - _doc));
     }
 
     @Override
@@ -72,13 +87,14 @@ public final class GeoSimpleFacetFilter extends RandomAccessFilter {
     final public int nextDoc() throws IOException {
       int latIndex;
       int longIndex;
-      while (++_doc < _maxID) { // not yet reached end
+      while (++_doc <= _maxID) { // not yet reached end
         latIndex = _latOrderArray.get(_doc);
-        longIndex = _latOrderArray.get(_doc);
+        longIndex = _longOrderArray.get(_doc);
         if ((latIndex >= _latStart && latIndex <= _latEnd)
             && (longIndex >= _longStart && longIndex <= _longEnd)) return _doc;
       }
-      return DocIdSetIterator.NO_MORE_DOCS;
+      _doc = DocIdSetIterator.NO_MORE_DOCS;
+      return _doc;
     }
 
     @Override
@@ -88,21 +104,21 @@ public final class GeoSimpleFacetFilter extends RandomAccessFilter {
       }
       int latIndex;
       int longIndex;
-      while (++_doc < _maxID) { // not yet reached end
+      while (++_doc <= _maxID) { // not yet reached end
         latIndex = _latOrderArray.get(_doc);
-        longIndex = _latOrderArray.get(_doc);
+        longIndex = _longOrderArray.get(_doc);
         if ((latIndex >= _latStart && latIndex <= _latEnd)
             && (longIndex >= _longStart && longIndex <= _longEnd)) {
           return _doc;
         }
       }
-      return DocIdSetIterator.NO_MORE_DOCS;
+      _doc = DocIdSetIterator.NO_MORE_DOCS;
+      return _doc;
     }
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
   }
 
@@ -38,16 +38,25 @@ public class RandomAccessAndFilter extends RandomAccessFilter {
     if (_filters.size() == 1) {
       return _filters.get(0).getRandomAccessDocIdSet(reader);
     } else {
-      List<DocIdSet> list = new ArrayList<>(_filters.size());
-      List<RandomAccessDocIdSet> randomAccessList = new ArrayList<>(
-          _filters.size());
-      for (RandomAccessFilter f : _filters) {
+      int size = _filters.size();
+      List<DocIdSet> list = new ArrayList<>(size);
+      final RandomAccessDocIdSet[] randomAccessDocIdSets = new RandomAccessDocIdSet[size];
+      double[] selectivities = new double[size];
+      for (int i = 0; i < size; ++i) {
+        RandomAccessFilter f = _filters.get(i);
         RandomAccessDocIdSet s = f.getRandomAccessDocIdSet(reader);
         list.add(s);
-        randomAccessList.add(s);
+        // random access checks the most selective filters first, they reject most docs
+        double selectivity = f.getFacetSelectivity(reader);
+        int j = i;
+        while (j > 0 && selectivities[j - 1] > selectivity) {
+          selectivities[j] = selectivities[j - 1];
+          randomAccessDocIdSets[j] = randomAccessDocIdSets[j - 1];
+          j--;
+        }
+        selectivities[j] = selectivity;
+        randomAccessDocIdSets[j] = s;
       }
-      final RandomAccessDocIdSet[] randomAccessDocIdSets = randomAccessList
-          .toArray(new RandomAccessDocIdSet[randomAccessList.size()]);
       final DocIdSet andDocIdSet = new AndDocIdSet(list);
       return new RandomAccessDocIdSet() {
         @Override
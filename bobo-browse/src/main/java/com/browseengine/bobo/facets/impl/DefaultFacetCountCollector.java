@@ -107,6 +107,25 @@ public abstract class DefaultFacetCountCollector implements FacetCountCollector
   @Override
   abstract public void collect(int docid);
 
+  /**
+   * @return true if {@link #uncollect(int[], int)} is supported, that is when
+   *         {@link #collectAll()} counts every live document from the freqs of the facet data.
+   */
+  public boolean isUncollectSupported() {
+    return false;
+  }
+
+  /**
+   * Removes a block of hits from the counts, so that a dense match is counted as
+   * {@link #collectAll()} minus the documents not matching. Only valid on a segment without
+   * deletions, whose freqs count all documents.
+   * @param docs doc ids, counted before.
+   * @param len number of doc ids in <code>docs</code>.
+   */
+  public void uncollect(int[] docs, int len) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   abstract public void collectAll();
 
@@ -27,6 +27,13 @@ public class GeoFacetCountCollector implements FacetCountCollector {
   private final int _countlength;
   private final TermStringList _predefinedRanges;
   private final GeoRange[] _ranges;
+  // geometry of the ranges, computed once: unit sphere coordinates of the centers, cosines of
+  // the radiuses and half sides of the bounding boxes
+  private final float[] _targetX;
+  private final float[] _targetY;
+  private final float[] _targetZ;
+  private final float[] _radiusCosines;
+  private final float[] _deltas;
   private final BigFloatArray _xvals;
   private final BigFloatArray _yvals;
   private final BigFloatArray _zvals;
@@ -93,6 +100,26 @@ public class GeoFacetCountCollector implements FacetCountCollector {
       _ranges[index++] = parse(range);
     }
     _miles = miles;
+
+    _targetX = new float[_ranges.length];
+    _targetY = new float[_ranges.length];
+    _targetZ = new float[_ranges.length];
+    _radiusCosines = new float[_ranges.length];
+    _deltas = new float[_ranges.length];
+    for (int i = 0; i < _ranges.length; ++i) {
+      GeoRange range = _ranges[i];
+      float[] coords = GeoMatchUtil.geoMatchCoordsFromDegrees(range.getLat(), range.getLon());
+      _targetX[i] = coords[0];
+      _targetY[i] = coords[1];
+      _targetZ[i] = coords[2];
+      if (_miles) {
+        _radiusCosines[i] = GeoMatchUtil.getMilesRadiusCosine(range.getRad());
+        _deltas[i] = range.getRad() / GeoMatchUtil.EARTH_RADIUS_MILES;
+      } else {
+        _radiusCosines[i] = GeoMatchUtil.getKMRadiusCosine(range.getRad());
+        _deltas[i] = range.getRad() / GeoMatchUtil.EARTH_RADIUS_KM;
+      }
+    }
   }
 
   /**
@@ -100,50 +127,31 @@ public class GeoFacetCountCollector implements FacetCountCollector {
    */
   @Override
   public void collect(int docid) {
-    float docX = _xvals.get(docid);
-    float docY = _yvals.get(docid);
-    float docZ = _zvals.get(docid);
-
-    float radius, targetX, targetY, targetZ, delta;
-    float xu, xl, yu, yl, zu, zl;
-    int countIndex = -1;
-    for (GeoRange range : _ranges) {
-      // the countIndex for the count array should increment with the range index of the _ranges
-      // array
-      countIndex++;
-      if (_miles) radius = GeoMatchUtil.getMilesRadiusCosine(range.getRad());
-      else radius = GeoMatchUtil.getKMRadiusCosine(range.getRad());
-
-      float[] coords = GeoMatchUtil.geoMatchCoordsFromDegrees(range.getLat(), range.getLon());
-      targetX = coords[0];
-      targetY = coords[1];
-      targetZ = coords[2];
-
-      if (_miles) delta = (range.getRad() / GeoMatchUtil.EARTH_RADIUS_MILES);
-      else delta = (range.getRad() / GeoMatchUtil.EARTH_RADIUS_KM);
+    count(_xvals.get(docid), _yvals.get(docid), _zvals.get(docid));
+  }
 
-      xu = targetX + delta;
-      xl = targetX - delta;
+  @Override
+  public void collect(int[] docs, int len) {
+    for (int i = 0; i < len; ++i) {
+      int docid = docs[i];
+      count(_xvals.get(docid), _yvals.get(docid), _zvals.get(docid));
+    }
+  }
 
+  private void count(float docX, float docY, float docZ) {
+    for (int i = 0; i < _targetX.length; ++i) {
+      float delta = _deltas[i];
       // try to see if the range checks can short circuit the actual inCircle check
-      if (docX > xu || docX < xl) continue;
-
-      yu = targetY + delta;
-      yl = targetY - delta;
-
-      if (docY > yu || docY < yl) continue;
-
-      zu = targetZ + delta;
-      zl = targetZ - delta;
-
-      if (docZ > zu || docZ < zl) continue;
-
-      if (GeoFacetFilter.inCircle(docX, docY, docZ, targetX, targetY, targetZ, radius)) {
-        // if the lat, lon values of this docid match the current user-specified range, then
-        // increment the
-        // appropriate count[] value
-        _count.add(countIndex, _count.get(countIndex) + 1);
-        // do not break here, since one document could lie in multiple user-specified ranges
+      float targetX = _targetX[i];
+      if (docX > targetX + delta || docX < targetX - delta) continue;
+      float targetY = _targetY[i];
+      if (docY > targetY + delta || docY < targetY - delta) continue;
+      float targetZ = _targetZ[i];
+      if (docZ > targetZ + delta || docZ < targetZ - delta) continue;
+
+      if (GeoFacetFilter.inCircle(docX, docY, docZ, targetX, targetY, targetZ, _radiusCosines[i])) {
+        // one document could lie in multiple user-specified ranges, so do not break here
+        _count.add(i, _count.get(i) + 1);
       }
     }
   }
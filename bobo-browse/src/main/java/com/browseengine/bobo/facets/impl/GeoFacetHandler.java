@@ -23,6 +23,7 @@ import com.browseengine.bobo.facets.impl.GeoFacetCountCollector.GeoRange;
 import com.browseengine.bobo.sort.DocComparatorSource;
 import com.browseengine.bobo.util.BigFloatArray;
 import com.browseengine.bobo.util.BigSegmentedArray;
+import com.browseengine.bobo.util.GeoGrid;
 import com.browseengine.bobo.util.GeoMatchUtil;
 
 public class GeoFacetHandler extends FacetHandler<GeoFacetHandler.GeoFacetData> {
@@ -31,6 +32,8 @@ public class GeoFacetHandler extends FacetHandler<GeoFacetHandler.GeoFacetData>
 	private final String _lonFieldName;
 	// variable to specify if the geo distance calculations are in miles. Default is miles
 	private boolean _miles;
+	// cells per axis of the spatial grid of the segments, 0 for no grid
+	private int _gridCellsPerAxis = 0;
 
 	/**
 	 * Constructor for GeoFacetHandler
@@ -59,11 +62,32 @@ public class GeoFacetHandler extends FacetHandler<GeoFacetHandler.GeoFacetData>
 		_miles = miles;
 	}
 
+	/**
+	 * Constructor for GeoFacetHandler with a spatial grid, so that range filters only check the
+	 * docs of the grid cells around the range.
+	 *
+	 * @param name             name of the geo facet
+	 * @param latFieldName     name of the index field that stores the latitude value
+	 * @param lonFieldName     name of the index field that stores the longitude value
+	 * @param miles            variable to specify if the geo distance calculations are in miles. False indicates distance calculation is in kilometers
+	 * @param gridCellsPerAxis cells along each axis of the grid of a segment, at most {@link GeoGrid#MAX_CELLS_PER_AXIS}; 0 for no grid
+	 */
+	public GeoFacetHandler(String name, String latFieldName, String lonFieldName, boolean miles,
+			int gridCellsPerAxis) {
+		this(name, latFieldName, lonFieldName, miles);
+		if (gridCellsPerAxis < 0 || gridCellsPerAxis > GeoGrid.MAX_CELLS_PER_AXIS) {
+			throw new IllegalArgumentException("gridCellsPerAxis must be in [0, "
+					+ GeoGrid.MAX_CELLS_PER_AXIS + "]: " + gridCellsPerAxis);
+		}
+		_gridCellsPerAxis = gridCellsPerAxis;
+	}
+
 	public static class GeoFacetData {
 
 		private BigFloatArray _xValArray;
 		private BigFloatArray _yValArray;
 		private BigFloatArray _zValArray;
+		private GeoGrid _grid;
 
 		public GeoFacetData() {
 			_xValArray = null;
@@ -125,6 +149,23 @@ public class GeoFacetHandler extends FacetHandler<GeoFacetHandler.GeoFacetData>
 			_zValArray = zValArray;
 		}
 
+		/**
+		 * @return the spatial grid of the docs, null if not built
+		 */
+		public GeoGrid getGrid() {
+			return _grid;
+		}
+
+		/**
+		 * Builds the spatial grid of the loaded coordinates.
+		 *
+		 * @param maxDoc       max doc of the segment
+		 * @param cellsPerAxis cells along each axis of the grid
+		 */
+		public void buildGrid(int maxDoc, int cellsPerAxis) {
+			_grid = GeoGrid.build(_xValArray, _yValArray, _zValArray, maxDoc, cellsPerAxis);
+		}
+
 		public void load(String latFieldName, String lonFieldName, BoboSegmentReader reader)
 				throws IOException {
 			if (reader == null) {
@@ -243,6 +284,9 @@ public class GeoFacetHandler extends FacetHandler<GeoFacetHandler.GeoFacetData>
 	public GeoFacetData load(BoboSegmentReader reader) throws IOException {
 		GeoFacetData dataCache = new GeoFacetData();
 		dataCache.load(_latFieldName, _lonFieldName, reader);
+		if (_gridCellsPerAxis > 0) {
+			dataCache.buildGrid(reader.maxDoc(), _gridCellsPerAxis);
+		}
 		return dataCache;
 	}
 
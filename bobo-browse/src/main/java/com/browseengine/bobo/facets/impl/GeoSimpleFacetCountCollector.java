@@ -75,9 +75,9 @@ public class GeoSimpleFacetCountCollector implements FacetCountCollector {
   public void collect(int docid) {
     // increment the count only if both latitude and longitude ranges are true for a particular
     // docid
+    int latValue = _latOrderArray.get(docid);
+    int longValue = _longOrderArray.get(docid);
     for (int[] range : _latPredefinedRangeIndexes) {
-      int latValue = _latOrderArray.get(docid);
-      int longValue = _longOrderArray.get(docid);
       int latStart = range[0];
       int latEnd = range[1];
       if (latValue >= latStart && latValue <= latEnd) {
@@ -85,8 +85,8 @@ public class GeoSimpleFacetCountCollector implements FacetCountCollector {
           int longStart = longRange[0];
           int longEnd = longRange[1];
           if (longValue >= longStart && longValue <= longEnd) {
-            _latCount[_latOrderArray.get(docid)]++;
-            _longCount[_longOrderArray.get(docid)]++;
+            _latCount[latValue]++;
+            _longCount[longValue]++;
           }
         }
       }
@@ -36,6 +36,7 @@ import com.browseengine.bobo.query.scoring.FacetTermScoringFunctionFactory;
 import com.browseengine.bobo.sort.DocComparatorSource;
 import com.browseengine.bobo.util.BigIntArray;
 import com.browseengine.bobo.util.BigNestedIntArray;
+import com.browseengine.bobo.util.BigSegmentedArray;
 
 public class MultiValueFacetHandler extends FacetHandler<MultiValueFacetDataCache<?>> implements
     FacetScoreable {
@@ -274,6 +275,15 @@ public class MultiValueFacetHandler extends FacetHandler<MultiValueFacetDataCach
       _array.countNoReturn(docid, _count);
     }
 
+    @Override
+    public final void collect(int[] docs, int len) {
+      BigNestedIntArray array = _array;
+      BigSegmentedArray count = _count;
+      for (int i = 0; i < len; ++i) {
+        array.countNoReturn(docs[i], count);
+      }
+    }
+
     @Override
     public final void collectAll() {
       _count = BigIntArray.fromArray(_dataCache.freqs);
@@ -6,6 +6,7 @@ import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.MultiValueFacetDataCache;
 import com.browseengine.bobo.util.BigIntArray;
 import com.browseengine.bobo.util.BigNestedIntArray;
+import com.browseengine.bobo.util.BigSegmentedArray;
 
 public class MultiValuedPathFacetCountCollector extends PathFacetCountCollector {
 
@@ -22,6 +23,15 @@ public class MultiValuedPathFacetCountCollector extends PathFacetCountCollector
     _array.countNoReturn(docid, _count);
   }
 
+  @Override
+  public final void collect(int[] docs, int len) {
+    BigNestedIntArray array = _array;
+    BigSegmentedArray count = _count;
+    for (int i = 0; i < len; ++i) {
+      array.countNoReturn(docs[i], count);
+    }
+  }
+
   @Override
   public final void collectAll() {
     _count = BigIntArray.fromArray(_dataCache.freqs);
@@ -92,6 +92,16 @@ public class PathFacetCountCollector implements FacetCountCollector {
     _count.add(i, _count.get(i) + 1);
   }
 
+  @Override
+  public void collect(int[] docs, int len) {
+    BigSegmentedArray orderArray = _orderArray;
+    BigSegmentedArray count = _count;
+    for (int j = 0; j < len; ++j) {
+      int i = orderArray.get(docs[j]);
+      count.add(i, count.get(i) + 1);
+    }
+  }
+
   @Override
   public void collectAll() {
     _count = BigIntArray.fromArray(_dataCache.freqs);
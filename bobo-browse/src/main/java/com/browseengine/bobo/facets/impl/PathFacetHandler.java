@@ -264,7 +264,7 @@ public class PathFacetHandler extends FacetHandler<FacetDataCache<?>> {
   @Override
   public FacetDataCache<?> load(BoboSegmentReader reader) throws IOException {
     if (!_multiValue) {
-      FacetDataCache<?> dataCache = new FacetDataCache();
+      FacetDataCache<?> dataCache = new FacetDataCache().setOffHeap(isOffHeap());
       dataCache.load(_indexedName, reader, _termListFactory);
       return dataCache;
     } else {
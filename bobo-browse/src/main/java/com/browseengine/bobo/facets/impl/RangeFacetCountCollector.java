@@ -21,6 +21,11 @@ import com.browseengine.bobo.util.IntBoundedPriorityQueue;
 import com.browseengine.bobo.util.IntBoundedPriorityQueue.IntComparator;
 import com.browseengine.bobo.util.LazyBigIntArray;
 
+/**
+ * Counts the hits of the values of a range facet. After collection the counts are turned once into
+ * prefix sums by order index, so the hits of a predefined or ad-hoc range are found in constant
+ * time, however many ranges are asked for.
+ */
 public class RangeFacetCountCollector implements FacetCountCollector {
   private final FacetSpec _ospec;
   protected BigSegmentedArray _count;
@@ -30,6 +35,8 @@ public class RangeFacetCountCollector implements FacetCountCollector {
   private final String _name;
   private final TermStringList _predefinedRanges;
   private int[][] _predefinedRangeIndexes;
+  // prefix sums of the counts, built on the first range lookup and dropped by collection
+  private int[] _countSums;
 
   public RangeFacetCountCollector(String name, FacetDataCache<?> dataCache, int docBase,
       FacetSpec ospec, List<String> predefinedRanges) {
@@ -66,14 +73,7 @@ public class RangeFacetCountCollector implements FacetCountCollector {
       dist = new LazyBigIntArray(_predefinedRangeIndexes.length);
       int n = 0;
       for (int[] range : _predefinedRangeIndexes) {
-        int start = range[0];
-        int end = range[1];
-
-        int sum = 0;
-        for (int i = start; i < end; ++i) {
-          sum += _count.get(i);
-        }
-        dist.add(n++, sum);
+        dist.add(n++, getRangeCount(range[0], range[1]));
       }
     } else {
       dist = _count;
@@ -92,11 +92,7 @@ public class RangeFacetCountCollector implements FacetCountCollector {
     BrowseFacet facet = null;
     int[] range = FacetRangeFilter.parse(_dataCache, value);
     if (range != null) {
-      int sum = 0;
-      for (int i = range[0]; i <= range[1]; ++i) {
-        sum += _count.get(i);
-      }
-      facet = new BrowseFacet(value, sum);
+      facet = new BrowseFacet(value, getRangeCount(range[0], range[1]));
     }
     return facet;
   }
@@ -104,25 +100,62 @@ public class RangeFacetCountCollector implements FacetCountCollector {
   @Override
   public int getFacetHitsCount(Object value) {
     int[] range = FacetRangeFilter.parse(_dataCache, (String) value);
-    int sum = 0;
-    if (range != null) {
-      for (int i = range[0]; i <= range[1]; ++i) {
-        sum += _count.get(i);
+    return range == null ? 0 : getRangeCount(range[0], range[1]);
+  }
+
+  /**
+   * @param start first order index of the range.
+   * @param end last order index of the range, inclusive.
+   * @return hits of the values in the range.
+   */
+  protected final int getRangeCount(int start, int end) {
+    start = Math.max(start, 0);
+    end = Math.min(end, _countlength - 1);
+    if (start > end) {
+      return 0;
+    }
+    int[] sums = _countSums;
+    if (sums == null) {
+      sums = new int[_countlength + 1];
+      BigSegmentedArray count = _count;
+      for (int i = 0; i < _countlength; ++i) {
+        sums[i + 1] = sums[i] + count.get(i);
       }
+      _countSums = sums;
     }
-    return sum;
+    return sums[end + 1] - sums[start];
+  }
+
+  /**
+   * Drops the prefix sums of the counts, called by collection.
+   */
+  protected final void countsChanged() {
+    _countSums = null;
   }
 
   @Override
   public void collect(int docid) {
     int i = _array.get(docid);
     _count.add(i, _count.get(i) + 1);
+    _countSums = null;
+  }
+
+  @Override
+  public void collect(int[] docs, int len) {
+    BigSegmentedArray array = _array;
+    BigSegmentedArray count = _count;
+    for (int j = 0; j < len; ++j) {
+      int i = array.get(docs[j]);
+      count.add(i, count.get(i) + 1);
+    }
+    _countSums = null;
   }
 
   @Override
   public final void collectAll() {
     _count = BigIntArray.fromArray(_dataCache.freqs);
     _countlength = _dataCache.freqs.length;
+    _countSums = null;
   }
 
   void convertFacets(BrowseFacet[] facets) {
@@ -149,13 +182,8 @@ public class RangeFacetCountCollector implements FacetCountCollector {
         int[] rangeCount = new int[_predefinedRangeIndexes.length];
 
         for (int k = 0; k < _predefinedRangeIndexes.length; ++k) {
-          int count = 0;
-          int idx = _predefinedRangeIndexes[k][0];
-          int end = _predefinedRangeIndexes[k][1];
-          while (idx <= end) {
-            count += _count.get(idx++);
-          }
-          rangeCount[k] = count;
+          rangeCount[k] = getRangeCount(_predefinedRangeIndexes[k][0],
+            _predefinedRangeIndexes[k][1]);
         }
 
         List<BrowseFacet> facetColl = new ArrayList<>(_predefinedRanges.size());
@@ -185,13 +213,8 @@ public class RangeFacetCountCollector implements FacetCountCollector {
         BigSegmentedArray rangeCount = new LazyBigIntArray(_predefinedRangeIndexes.length);
 
         for (int k = 0; k < _predefinedRangeIndexes.length; ++k) {
-          int count = 0;
-          int idx = _predefinedRangeIndexes[k][0];
-          int end = _predefinedRangeIndexes[k][1];
-          while (idx <= end) {
-            count += _count.get(idx++);
-          }
-          rangeCount.add(k, count);
+          rangeCount.add(k,
+            getRangeCount(_predefinedRangeIndexes[k][0], _predefinedRangeIndexes[k][1]));
         }
 
         List<BrowseFacet> facetColl;
@@ -284,13 +307,8 @@ public class RangeFacetCountCollector implements FacetCountCollector {
     if (_predefinedRanges != null) {
       BigSegmentedArray rangeCounts = new LazyBigIntArray(_predefinedRangeIndexes.length);
       for (int k = 0; k < _predefinedRangeIndexes.length; ++k) {
-        int count = 0;
-        int idx = _predefinedRangeIndexes[k][0];
-        int end = _predefinedRangeIndexes[k][1];
-        while (idx <= end) {
-          count += _count.get(idx++);
-        }
-        rangeCounts.add(k, rangeCounts.get(k) + count);
+        rangeCounts.add(k,
+          getRangeCount(_predefinedRangeIndexes[k][0], _predefinedRangeIndexes[k][1]));
       }
       return new DefaultFacetIterator(_predefinedRanges, rangeCounts, rangeCounts.size(), true);
     }
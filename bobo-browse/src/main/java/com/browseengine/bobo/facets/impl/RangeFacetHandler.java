@@ -22,6 +22,7 @@ import com.browseengine.bobo.facets.filter.RandomAccessFilter;
 import com.browseengine.bobo.facets.filter.RandomAccessNotFilter;
 import com.browseengine.bobo.facets.range.SimpleDataCacheBuilder;
 import com.browseengine.bobo.facets.range.ValueConverterBitSetBuilder;
+import com.browseengine.bobo.query.OrdinalScoreTable;
 import com.browseengine.bobo.query.scoring.BoboDocScorer;
 import com.browseengine.bobo.query.scoring.FacetScoreable;
 import com.browseengine.bobo.query.scoring.FacetTermScoringFunctionFactory;
@@ -127,7 +128,7 @@ public class RangeFacetHandler extends FacetHandler<FacetDataCache<?>> implement
   @SuppressWarnings({ "unchecked", "rawtypes" })
   @Override
   public FacetDataCache<?> load(BoboSegmentReader reader) throws IOException {
-    FacetDataCache<?> dataCache = new FacetDataCache();
+    FacetDataCache<?> dataCache = new FacetDataCache().setOffHeap(isOffHeap());
     dataCache.load(_indexFieldName, reader, _termListFactory);
     return dataCache;
   }
@@ -161,5 +162,15 @@ public class RangeFacetHandler extends FacetHandler<FacetDataCache<?>> implement
       int idx = _dataCache.orderArray.get(docid);
       return _function.score(_dataCache.freqs[idx], _boostList[idx]);
     }
+
+    @Override
+    public OrdinalScoreTable getScoreTable() {
+      return OrdinalScoreTable.build(_dataCache, new OrdinalScoreTable.OrdinalScorer() {
+        @Override
+        public float score(int ord) {
+          return _function.score(_dataCache.freqs[ord], _boostList[ord]);
+        }
+      });
+    }
   }
 }
@@ -22,11 +22,13 @@ import com.browseengine.bobo.facets.filter.FacetFilter;
 import com.browseengine.bobo.facets.filter.FacetOrFilter;
 import com.browseengine.bobo.facets.filter.RandomAccessFilter;
 import com.browseengine.bobo.facets.filter.RandomAccessNotFilter;
+import com.browseengine.bobo.query.OrdinalScoreTable;
 import com.browseengine.bobo.query.scoring.BoboDocScorer;
 import com.browseengine.bobo.query.scoring.FacetScoreable;
 import com.browseengine.bobo.query.scoring.FacetTermScoringFunctionFactory;
 import com.browseengine.bobo.sort.DocComparatorSource;
 import com.browseengine.bobo.util.BigIntArray;
+import com.browseengine.bobo.util.BigSegmentedArray;
 
 public class SimpleFacetHandler extends FacetHandler<FacetDataCache<?>> implements FacetScoreable {
   @SuppressWarnings("rawtypes")
@@ -194,7 +196,7 @@ public class SimpleFacetHandler extends FacetHandler<FacetDataCache<?>> implemen
   @SuppressWarnings({ "unchecked", "rawtypes" })
   @Override
   public FacetDataCache load(BoboSegmentReader reader) throws IOException {
-    FacetDataCache<?> dataCache = new FacetDataCache();
+    FacetDataCache<?> dataCache = new FacetDataCache().setOffHeap(isOffHeap());
     dataCache.load(_indexFieldName, reader, _termListFactory);
     return dataCache;
   }
@@ -219,10 +221,35 @@ public class SimpleFacetHandler extends FacetHandler<FacetDataCache<?>> implemen
       _count.add(index, _count.get(index) + 1);
     }
 
+    @Override
+    public final void collect(int[] docs, int len) {
+      BigSegmentedArray array = _array;
+      BigSegmentedArray count = _count;
+      for (int i = 0; i < len; ++i) {
+        int index = array.get(docs[i]);
+        count.add(index, count.get(index) + 1);
+      }
+    }
+
     @Override
     public final void collectAll() {
       _count = BigIntArray.fromArray(_dataCache.freqs);
     }
+
+    @Override
+    public boolean isUncollectSupported() {
+      return true;
+    }
+
+    @Override
+    public final void uncollect(int[] docs, int len) {
+      BigSegmentedArray array = _array;
+      BigSegmentedArray count = _count;
+      for (int i = 0; i < len; ++i) {
+        int index = array.get(docs[i]);
+        count.add(index, count.get(index) - 1);
+      }
+    }
   }
 
   public static final class SimpleGroupByFacetCountCollector extends GroupByFacetCountCollector {
@@ -283,5 +310,15 @@ public class SimpleFacetHandler extends FacetHandler<FacetDataCache<?>> implemen
       int idx = _dataCache.orderArray.get(docid);
       return _function.score(_dataCache.freqs[idx], _boostList[idx]);
     }
+
+    @Override
+    public OrdinalScoreTable getScoreTable() {
+      return OrdinalScoreTable.build(_dataCache, new OrdinalScoreTable.OrdinalScorer() {
+        @Override
+        public float score(int ord) {
+          return _function.score(_dataCache.freqs[ord], _boostList[ord]);
+        }
+      });
+    }
   }
 }
@@ -0,0 +1,337 @@
+package com.browseengine.bobo.facets.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.browseengine.bobo.api.BrowseFacet;
+import com.browseengine.bobo.api.FacetAccessible;
+import com.browseengine.bobo.facets.data.AbstractTermStringList;
+import com.browseengine.bobo.facets.data.GlobalOrdinalMap;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler.MultiValueFacetCountCollector;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler.SimpleFacetCountCollector;
+import com.browseengine.bobo.util.BigSegmentedArray;
+
+/**
+ * Merges the string facet counts of segments into the top facets by hits, without going through
+ * the facet iterators. With a {@link GlobalOrdinalMap} the counts are summed into an array by
+ * global ordinal, otherwise the segment dictionaries are merged on the fly, only visiting values
+ * with a count in a segment. The merged counts are offered to a bounded heap of primitives,
+ * {@link BrowseFacet}s are only created for the winners.
+ * <p>
+ * The result is the same as the one of
+ * {@link com.browseengine.bobo.facets.CombinedFacetAccessible#getFacets()} for
+ * {@link com.browseengine.bobo.api.FacetSpec.FacetSortSpec#OrderHitsDesc}: hits descending, then
+ * values ascending.
+ */
+public final class TopFacetMerger {
+  private final AbstractTermStringList[] _valLists;
+  private final BigSegmentedArray[] _counts;
+  private final int[] _countLengths;
+  private final GlobalOrdinalMap _globalOrdinalMap;
+  private final int[][] _globalOrds;
+
+  private TopFacetMerger(AbstractTermStringList[] valLists, BigSegmentedArray[] counts,
+      int[] countLengths, GlobalOrdinalMap globalOrdinalMap, int[][] globalOrds) {
+    _valLists = valLists;
+    _counts = counts;
+    _countLengths = countLengths;
+    _globalOrdinalMap = globalOrdinalMap;
+    _globalOrds = globalOrds;
+  }
+
+  /**
+   * Creates a merger for the counts of segment collectors.
+   *
+   * @param list segment facet accessibles.
+   * @param globalOrdinalMap global ordinals of the facet, may be null.
+   * @return merger, or null if an accessible is not a simple or multi value count collector over
+   * a string dictionary, or the dictionaries are not of the same class.
+   */
+  public static TopFacetMerger newInstance(List<FacetAccessible> list,
+      GlobalOrdinalMap globalOrdinalMap) {
+    int size = list.size();
+    AbstractTermStringList[] valLists = new AbstractTermStringList[size];
+    BigSegmentedArray[] counts = new BigSegmentedArray[size];
+    int[] countLengths = new int[size];
+    int[][] globalOrds = globalOrdinalMap == null ? null : new int[size][];
+    for (int i = 0; i < size; ++i) {
+      FacetAccessible accessible = list.get(i);
+      if (!(accessible instanceof SimpleFacetCountCollector)
+          && !(accessible instanceof MultiValueFacetCountCollector)) {
+        return null;
+      }
+      DefaultFacetCountCollector collector = (DefaultFacetCountCollector) accessible;
+      Object valArray = collector.getFacetDataCache().valArray;
+      // values of lists of different classes may not be in the same order
+      if (!(valArray instanceof AbstractTermStringList)
+          || (i > 0 && valArray.getClass() != valLists[0].getClass())) {
+        return null;
+      }
+      valLists[i] = (AbstractTermStringList) valArray;
+      counts[i] = collector.getCountDistribution();
+      countLengths[i] = collector._countlength;
+      if (globalOrds != null) {
+        globalOrds[i] = globalOrdinalMap.getSegmentOrdinals(collector.getFacetDataCache());
+        if (globalOrds[i] == null) {
+          globalOrds = null;
+        }
+      }
+    }
+    if (globalOrds == null) {
+      globalOrdinalMap = null;
+    }
+    return new TopFacetMerger(valLists, counts, countLengths, globalOrdinalMap, globalOrds);
+  }
+
+  /**
+   * @param max maximum number of facets, must be positive.
+   * @param minHits minimum merged count of a facet, must be positive as values without hits
+   *          are skipped.
+   * @return top facets by hits descending, then values ascending.
+   */
+  public List<BrowseFacet> getTopFacets(int max, int minHits) {
+    if (_globalOrdinalMap != null) {
+      return getTopFacetsByGlobalOrdinal(max, minHits);
+    }
+    int numSegments = _valLists.length;
+
+    // heap of segments ordered by the value at their cursor, index 0 is the "no value" slot
+    int[] cursors = new int[numSegments];
+    int[] segments = new int[numSegments];
+    int numActive = 0;
+    for (int i = 0; i < numSegments; ++i) {
+      cursors[i] = nextCounted(i, 0);
+      if (cursors[i] < _countLengths[i]) {
+        segments[numActive++] = i;
+      }
+    }
+    for (int i = (numActive >> 1) - 1; i >= 0; --i) {
+      downSegments(segments, cursors, numActive, i);
+    }
+
+    // min heap of the best facets so far, the worst one on top
+    int[] heapCounts = new int[Math.min(max, 1024)];
+    int[] heapOrds = new int[heapCounts.length];
+    int[] heapSegs = new int[heapCounts.length];
+    int heapSize = 0;
+
+    while (numActive > 0) {
+      int seg = segments[0];
+      int ord = cursors[seg];
+      int count = 0;
+      // sum the count of the value over the segments having it, the first one is on top
+      boolean first = true;
+      while (numActive > 0) {
+        int top = segments[0];
+        if (!first && _valLists[seg].compareValues(ord, _valLists[top], cursors[top]) != 0) {
+          break;
+        }
+        first = false;
+        count += _counts[top].get(cursors[top]);
+        cursors[top] = nextCounted(top, cursors[top]);
+        if (cursors[top] >= _countLengths[top]) {
+          segments[0] = segments[--numActive];
+        }
+        downSegments(segments, cursors, numActive, 0);
+      }
+
+      if (count < minHits) {
+        continue;
+      }
+      if (heapSize < max) {
+        if (heapSize == heapCounts.length) {
+          int capacity = (int) Math.min(max, heapCounts.length * 2L);
+          heapCounts = Arrays.copyOf(heapCounts, capacity);
+          heapOrds = Arrays.copyOf(heapOrds, capacity);
+          heapSegs = Arrays.copyOf(heapSegs, capacity);
+        }
+        // sift up, values come in ascending order so a new value loses count ties
+        int i = heapSize++;
+        while (i > 0) {
+          int parent = (i - 1) >> 1;
+          if (heapCounts[parent] < count) {
+            break;
+          }
+          heapCounts[i] = heapCounts[parent];
+          heapOrds[i] = heapOrds[parent];
+          heapSegs[i] = heapSegs[parent];
+          i = parent;
+        }
+        heapCounts[i] = count;
+        heapOrds[i] = ord;
+        heapSegs[i] = seg;
+      } else if (count > heapCounts[0]) {
+        heapCounts[0] = count;
+        heapOrds[0] = ord;
+        heapSegs[0] = seg;
+        downFacets(heapCounts, heapOrds, heapSegs, heapSize);
+      }
+    }
+
+    BrowseFacet[] facets = new BrowseFacet[heapSize];
+    while (heapSize > 0) {
+      facets[--heapSize] = new BrowseFacet(_valLists[heapSegs[0]].get(heapOrds[0]),
+          heapCounts[0]);
+      heapCounts[0] = heapCounts[heapSize];
+      heapOrds[0] = heapOrds[heapSize];
+      heapSegs[0] = heapSegs[heapSize];
+      downFacets(heapCounts, heapOrds, heapSegs, heapSize);
+    }
+    return new ArrayList<>(Arrays.asList(facets));
+  }
+
+  private List<BrowseFacet> getTopFacetsByGlobalOrdinal(int max, int minHits) {
+    int[] globalCounts = new int[_globalOrdinalMap.size()];
+    for (int i = 0; i < _counts.length; ++i) {
+      BigSegmentedArray count = _counts[i];
+      int[] ords = _globalOrds[i];
+      for (int j = 1; j < _countLengths[i]; ++j) {
+        int c = count.get(j);
+        if (c > 0) {
+          globalCounts[ords[j]] += c;
+        }
+      }
+    }
+
+    // min heap of global ordinals, the worst one on top, ordinals are in value order
+    int[] heap = new int[Math.min(max, 1024)];
+    int heapSize = 0;
+    for (int ord = 1; ord < globalCounts.length; ++ord) {
+      int count = globalCounts[ord];
+      if (count < minHits) {
+        continue;
+      }
+      if (heapSize < max) {
+        if (heapSize == heap.length) {
+          heap = Arrays.copyOf(heap, (int) Math.min(max, heap.length * 2L));
+        }
+        int i = heapSize++;
+        while (i > 0) {
+          int parent = (i - 1) >> 1;
+          if (globalCounts[heap[parent]] < count) {
+            break;
+          }
+          heap[i] = heap[parent];
+          i = parent;
+        }
+        heap[i] = ord;
+      } else if (count > globalCounts[heap[0]]) {
+        heap[0] = ord;
+        downOrdinals(heap, heapSize, globalCounts);
+      }
+    }
+
+    BrowseFacet[] facets = new BrowseFacet[heapSize];
+    while (heapSize > 0) {
+      facets[--heapSize] = new BrowseFacet(_globalOrdinalMap.getValue(heap[0]),
+          globalCounts[heap[0]]);
+      heap[0] = heap[heapSize];
+      downOrdinals(heap, heapSize, globalCounts);
+    }
+    return new ArrayList<>(Arrays.asList(facets));
+  }
+
+  private static void downOrdinals(int[] heap, int size, int[] counts) {
+    int ord = heap[0];
+    int i = 0;
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && ordinalWorse(heap[child + 1], heap[child], counts)) {
+        child++;
+      }
+      if (!ordinalWorse(heap[child], ord, counts)) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = ord;
+  }
+
+  private static boolean ordinalWorse(int ord1, int ord2, int[] counts) {
+    return counts[ord1] < counts[ord2] || (counts[ord1] == counts[ord2] && ord1 > ord2);
+  }
+
+  private int nextCounted(int seg, int ord) {
+    BigSegmentedArray count = _counts[seg];
+    int length = _countLengths[seg];
+    while (++ord < length) {
+      if (count.get(ord) > 0) {
+        break;
+      }
+    }
+    return ord;
+  }
+
+  private boolean segmentLess(int seg1, int ord1, int seg2, int ord2) {
+    int cmp = _valLists[seg1].compareValues(ord1, _valLists[seg2], ord2);
+    return cmp < 0 || (cmp == 0 && seg1 < seg2);
+  }
+
+  private void downSegments(int[] segments, int[] cursors, int size, int i) {
+    int seg = segments[i];
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size
+          && segmentLess(segments[child + 1], cursors[segments[child + 1]], segments[child],
+            cursors[segments[child]])) {
+        child++;
+      }
+      if (!segmentLess(segments[child], cursors[segments[child]], seg, cursors[seg])) {
+        break;
+      }
+      segments[i] = segments[child];
+      i = child;
+    }
+    segments[i] = seg;
+  }
+
+  /**
+   * Sifts down the top of the facet heap. Of equal counts the greater value is worse, values of
+   * the same segment compare by ordinal and of different segments by value.
+   */
+  private void downFacets(int[] counts, int[] ords, int[] segs, int size) {
+    int count = counts[0];
+    int ord = ords[0];
+    int seg = segs[0];
+    int i = 0;
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size
+          && facetWorse(counts[child + 1], segs[child + 1], ords[child + 1], counts[child],
+            segs[child], ords[child])) {
+        child++;
+      }
+      if (!facetWorse(counts[child], segs[child], ords[child], count, seg, ord)) {
+        break;
+      }
+      counts[i] = counts[child];
+      ords[i] = ords[child];
+      segs[i] = segs[child];
+      i = child;
+    }
+    counts[i] = count;
+    ords[i] = ord;
+    segs[i] = seg;
+  }
+
+  private boolean facetWorse(int count1, int seg1, int ord1, int count2, int seg2, int ord2) {
+    if (count1 != count2) {
+      return count1 < count2;
+    }
+    if (seg1 == seg2) {
+      return ord1 > ord2;
+    }
+    return _valLists[seg1].compareValues(ord1, _valLists[seg2], ord2) > 0;
+  }
+}
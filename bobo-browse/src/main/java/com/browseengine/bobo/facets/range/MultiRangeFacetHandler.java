@@ -86,6 +86,15 @@ public class MultiRangeFacetHandler extends RangeFacetHandler {
           @Override
           public void collect(int docid) {
             _nestedArray.countNoReturn(docid, _count);
+            countsChanged();
+          }
+
+          @Override
+          public void collect(int[] docs, int len) {
+            for (int i = 0; i < len; ++i) {
+              _nestedArray.countNoReturn(docs[i], _count);
+            }
+            countsChanged();
           }
         };
       }
@@ -27,46 +27,169 @@ package com.browseengine.bobo.impl;
 
 import java.io.IOException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.browseengine.bobo.api.BoboBrowser;
 import com.browseengine.bobo.api.BoboMultiReader;
 import com.browseengine.bobo.api.BrowseException;
 import com.browseengine.bobo.api.BrowseRequest;
 import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.service.BoboBrowserManager;
+import com.browseengine.bobo.service.BrowseResultCache;
 import com.browseengine.bobo.service.BrowseService;
 
 public class DefaultBrowseServiceImpl implements BrowseService {
-  private BoboMultiReader _reader;
+  private static final Logger logger = LoggerFactory.getLogger(DefaultBrowseServiceImpl.class);
+
+  private volatile BoboMultiReader _reader;
+  private final BoboBrowserManager _browserManager;
   private boolean _closeReader;
+  private BrowseResultCache _resultCache;
 
   public DefaultBrowseServiceImpl(BoboMultiReader reader) {
     super();
     _reader = reader;
+    _browserManager = null;
     _closeReader = false;
   }
 
+  /**
+   * Browses on the pooled browsers of a manager, which refreshes the reader. Cached results of a
+   * reader are dropped once the manager swaps in a new one.
+   * @param browserManager browser manager, closed with the service if
+   *          {@link #setCloseReaderOnCleanup(boolean)} is set.
+   */
+  public DefaultBrowseServiceImpl(BoboBrowserManager browserManager) {
+    super();
+    _reader = null;
+    _browserManager = browserManager;
+    _closeReader = false;
+    browserManager.addRefreshListener(new BoboBrowserManager.RefreshListener() {
+      @Override
+      public void afterRefresh(BoboMultiReader oldReader, BoboMultiReader newReader) {
+        BrowseResultCache resultCache = _resultCache;
+        if (resultCache != null) {
+          resultCache.invalidate(oldReader);
+        }
+      }
+    });
+  }
+
   public void setCloseReaderOnCleanup(boolean closeReader) {
     _closeReader = closeReader;
   }
 
+  /**
+   * Sets the cache of browse results, null to disable caching.
+   * @param resultCache result cache, may be shared by services.
+   */
+  public void setResultCache(BrowseResultCache resultCache) {
+    _resultCache = resultCache;
+  }
+
+  public BrowseResultCache getResultCache() {
+    return _resultCache;
+  }
+
+  public BoboMultiReader getReader() {
+    return _reader;
+  }
+
+  /**
+   * Swaps in a new reader, e.g. one reopened with
+   * {@link BoboMultiReader#openIfChanged(BoboMultiReader)}. Cached results of the old reader are
+   * dropped, the old reader is not closed.
+   * @param reader new reader.
+   * @return old reader.
+   */
+  public BoboMultiReader setReader(BoboMultiReader reader) {
+    BoboMultiReader oldReader;
+    synchronized (this) {
+      oldReader = _reader;
+      _reader = reader;
+    }
+    BrowseResultCache resultCache = _resultCache;
+    if (resultCache != null && oldReader != null && oldReader != reader) {
+      resultCache.invalidate(oldReader);
+    }
+    return oldReader;
+  }
+
   @Override
   public BrowseResult browse(BrowseRequest req) throws BrowseException {
     BrowseResult result = BrowseService.EMPTY_RESULT;
     if (req.getOffset() < 0) throw new BrowseException("Invalid offset: " + req.getOffset());
-    if (_reader != null) {
+    if (_browserManager != null) {
+      return browseManaged(req);
+    }
+    BoboMultiReader reader = _reader;
+    if (reader != null) {
+      BrowseResultCache resultCache = _resultCache;
+      Object cacheKey = resultCache == null ? null : resultCache.getKey(reader, req);
+      if (cacheKey != null) {
+        BrowseResult cached = resultCache.get(cacheKey);
+        if (cached != null) {
+          cached.setTid(req.getTid());
+          return cached;
+        }
+      }
       BoboBrowser browser;
       try {
-        browser = new BoboBrowser(_reader);
+        browser = new BoboBrowser(reader);
       } catch (IOException e) {
         throw new BrowseException("failed to create BoboBrowser", e);
       }
       result = browser.browse(req);
+      if (cacheKey != null) {
+        resultCache.put(cacheKey, result);
+      }
     }
     return result;
   }
 
+  private BrowseResult browseManaged(BrowseRequest req) throws BrowseException {
+    BoboBrowser browser;
+    try {
+      browser = _browserManager.acquire();
+    } catch (IOException e) {
+      throw new BrowseException("failed to create BoboBrowser", e);
+    }
+    try {
+      BoboMultiReader reader = browser.getBoboMultiReader();
+      BrowseResultCache resultCache = _resultCache;
+      Object cacheKey = resultCache == null ? null : resultCache.getKey(reader, req);
+      if (cacheKey != null) {
+        BrowseResult cached = resultCache.get(cacheKey);
+        if (cached != null) {
+          cached.setTid(req.getTid());
+          return cached;
+        }
+      }
+      // the reader may be closed once the browser is released
+      BrowseResult result = browser.browse(req).resolveFieldValues();
+      if (cacheKey != null) {
+        resultCache.put(cacheKey, result);
+      }
+      return result;
+    } finally {
+      try {
+        _browserManager.release(browser);
+      } catch (IOException e) {
+        logger.error(e.getMessage(), e);
+      }
+    }
+  }
+
   @Override
   public void close() throws BrowseException {
-    if (_closeReader) {
+    if (_closeReader && _browserManager != null) {
+      try {
+        _browserManager.close();
+      } catch (IOException ioe) {
+        throw new BrowseException(ioe.getMessage(), ioe);
+      }
+    } else if (_closeReader) {
       synchronized (this) {
         if (_reader != null) {
           try {
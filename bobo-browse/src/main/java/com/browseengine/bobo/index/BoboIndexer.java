@@ -26,34 +26,95 @@
 package com.browseengine.bobo.index;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.browseengine.bobo.index.digest.DataDigester;
 
+/**
+ * Indexes the documents of a digester.
+ * <p>
+ * By default documents are added on the calling thread in digest order and the index is merged
+ * down to one segment. With {@link #setNumThreads(int)} the digester fills batches of
+ * {@link #setBatchSize(int)} documents into a bounded queue drained by the worker threads, so
+ * digesting and indexing overlap and documents are no longer added in digest order. The digester
+ * blocks while the queue is full, see {@link #getProducerBlockedMillis()}.
+ */
 public class BoboIndexer {
+  private static final Logger logger = LoggerFactory.getLogger(BoboIndexer.class);
+
+  private static final List<Document> END_OF_BATCHES = Collections.emptyList();
+
   private final Directory _index;
   private final DataDigester _digester;
   private IndexWriter _writer;
   private Analyzer _analyzer;
+  private int _numThreads = 0;
+  private int _batchSize = 1000;
+  private int _queueCapacity = 0;
+  private double _ramBufferSizeMB = 0.0;
+  private MergePolicy _mergePolicy = null;
+  private int _maxSegments = 1;
 
-  private static class MyDataHandler implements DataDigester.DataHandler {
-    private final IndexWriter _writer;
+  private final AtomicLong _numDocs = new AtomicLong();
+  private final AtomicLong _numBatches = new AtomicLong();
+  private final AtomicLong _producerBlockedNanos = new AtomicLong();
+  private final AtomicLong _workerIdleNanos = new AtomicLong();
+  private final AtomicInteger _maxQueueSize = new AtomicInteger();
+  private long _elapsedMillis;
+  private long _mergeMillis;
 
-    MyDataHandler(IndexWriter writer) {
-      _writer = writer;
+  /**
+   * Gathers documents into batches handed to a consumer.
+   */
+  private abstract static class BatchingDataHandler implements DataDigester.DataHandler {
+    private final int _batchSize;
+    private List<Document> _batch;
+
+    BatchingDataHandler(int batchSize) {
+      _batchSize = Math.max(1, batchSize);
+      _batch = new ArrayList<>(_batchSize);
     }
 
     @Override
     public void handleDocument(Document doc) throws IOException {
-      _writer.addDocument(doc);
+      _batch.add(doc);
+      if (_batch.size() >= _batchSize) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException {
+      if (!_batch.isEmpty()) {
+        List<Document> batch = _batch;
+        _batch = new ArrayList<>(_batchSize);
+        handleBatch(batch);
+      }
     }
+
+    abstract void handleBatch(List<Document> batch) throws IOException;
   }
 
   public void setAnalyzer(Analyzer analyzer) {
@@ -64,6 +125,52 @@ public class BoboIndexer {
     return _analyzer == null ? new StandardAnalyzer(Version.LUCENE_43) : _analyzer;
   }
 
+  /**
+   * @param numThreads number of indexing threads, 0 to index on the calling thread in digest
+   *          order.
+   */
+  public void setNumThreads(int numThreads) {
+    _numThreads = numThreads;
+  }
+
+  /**
+   * @param batchSize number of documents added to the writer at once.
+   */
+  public void setBatchSize(int batchSize) {
+    _batchSize = batchSize;
+  }
+
+  /**
+   * @param queueCapacity number of batches waiting for the indexing threads before the digester
+   *          blocks, 0 for twice the number of threads.
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    _queueCapacity = queueCapacity;
+  }
+
+  /**
+   * @param ramBufferSizeMB RAM buffered by the writer before flushing a segment, 0 for the
+   *          writer default.
+   */
+  public void setRAMBufferSizeMB(double ramBufferSizeMB) {
+    _ramBufferSizeMB = ramBufferSizeMB;
+  }
+
+  /**
+   * @param mergePolicy merge policy of the writer, null for the writer default.
+   */
+  public void setMergePolicy(MergePolicy mergePolicy) {
+    _mergePolicy = mergePolicy;
+  }
+
+  /**
+   * @param maxSegments number of segments to force merge the index down to once indexed, 0 to
+   *          skip the force merge.
+   */
+  public void setMaxSegments(int maxSegments) {
+    _maxSegments = maxSegments;
+  }
+
   public BoboIndexer(DataDigester digester, Directory index) {
     super();
     _index = index;
@@ -71,17 +178,212 @@ public class BoboIndexer {
   }
 
   public void index() throws IOException {
+    _numDocs.set(0);
+    _numBatches.set(0);
+    _producerBlockedNanos.set(0);
+    _workerIdleNanos.set(0);
+    _maxQueueSize.set(0);
+    _mergeMillis = 0;
+    long start = System.currentTimeMillis();
     _writer = null;
     try {
       IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, getAnalyzer());
+      if (_ramBufferSizeMB > 0) {
+        config.setRAMBufferSizeMB(_ramBufferSizeMB);
+      }
+      if (_mergePolicy != null) {
+        config.setMergePolicy(_mergePolicy);
+      }
+      if (_numThreads > config.getMaxThreadStates()) {
+        config.setMaxThreadStates(_numThreads);
+      }
       _writer = new IndexWriter(_index, config);
-      MyDataHandler handler = new MyDataHandler(_writer);
-      _digester.digest(handler);
-      _writer.forceMerge(1);
+      if (_numThreads > 0) {
+        indexConcurrently();
+      } else {
+        BatchingDataHandler handler = new BatchingDataHandler(_batchSize) {
+          @Override
+          void handleBatch(List<Document> batch) throws IOException {
+            addDocuments(batch);
+          }
+        };
+        _digester.digest(handler);
+        handler.flush();
+      }
+      if (_maxSegments > 0) {
+        long mergeStart = System.currentTimeMillis();
+        _writer.forceMerge(_maxSegments);
+        _mergeMillis = System.currentTimeMillis() - mergeStart;
+      }
     } finally {
       if (_writer != null) {
         _writer.close();
       }
+      _elapsedMillis = System.currentTimeMillis() - start;
+    }
+    logger.info("indexed " + _numDocs.get() + " docs (" + getNumBatches() + " batches) in "
+        + _elapsedMillis + "ms (" + (long) getDocsPerSecond() + " docs/s), force merge: "
+        + _mergeMillis + "ms, producer blocked: " + getProducerBlockedMillis()
+        + "ms, workers idle: " + getWorkerIdleMillis() + "ms, max queue depth: "
+        + getMaxQueueSize());
+  }
+
+  private void addDocuments(List<Document> batch) throws IOException {
+    _writer.addDocuments(batch);
+    _numDocs.addAndGet(batch.size());
+    _numBatches.incrementAndGet();
+  }
+
+  private void indexConcurrently() throws IOException {
+    int capacity = _queueCapacity > 0 ? _queueCapacity : 2 * _numThreads;
+    final BlockingQueue<List<Document>> queue = new ArrayBlockingQueue<>(capacity);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    ExecutorService executor = Executors.newFixedThreadPool(_numThreads, new ThreadFactory() {
+      private final AtomicInteger _count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "bobo-indexer-" + _count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<?>> futures = new ArrayList<>(_numThreads);
+      for (int i = 0; i < _numThreads; ++i) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              while (true) {
+                long waitStart = System.nanoTime();
+                List<Document> batch = queue.take();
+                _workerIdleNanos.addAndGet(System.nanoTime() - waitStart);
+                if (batch == END_OF_BATCHES) {
+                  return;
+                }
+                if (failure.get() == null) {
+                  try {
+                    addDocuments(batch);
+                  } catch (Throwable t) {
+                    // keep draining so that the digester and the other workers do not block
+                    failure.compareAndSet(null, t);
+                  }
+                }
+              }
+            } catch (InterruptedException e) {
+              failure.compareAndSet(null, e);
+            }
+          }
+        }));
+      }
+
+      BatchingDataHandler handler = new BatchingDataHandler(_batchSize) {
+        @Override
+        void handleBatch(List<Document> batch) throws IOException {
+          Throwable t = failure.get();
+          if (t != null) {
+            throw new IOException("indexing failed: " + t.getMessage(), t);
+          }
+          put(queue, batch);
+        }
+      };
+      try {
+        _digester.digest(handler);
+        handler.flush();
+      } finally {
+        for (int i = 0; i < _numThreads; ++i) {
+          put(queue, END_OF_BATCHES);
+        }
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (Exception e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Throwable t = failure.get();
+    if (t != null) {
+      if (t instanceof IOException) {
+        throw (IOException) t;
+      }
+      throw new IOException("indexing failed: " + t.getMessage(), t);
+    }
+  }
+
+  /**
+   * Queues a batch, waiting while the queue is full.
+   */
+  private void put(BlockingQueue<List<Document>> queue, List<Document> batch) throws IOException {
+    long waitStart = System.nanoTime();
+    try {
+      queue.put(batch);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while queueing documents", e);
+    } finally {
+      _producerBlockedNanos.addAndGet(System.nanoTime() - waitStart);
+    }
+    int size = queue.size();
+    int max;
+    while (size > (max = _maxQueueSize.get()) && !_maxQueueSize.compareAndSet(max, size)) {
+      // retry
     }
   }
+
+  /**
+   * @return number of documents added by the last {@link #index()}.
+   */
+  public long getNumDocs() {
+    return _numDocs.get();
+  }
+
+  /**
+   * @return number of batches added by the last {@link #index()}.
+   */
+  public long getNumBatches() {
+    return _numBatches.get();
+  }
+
+  /**
+   * @return time the digester spent waiting for room in the queue, a high value means indexing
+   *         is the bottleneck.
+   */
+  public long getProducerBlockedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(_producerBlockedNanos.get());
+  }
+
+  /**
+   * @return time the indexing threads spent waiting for batches, summed over the threads, a high
+   *         value means digesting is the bottleneck.
+   */
+  public long getWorkerIdleMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(_workerIdleNanos.get());
+  }
+
+  /**
+   * @return largest number of batches seen waiting in the queue.
+   */
+  public int getMaxQueueSize() {
+    return _maxQueueSize.get();
+  }
+
+  /**
+   * @return duration of the last {@link #index()}, force merge included.
+   */
+  public long getElapsedMillis() {
+    return _elapsedMillis;
+  }
+
+  public long getMergeMillis() {
+    return _mergeMillis;
+  }
+
+  public double getDocsPerSecond() {
+    return _elapsedMillis == 0 ? 0.0 : _numDocs.get() * 1000.0 / _elapsedMillis;
+  }
 }
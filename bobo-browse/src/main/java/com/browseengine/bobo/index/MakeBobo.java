@@ -88,6 +88,27 @@ public class MakeBobo {
     OptionBuilder.withDescription("maximum number of documents - default: 100");
     Option maxdocs = OptionBuilder.create("maxdocs");
 
+    OptionBuilder.withArgName("count");
+    OptionBuilder.hasArg();
+    OptionBuilder
+        .withDescription("number of indexing threads - default: 0, index on the reading thread");
+    Option threads = OptionBuilder.create("threads");
+
+    OptionBuilder.withArgName("size");
+    OptionBuilder.hasArg();
+    OptionBuilder.withDescription("number of documents added at once - default: 1000");
+    Option batchsize = OptionBuilder.create("batchsize");
+
+    OptionBuilder.withArgName("mb");
+    OptionBuilder.hasArg();
+    OptionBuilder.withDescription("index writer RAM buffer in MB - default: writer default");
+    Option rambuffer = OptionBuilder.create("rambuffer");
+
+    OptionBuilder.withArgName("count");
+    OptionBuilder.hasArg();
+    OptionBuilder.withDescription("segments to merge the index down to, 0 to skip - default: 1");
+    Option maxsegments = OptionBuilder.create("maxsegments");
+
     Options options = new Options();
     options.addOption(help);
     options.addOption(conf);
@@ -96,6 +117,10 @@ public class MakeBobo {
     options.addOption(charset);
     options.addOption(digesterOpt);
     options.addOption(maxdocs);
+    options.addOption(threads);
+    options.addOption(batchsize);
+    options.addOption(rambuffer);
+    options.addOption(maxsegments);
 
     // create the parser
 
@@ -136,6 +161,18 @@ public class MakeBobo {
       }
 
       BoboIndexer indexer = new BoboIndexer(digester, FSDirectory.open(new File(output)));
+      if (line.hasOption("threads")) {
+        indexer.setNumThreads(Integer.parseInt(line.getOptionValue("threads")));
+      }
+      if (line.hasOption("batchsize")) {
+        indexer.setBatchSize(Integer.parseInt(line.getOptionValue("batchsize")));
+      }
+      if (line.hasOption("rambuffer")) {
+        indexer.setRAMBufferSizeMB(Double.parseDouble(line.getOptionValue("rambuffer")));
+      }
+      if (line.hasOption("maxsegments")) {
+        indexer.setMaxSegments(Integer.parseInt(line.getOptionValue("maxsegments")));
+      }
       indexer.index();
     } catch (ParseException exp) {
       exp.printStackTrace();
@@ -0,0 +1,57 @@
+package com.browseengine.bobo.jmx;
+
+import java.util.Map;
+
+public interface BrowseStatsAdminMBean {
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  long getNumBrowses();
+
+  /**
+   * @return upper bounds in microseconds of the buckets of the time histograms.
+   */
+  long[] getHistogramBucketLimits();
+
+  long[] getTotalTimeHistogram();
+
+  long[] getFilterTimeHistogram();
+
+  long[] getSearchTimeHistogram();
+
+  long[] getFacetTimeHistogram();
+
+  long[] getMergeTimeHistogram();
+
+  long[] getHitsTimeHistogram();
+
+  /**
+   * @param facetName facet name.
+   * @return histogram of the time spent counting the hits of the facet per browse, null if the
+   *         facet was not counted yet.
+   */
+  long[] getFacetTimeHistogram(String facetName);
+
+  /**
+   * @return mean time in microseconds spent counting the hits of each facet per browse.
+   */
+  Map<String, Double> getFacetMeanTimes();
+
+  /**
+   * @param phase one of total, filter, search, facet, merge and hits.
+   * @param percentile percentile, between 0 and 100.
+   * @return upper bound in microseconds of the histogram bucket holding the percentile.
+   */
+  long getTimePercentile(String phase, double percentile);
+
+  long getDocsScored();
+
+  long getDocsValidated();
+
+  long getPostFilterMisses();
+
+  long getCountBytes();
+
+  void reset();
+}
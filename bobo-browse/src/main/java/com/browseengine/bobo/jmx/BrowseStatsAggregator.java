@@ -0,0 +1,289 @@
+package com.browseengine.bobo.jmx;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.browseengine.bobo.api.BrowseStats;
+
+/**
+ * Aggregates the {@link BrowseStats} of browse requests into histograms, registered as the
+ * <code>bobo:name=BrowseStats</code> mbean.
+ * <p>
+ * Browses only collect stats when requested with
+ * {@link com.browseengine.bobo.api.BrowseRequest#setCollectStats(boolean)}, or for every request
+ * while the aggregator is enabled. Histogram buckets are powers of two microseconds, the last
+ * one is unbounded.
+ */
+public class BrowseStatsAggregator implements BrowseStatsAdminMBean {
+  private static final Logger logger = LoggerFactory.getLogger(BrowseStatsAggregator.class);
+
+  public static final int NUM_BUCKETS = 32;
+
+  private static final BrowseStatsAggregator INSTANCE = new BrowseStatsAggregator();
+
+  static {
+    try {
+      MBeanServer mbeanServer = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+      ObjectName mbeanName = new ObjectName(JMXUtil.JMX_DOMAIN, "name", "BrowseStats");
+      StandardMBean mbean = new StandardMBean(INSTANCE, BrowseStatsAdminMBean.class);
+      mbeanServer.registerMBean(mbean, mbeanName);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+    }
+  }
+
+  private volatile boolean _enabled = false;
+  private final AtomicLong _numBrowses = new AtomicLong();
+  private final Histogram _totalTime = new Histogram();
+  private final Histogram _filterTime = new Histogram();
+  private final Histogram _searchTime = new Histogram();
+  private final Histogram _facetTime = new Histogram();
+  private final Histogram _mergeTime = new Histogram();
+  private final Histogram _hitsTime = new Histogram();
+  private final ConcurrentHashMap<String, Histogram> _facetTimes = new ConcurrentHashMap<>();
+  private final AtomicLong _docsScored = new AtomicLong();
+  private final AtomicLong _docsValidated = new AtomicLong();
+  private final AtomicLong _postFilterMisses = new AtomicLong();
+  private final AtomicLong _countBytes = new AtomicLong();
+
+  public static BrowseStatsAggregator getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Adds the stats of a browse.
+   * @param stats stats of the browse.
+   */
+  public void record(BrowseStats stats) {
+    _numBrowses.incrementAndGet();
+    _totalTime.add(stats.getTotalTime());
+    _filterTime.add(stats.getFilterTime());
+    _searchTime.add(stats.getSearchTime());
+    _facetTime.add(stats.getFacetTime());
+    _mergeTime.add(stats.getMergeTime());
+    _hitsTime.add(stats.getHitsTime());
+    for (Map.Entry<String, Long> entry : stats.getFacetTimes().entrySet()) {
+      Histogram histogram = _facetTimes.get(entry.getKey());
+      if (histogram == null) {
+        Histogram newHistogram = new Histogram();
+        histogram = _facetTimes.putIfAbsent(entry.getKey(), newHistogram);
+        if (histogram == null) {
+          histogram = newHistogram;
+        }
+      }
+      histogram.add(entry.getValue());
+    }
+    _docsScored.addAndGet(stats.getDocsScored());
+    _docsValidated.addAndGet(stats.getDocsValidated());
+    _postFilterMisses.addAndGet(stats.getPostFilterMisses());
+    _countBytes.addAndGet(stats.getCountBytes());
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * @param enabled whether every browse collects stats, not only the requested ones.
+   */
+  @Override
+  public void setEnabled(boolean enabled) {
+    _enabled = enabled;
+  }
+
+  @Override
+  public long getNumBrowses() {
+    return _numBrowses.get();
+  }
+
+  @Override
+  public long[] getHistogramBucketLimits() {
+    long[] limits = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      limits[i] = getBucketLimit(i);
+    }
+    return limits;
+  }
+
+  @Override
+  public long[] getTotalTimeHistogram() {
+    return _totalTime.getCounts();
+  }
+
+  @Override
+  public long[] getFilterTimeHistogram() {
+    return _filterTime.getCounts();
+  }
+
+  @Override
+  public long[] getSearchTimeHistogram() {
+    return _searchTime.getCounts();
+  }
+
+  @Override
+  public long[] getFacetTimeHistogram() {
+    return _facetTime.getCounts();
+  }
+
+  @Override
+  public long[] getMergeTimeHistogram() {
+    return _mergeTime.getCounts();
+  }
+
+  @Override
+  public long[] getHitsTimeHistogram() {
+    return _hitsTime.getCounts();
+  }
+
+  @Override
+  public long[] getFacetTimeHistogram(String facetName) {
+    Histogram histogram = _facetTimes.get(facetName);
+    return histogram == null ? null : histogram.getCounts();
+  }
+
+  @Override
+  public Map<String, Double> getFacetMeanTimes() {
+    Map<String, Double> times = new TreeMap<>();
+    for (Map.Entry<String, Histogram> entry : _facetTimes.entrySet()) {
+      times.put(entry.getKey(), entry.getValue().getMean());
+    }
+    return times;
+  }
+
+  @Override
+  public long getTimePercentile(String phase, double percentile) {
+    Histogram histogram;
+    if ("total".equals(phase)) {
+      histogram = _totalTime;
+    } else if ("filter".equals(phase)) {
+      histogram = _filterTime;
+    } else if ("search".equals(phase)) {
+      histogram = _searchTime;
+    } else if ("facet".equals(phase)) {
+      histogram = _facetTime;
+    } else if ("merge".equals(phase)) {
+      histogram = _mergeTime;
+    } else if ("hits".equals(phase)) {
+      histogram = _hitsTime;
+    } else {
+      throw new IllegalArgumentException("unknown phase: " + phase);
+    }
+    return histogram.getPercentile(percentile);
+  }
+
+  @Override
+  public long getDocsScored() {
+    return _docsScored.get();
+  }
+
+  @Override
+  public long getDocsValidated() {
+    return _docsValidated.get();
+  }
+
+  @Override
+  public long getPostFilterMisses() {
+    return _postFilterMisses.get();
+  }
+
+  @Override
+  public long getCountBytes() {
+    return _countBytes.get();
+  }
+
+  @Override
+  public void reset() {
+    _numBrowses.set(0);
+    _totalTime.reset();
+    _filterTime.reset();
+    _searchTime.reset();
+    _facetTime.reset();
+    _mergeTime.reset();
+    _hitsTime.reset();
+    _facetTimes.clear();
+    _docsScored.set(0);
+    _docsValidated.set(0);
+    _postFilterMisses.set(0);
+    _countBytes.set(0);
+  }
+
+  private static long getBucketLimit(int bucket) {
+    return bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+  }
+
+  /**
+   * @param micros time in microseconds.
+   * @return bucket of the smallest limit not below the time.
+   */
+  static int getBucket(long micros) {
+    if (micros <= 1) {
+      return 0;
+    }
+    return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+  }
+
+  private static final class Histogram {
+    private final AtomicLongArray _counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _sum = new AtomicLong();
+
+    void add(long nanos) {
+      long micros = nanos / 1000;
+      _counts.incrementAndGet(getBucket(micros));
+      _count.incrementAndGet();
+      _sum.addAndGet(micros);
+    }
+
+    long[] getCounts() {
+      long[] counts = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        counts[i] = _counts.get(i);
+      }
+      return counts;
+    }
+
+    double getMean() {
+      long count = _count.get();
+      return count == 0 ? 0.0 : (double) _sum.get() / count;
+    }
+
+    long getPercentile(double percentile) {
+      long[] counts = getCounts();
+      long total = 0;
+      for (long count : counts) {
+        total += count;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return getBucketLimit(i);
+        }
+      }
+      return getBucketLimit(NUM_BUCKETS - 1);
+    }
+
+    void reset() {
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        _counts.set(i, 0);
+      }
+      _count.set(0);
+      _sum.set(0);
+    }
+  }
+}
@@ -75,6 +75,8 @@ public class FacetBasedBoostScorerBuilder implements ScorerBuilder {
   private class FacetBasedBoostingScorer extends Scorer {
     private final Scorer _innerScorer;
     private final BoboDocScorer[] _facetScorers;
+    // score tables of the facet scorers having one, the others score per doc
+    private final OrdinalScoreTable[] _scoreTables;
 
     private int _docid;
 
@@ -95,14 +97,19 @@ public class FacetBasedBoostScorerBuilder implements ScorerBuilder {
         if (scorer != null) list.add(scorer);
       }
       _facetScorers = list.toArray(new BoboDocScorer[list.size()]);
+      _scoreTables = new OrdinalScoreTable[_facetScorers.length];
+      for (int i = 0; i < _facetScorers.length; ++i) {
+        _scoreTables[i] = _facetScorers[i].getScoreTable();
+      }
       _docid = -1;
     }
 
     @Override
     public float score() throws IOException {
       float score = _innerScorer.score();
-      for (BoboDocScorer facetScorer : _facetScorers) {
-        float fscore = facetScorer.score(_docid);
+      for (int i = 0; i < _facetScorers.length; ++i) {
+        OrdinalScoreTable table = _scoreTables[i];
+        float fscore = table != null ? table.score(_docid) : _facetScorers[i].score(_docid);
         if (fscore > 0.0) {
           score *= fscore;
         }
@@ -133,8 +140,7 @@ public class FacetBasedBoostScorerBuilder implements ScorerBuilder {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _innerScorer.cost();
     }
   }
 }
@@ -41,7 +41,6 @@ public class MatchAllDocIdSetIterator extends DocIdSetIterator {
 
   @Override
   public long cost() {
-    // TODO Auto-generated method stub
-    return 0;
+    return _maxDoc;
   }
 }
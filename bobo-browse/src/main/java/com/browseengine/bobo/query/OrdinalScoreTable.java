@@ -0,0 +1,60 @@
+package com.browseengine.bobo.query;
+
+import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.util.BigSegmentedArray;
+
+/**
+ * Scores of the docs of a segment that only depend on the value of a single valued facet,
+ * computed once per order index so that scoring a doc is an array lookup. Tables are built per
+ * segment and query, when the scorer is created.
+ */
+public final class OrdinalScoreTable {
+  /**
+   * Computes the score of an order index of the facet data.
+   */
+  public interface OrdinalScorer {
+    float score(int ord);
+  }
+
+  private final BigSegmentedArray _orderArray;
+  private final float[] _scores;
+
+  private OrdinalScoreTable(BigSegmentedArray orderArray, float[] scores) {
+    _orderArray = orderArray;
+    _scores = scores;
+  }
+
+  /**
+   * @param dataCache facet data of the segment.
+   * @param scorer score by order index, called once for every value including the "no value"
+   *          slot 0.
+   * @return score table.
+   */
+  public static OrdinalScoreTable build(FacetDataCache<?> dataCache, OrdinalScorer scorer) {
+    float[] scores = new float[dataCache.valArray.size()];
+    for (int i = 0; i < scores.length; ++i) {
+      scores[i] = scorer.score(i);
+    }
+    return new OrdinalScoreTable(dataCache.orderArray, scores);
+  }
+
+  /**
+   * @param docid doc of the segment.
+   * @return score of the value of the doc.
+   */
+  public float score(int docid) {
+    return _scores[_orderArray.get(docid)];
+  }
+
+  /**
+   * @param ord order index.
+   * @return score of the value.
+   */
+  public float getScore(int ord) {
+    return _scores[ord];
+  }
+
+  public int size() {
+    return _scores.length;
+  }
+}
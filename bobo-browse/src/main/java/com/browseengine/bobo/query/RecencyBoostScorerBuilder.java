@@ -82,16 +82,20 @@ public class RecencyBoostScorerBuilder implements ScorerBuilder {
         @SuppressWarnings("unchecked")
         FacetDataCache<Long> facetDataCache = (FacetDataCache<Long>) (boboReader
             .getFacetData(_timeFacetName));
-        final BigSegmentedArray orderArray = facetDataCache.orderArray;
         final TermLongList termList = (TermLongList) facetDataCache.valArray;
+        final OrdinalScoreTable timeScores = OrdinalScoreTable.build(facetDataCache,
+          new OrdinalScoreTable.OrdinalScorer() {
+            @Override
+            public float score(int ord) {
+              return computeTimeFactor(termList.getPrimitiveValue(ord));
+            }
+          });
         return new Scorer(innerScorer.getWeight()) {
 
           @Override
           public float score() throws IOException {
             float rawScore = innerScorer.score();
-            long timeVal = termList.getRawValue(orderArray.get(innerScorer.docID()));
-            float timeScore = computeTimeFactor(timeVal);
-            return combineScores(timeScore, rawScore);
+            return combineScores(timeScores.score(innerScorer.docID()), rawScore);
           }
 
           @Override
@@ -117,8 +121,7 @@ public class RecencyBoostScorerBuilder implements ScorerBuilder {
 
           @Override
           public long cost() {
-            // TODO Auto-generated method stub
-            return 0;
+            return innerScorer.cost();
           }
 
         };
@@ -8,6 +8,8 @@ import java.util.Map.Entry;
 
 import org.apache.lucene.search.Explanation;
 
+import com.browseengine.bobo.query.OrdinalScoreTable;
+
 public abstract class BoboDocScorer {
   protected final FacetTermScoringFunction _function;
   protected final float[] _boostList;
@@ -21,6 +23,14 @@ public abstract class BoboDocScorer {
 
   abstract public Explanation explain(int docid);
 
+  /**
+   * @return scores by order index when the score of a doc only depends on the value of a single
+   *         valued facet, null otherwise.
+   */
+  public OrdinalScoreTable getScoreTable() {
+    return null;
+  }
+
   public static float[] buildBoostList(List<String> valArray, Map<String, Float> boostMap) {
     float[] boostList = new float[valArray.size()];
     Arrays.fill(boostList, 0.0f);
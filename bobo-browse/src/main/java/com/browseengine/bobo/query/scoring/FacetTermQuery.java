@@ -191,8 +191,8 @@ public class FacetTermQuery extends Query {
 
         @Override
         public long cost() {
-          // TODO Auto-generated method stub
-          return 0;
+          // the docs are checked one by one
+          return maxDoc;
         }
 
       };
@@ -284,8 +284,7 @@ public class FacetTermQuery extends Query {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _docSetIter.cost();
     }
 
   }
@@ -4,8 +4,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Collector;
@@ -14,17 +16,32 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
 
 import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.api.BrowseStats;
 import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
 import com.browseengine.bobo.facets.FacetCountCollector;
 import com.browseengine.bobo.facets.FacetCountCollectorSource;
+import com.browseengine.bobo.facets.impl.DefaultFacetCountCollector;
 import com.browseengine.bobo.mapred.BoboMapFunctionWrapper;
+import com.browseengine.bobo.sort.SortCollector;
 
 public class BoboSearcher {
+  /**
+   * Number of validated hits buffered before they are counted by the facet count collectors.
+   */
+  static final int COUNT_BATCH_SIZE = 512;
+
+  /**
+   * Matches estimated to cover at least this share of a segment are counted from a bitset.
+   */
+  static final double DENSE_MATCH_RATIO = 0.5;
+
   private List<FacetHitCollector> _facetCollectors;
   private final BoboSegmentReader _boboSegmentReader;
   private final AtomicReaderContext _atomicReaderContext;
+  private BrowseStats _stats = null;
 
   public BoboSearcher(AtomicReaderContext ctx) {
     _atomicReaderContext = ctx;
@@ -38,11 +55,28 @@ public class BoboSearcher {
     }
   }
 
+  /**
+   * Sets the stats the timings and counters of the searches are added to.
+   * @param stats stats, null to not collect any
+   */
+  public void setBrowseStats(BrowseStats stats) {
+    _stats = stats;
+  }
+
   abstract static class FacetValidator {
     protected final FacetHitCollector[] _collectors;
     protected final int _numPostFilters;
     protected FacetCountCollector[] _countCollectors;
     public int _nextTarget;
+    private final int[] _countBuffer = new int[COUNT_BATCH_SIZE];
+    private int _countBufferSize = 0;
+    // work counters, see BrowseStats
+    protected int _numValidated = 0;
+    protected int _numMisses = 0;
+    private int _numHits = 0;
+    private long _countBytes = 0;
+    // time spent counting by facet name, null unless timed
+    private Map<String, long[]> _facetTimes = null;
 
     private void sortPostCollectors(final BoboSegmentReader reader) {
       Comparator<FacetHitCollector> comparator = new Comparator<>() {
@@ -79,15 +113,175 @@ public class BoboSearcher {
       ArrayList<FacetCountCollector> collectorList = new ArrayList<>();
       sortPostCollectors(reader);
       for (int i = 0; i < _collectors.length; ++i) {
-        _collectors[i].setNextReader(reader, docBase);
-        FacetCountCollector collector = _collectors[i]._currentPointers.facetCountCollector;
+        FacetHitCollector facetHitCollector = _collectors[i];
+        long start = _facetTimes == null ? 0L : System.nanoTime();
+        facetHitCollector.setNextReader(reader, docBase);
+        if (_facetTimes != null) {
+          // collect all counting and post filter construction
+          addFacetTime(facetHitCollector.facetHandler.getName(), System.nanoTime() - start);
+        }
+        FacetCountCollector collector = facetHitCollector._currentPointers.facetCountCollector;
         if (collector != null) {
           collectorList.add(collector);
+          _countBytes += getCountBytes(collector);
+        }
+        if (facetHitCollector._collectAllSource != null) {
+          _countBytes += getCountBytes(facetHitCollector._collectAllCollectorList.getLast());
         }
       }
       _countCollectors = collectorList.toArray(new FacetCountCollector[collectorList.size()]);
     }
 
+    /**
+     * Times the facet counting from now on, for {@link #report(BrowseStats)}.
+     */
+    void startTiming() {
+      _facetTimes = new HashMap<>();
+    }
+
+    private void addFacetTime(String name, long nanos) {
+      long[] time = _facetTimes.get(name);
+      if (time == null) {
+        time = new long[1];
+        _facetTimes.put(name, time);
+      }
+      time[0] += nanos;
+    }
+
+    private static long getCountBytes(FacetCountCollector collector) {
+      if (collector instanceof DefaultFacetCountCollector) {
+        return 4L * ((DefaultFacetCountCollector) collector)._countlength;
+      }
+      return 0L;
+    }
+
+    /**
+     * Adds the counters and the facet times of the searched segment to stats.
+     * @param stats stats
+     */
+    void report(BrowseStats stats) {
+      stats.addDocsValidated(_numValidated);
+      stats.addDocsScored(_numHits);
+      stats.addPostFilterMisses(_numMisses);
+      stats.addCountBytes(_countBytes);
+      if (_facetTimes != null) {
+        for (Map.Entry<String, long[]> entry : _facetTimes.entrySet()) {
+          stats.addFacetTime(entry.getKey(), entry.getValue()[0]);
+        }
+      }
+    }
+
+    /**
+     * Buffers a hit matching all post filters, the buffer is counted by all count collectors at
+     * once when it is full.
+     * @param docid doc
+     */
+    protected final void count(int docid) {
+      _numHits++;
+      if (_countCollectors.length == 0) {
+        return;
+      }
+      _countBuffer[_countBufferSize++] = docid;
+      if (_countBufferSize == COUNT_BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    /**
+     * Counts the buffered hits, must be called once the segment is searched.
+     */
+    public void flush() {
+      if (_countBufferSize > 0) {
+        for (FacetCountCollector collector : _countCollectors) {
+          collect(collector, _countBuffer, _countBufferSize, false);
+        }
+        _countBufferSize = 0;
+      }
+    }
+
+    /**
+     * Counts the hits of a segment at once, from a bitset of them. Collectors supporting it count
+     * all documents and remove the ones not matching, when those are fewer.
+     * @param matches hits.
+     * @param numHits number of hits.
+     * @param maxDoc segment max doc.
+     * @param hasDeletions whether the segment has deletions.
+     */
+    public void countDense(FixedBitSet matches, int numHits, int maxDoc, boolean hasDeletions) {
+      _numValidated += numHits;
+      _numHits += numHits;
+      List<FacetCountCollector> collectors = new ArrayList<>(_countCollectors.length);
+      List<FacetCountCollector> uncollectors = new ArrayList<>(_countCollectors.length);
+      for (FacetCountCollector collector : _countCollectors) {
+        if (!hasDeletions && numHits > maxDoc - numHits
+            && collector instanceof DefaultFacetCountCollector
+            && ((DefaultFacetCountCollector) collector).isUncollectSupported()) {
+          long start = _facetTimes == null ? 0L : System.nanoTime();
+          collector.collectAll();
+          if (_facetTimes != null) {
+            addFacetTime(collector.getName(), System.nanoTime() - start);
+          }
+          uncollectors.add(collector);
+        } else {
+          collectors.add(collector);
+        }
+      }
+      if (!collectors.isEmpty()) {
+        countBits(matches.getBits(), maxDoc, false, collectors);
+      }
+      if (!uncollectors.isEmpty()) {
+        countBits(matches.getBits(), maxDoc, true, uncollectors);
+      }
+    }
+
+    /**
+     * Passes the set bits, or the clear bits if <code>uncollect</code>, to the collectors in
+     * batches.
+     */
+    private void countBits(long[] bits, int maxDoc, boolean uncollect,
+        List<FacetCountCollector> collectors) {
+      int[] buffer = _countBuffer;
+      int len = 0;
+      int numWords = (maxDoc + 63) >>> 6;
+      for (int i = 0; i < numWords; ++i) {
+        long word = uncollect ? ~bits[i] : bits[i];
+        if (i == numWords - 1 && (maxDoc & 63) != 0) {
+          word &= (1L << (maxDoc & 63)) - 1;
+        }
+        int base = i << 6;
+        while (word != 0) {
+          buffer[len++] = base + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          if (len == buffer.length) {
+            countBuffer(buffer, len, uncollect, collectors);
+            len = 0;
+          }
+        }
+      }
+      if (len > 0) {
+        countBuffer(buffer, len, uncollect, collectors);
+      }
+    }
+
+    private void countBuffer(int[] buffer, int len, boolean uncollect,
+        List<FacetCountCollector> collectors) {
+      for (FacetCountCollector collector : collectors) {
+        collect(collector, buffer, len, uncollect);
+      }
+    }
+
+    private void collect(FacetCountCollector collector, int[] buffer, int len, boolean uncollect) {
+      long start = _facetTimes == null ? 0L : System.nanoTime();
+      if (uncollect) {
+        ((DefaultFacetCountCollector) collector).uncollect(buffer, len);
+      } else {
+        collector.collect(buffer, len);
+      }
+      if (_facetTimes != null) {
+        addFacetTime(collector.getName(), System.nanoTime() - start);
+      }
+    }
+
     public FacetCountCollector[] getCountCollectors() {
       List<FacetCountCollector> collectors = new ArrayList<>();
       collectors.addAll(Arrays.asList(_countCollectors));
@@ -113,6 +307,7 @@ public class BoboSearcher {
      */
     @Override
     public final boolean validate(final int docid) throws IOException {
+      _numValidated++;
       FacetHitCollector.CurrentPointers miss = null;
 
       for (int i = 0; i < _numPostFilters; i++) {
@@ -144,12 +339,11 @@ public class BoboSearcher {
       _nextTarget = docid + 1;
 
       if (miss != null) {
+        _numMisses++;
         miss.facetCountCollector.collect(docid);
         return false;
       } else {
-        for (FacetCountCollector collector : _countCollectors) {
-          collector.collect(docid);
-        }
+        count(docid);
         return true;
       }
     }
@@ -165,6 +359,7 @@ public class BoboSearcher {
 
     @Override
     public final boolean validate(int docid) throws IOException {
+      _numValidated++;
       FacetHitCollector.CurrentPointers miss = null;
 
       RandomAccessDocIdSet set = _firsttime._currentPointers.docidSet;
@@ -175,12 +370,11 @@ public class BoboSearcher {
       _nextTarget = docid + 1;
 
       if (miss != null) {
+        _numMisses++;
         miss.facetCountCollector.collect(docid);
         return false;
       } else {
-        for (FacetCountCollector collector : _countCollectors) {
-          collector.collect(docid);
-        }
+        count(docid);
         return true;
       }
     }
@@ -193,9 +387,8 @@ public class BoboSearcher {
 
     @Override
     public final boolean validate(int docid) throws IOException {
-      for (FacetCountCollector collector : _countCollectors) {
-        collector.collect(docid);
-      }
+      _numValidated++;
+      count(docid);
       return true;
     }
 
@@ -231,9 +424,74 @@ public class BoboSearcher {
     }
   }
 
+  /**
+   * @return true if the hits can be counted from a bitset: only their number and facet counts
+   *         are needed and there are no post filters.
+   */
+  private static boolean isCountOnly(Collector collector, FacetValidator validator,
+      BoboMapFunctionWrapper mapReduceWrapper) {
+    return mapReduceWrapper == null && validator._numPostFilters == 0
+        && collector instanceof SortCollector && ((SortCollector) collector).isCountOnly();
+  }
+
+  private boolean isDense(long cost) {
+    return cost >= _boboSegmentReader.maxDoc() * DENSE_MATCH_RATIO;
+  }
+
+  /**
+   * Counts the hits of the segment from a bitset instead of collecting them one by one.
+   * @param filterDocIdIterator filter, may be null.
+   */
+  private void countDense(Scorer scorer, DocIdSetIterator filterDocIdIterator,
+      SortCollector collector, FacetValidator validator) throws IOException {
+    int maxDoc = _boboSegmentReader.maxDoc();
+    FixedBitSet matches = new FixedBitSet(maxDoc);
+    if (filterDocIdIterator == null) {
+      int doc;
+      while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        matches.set(doc);
+      }
+    } else {
+      int doc = -1;
+      int target = filterDocIdIterator.nextDoc();
+      while (target < DocIdSetIterator.NO_MORE_DOCS) {
+        if (doc < target) {
+          doc = scorer.advance(target);
+        }
+        if (doc == target) {
+          matches.set(doc);
+          target = filterDocIdIterator.nextDoc();
+        } else {
+          if (doc == DocIdSetIterator.NO_MORE_DOCS) break;
+          target = filterDocIdIterator.advance(doc);
+        }
+      }
+    }
+    int numHits = (int) matches.cardinality();
+    collector.addTotalHits(numHits);
+    validator.countDense(matches, numHits, maxDoc, _boboSegmentReader.hasDeletions());
+  }
+
   public void search(Weight weight, Filter filter, Collector collector, int start,
       BoboMapFunctionWrapper mapReduceWrapper) throws IOException {
     final FacetValidator validator = createFacetValidator();
+    if (_stats == null) {
+      search(validator, weight, filter, collector, start, mapReduceWrapper);
+      return;
+    }
+    validator.startTiming();
+    long searchStart = System.nanoTime();
+    try {
+      search(validator, weight, filter, collector, start, mapReduceWrapper);
+    } finally {
+      _stats.addSegmentSearchTime(System.nanoTime() - searchStart);
+      validator.report(_stats);
+    }
+  }
+
+  private void search(FacetValidator validator, Weight weight, Filter filter, Collector collector,
+      int start, BoboMapFunctionWrapper mapReduceWrapper) throws IOException {
+    final boolean countOnly = isCountOnly(collector, validator, mapReduceWrapper);
     int target = 0;
     if (filter == null) {
       int docStart = start;
@@ -241,7 +499,10 @@ public class BoboSearcher {
       validator.setNextReader(_boboSegmentReader, docStart);
       Scorer scorer = weight.scorer(_atomicReaderContext, true, true,
         _boboSegmentReader.getLiveDocs());
-      if (scorer != null) {
+      if (scorer != null && countOnly && isDense(scorer.cost())) {
+        collector.setScorer(scorer);
+        countDense(scorer, null, (SortCollector) collector, validator);
+      } else if (scorer != null) {
         collector.setScorer(scorer);
         target = scorer.nextDoc();
         while (target != DocIdSetIterator.NO_MORE_DOCS) {
@@ -254,14 +515,19 @@ public class BoboSearcher {
           }
         }
       }
+      validator.flush();
       if (mapReduceWrapper != null) {
         mapReduceWrapper.mapFullIndexReader(_boboSegmentReader, validator.getCountCollectors());
       }
       return;
     }
 
+    long filterStart = _stats == null ? 0L : System.nanoTime();
     DocIdSet filterDocIdSet = filter.getDocIdSet(_atomicReaderContext,
       _boboSegmentReader.getLiveDocs());
+    if (_stats != null) {
+      _stats.addFilterTime(System.nanoTime() - filterStart);
+    }
     // shall we use return or continue here ??
     if (filterDocIdSet == null) {
       return;
@@ -273,61 +539,75 @@ public class BoboSearcher {
       _boboSegmentReader.getLiveDocs());
     if (scorer != null) {
       collector.setScorer(scorer);
-      DocIdSetIterator filterDocIdIterator = filterDocIdSet.iterator(); // CHECKME: use
-                                                                        // ConjunctionScorer here?
+      DocIdSetIterator filterDocIdIterator = filterDocIdSet.iterator();
 
       if (filterDocIdIterator == null) {
         return;
       }
 
+      if (countOnly && isDense(Math.min(scorer.cost(), filterDocIdIterator.cost()))) {
+        countDense(scorer, filterDocIdIterator, (SortCollector) collector, validator);
+        return;
+      }
+
+      // the sparser side leads, the other one is only advanced to its candidates
+      DocIdSetIterator lead = filterDocIdIterator;
+      DocIdSetIterator follow = scorer;
+      if (scorer.cost() < filterDocIdIterator.cost()) {
+        lead = scorer;
+        follow = filterDocIdIterator;
+      }
+
       int doc = -1;
-      target = filterDocIdIterator.nextDoc();
+      target = lead.nextDoc();
       if (mapReduceWrapper == null) {
         while (target < DocIdSetIterator.NO_MORE_DOCS) {
           if (doc < target) {
-            doc = scorer.advance(target);
+            doc = follow.advance(target);
           }
 
-          if (doc == target) // permitted by filter
+          if (doc == target) // permitted by filter and query
           {
             if (validator.validate(doc)) {
               collector.collect(doc);
 
-              target = filterDocIdIterator.nextDoc();
+              target = lead.nextDoc();
             } else {
               // skip to the next possible docid
-              target = filterDocIdIterator.advance(validator._nextTarget);
+              target = lead.advance(validator._nextTarget);
             }
           } else // doc > target
           {
             if (doc == DocIdSetIterator.NO_MORE_DOCS) break;
-            target = filterDocIdIterator.advance(doc);
+            target = lead.advance(doc);
           }
         }
+        validator.flush();
       } else {
         // MapReduce wrapper is not null
         while (target < DocIdSetIterator.NO_MORE_DOCS) {
           if (doc < target) {
-            doc = scorer.advance(target);
+            doc = follow.advance(target);
           }
 
-          if (doc == target) // permitted by filter
+          if (doc == target) // permitted by filter and query
           {
             if (validator.validate(doc)) {
               mapReduceWrapper.mapSingleDocument(doc, _boboSegmentReader);
               collector.collect(doc);
 
-              target = filterDocIdIterator.nextDoc();
+              target = lead.nextDoc();
             } else {
               // skip to the next possible docid
-              target = filterDocIdIterator.advance(validator._nextTarget);
+              target = lead.advance(validator._nextTarget);
             }
           } else // doc > target
           {
             if (doc == DocIdSetIterator.NO_MORE_DOCS) break;
-            target = filterDocIdIterator.advance(doc);
+            target = lead.advance(doc);
           }
         }
+        validator.flush();
         mapReduceWrapper.finalizeSegment(_boboSegmentReader, validator.getCountCollectors());
       }
     }
@@ -4,6 +4,7 @@
 package com.browseengine.bobo.search.section;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.DocsAndPositionsEnum;
@@ -12,7 +13,9 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.util.BytesRef;
 
 /**
- *
+ * Int payloads of the first position of a term, decoded once for all docs of a segment, see
+ * {@link com.browseengine.bobo.api.BoboSegmentReader#get(Term)}. The cache is read only once
+ * loaded and may be shared by threads.
  */
 public class IntMetaDataCache implements MetaDataCache {
   private static final int MAX_SLOTS = 1024;
@@ -121,12 +124,17 @@ public class IntMetaDataCache implements MetaDataCache {
   protected void loadPayload(Term term) throws IOException {
     DocsAndPositionsEnum dp = _reader.termPositionsEnum(term);
     int docID = -1;
-    while ((docID = dp.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+    // null if the term does not exist or has no positions
+    while (dp != null && (docID = dp.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
       if (dp.freq() > 0) {
         dp.nextPosition();
         BytesRef payload = dp.getPayload();
         if (payload != null) {
-          add(docID, payload.bytes, payload.length);
+          byte[] data = payload.bytes;
+          if (payload.offset != 0 || data.length != payload.length) {
+            data = Arrays.copyOfRange(data, payload.offset, payload.offset + payload.length);
+          }
+          add(docID, data, payload.length);
         }
       }
     }
@@ -176,4 +184,17 @@ public class IntMetaDataCache implements MetaDataCache {
   public int maxDoc() {
     return _reader.maxDoc();
   }
+
+  /**
+   * @return approximate heap size of the cache in bytes.
+   */
+  public long sizeInBytes() {
+    long size = 16 + _list.length * 8L;
+    for (int[] page : _list) {
+      if (page != null) {
+        size += 16 + page.length * 4L;
+      }
+    }
+    return size;
+  }
 }
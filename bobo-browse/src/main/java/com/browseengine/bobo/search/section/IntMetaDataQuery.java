@@ -9,9 +9,7 @@ import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.DocIdSetIterator;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BytesRef;
 
 /**
@@ -78,11 +76,6 @@ public class IntMetaDataQuery extends MetaDataQuery {
     return "IntMetaDataQuery(" + _validator.toString() + ")";
   }
 
-  @Override
-  public Weight createWeight(IndexSearcher searcher) throws IOException {
-    throw new UnsupportedOperationException();
-  }
-
   @Override
   public Query rewrite(IndexReader reader) throws IOException {
     return this;
@@ -101,6 +94,7 @@ public class IntMetaDataQuery extends MetaDataQuery {
   public static class IntMetaDataNodeNoCache extends AbstractTerminalNode {
     private final Validator _validator;
     private byte[] _data;
+    private int _dataOffset;
     private int _dataLen;
 
     public IntMetaDataNodeNoCache(Term term, AtomicReader reader, Validator validator)
@@ -127,12 +121,14 @@ public class IntMetaDataQuery extends MetaDataQuery {
         if (payload != null) {
           _dataLen = payload.length;
           _data = payload.bytes;
+          _dataOffset = payload.offset;
         }
       }
       int offset = targetSec * 4;
       while (offset + 4 <= _dataLen) {
-        int datum = ((_data[offset] & 0xff) | ((_data[offset + 1] & 0xff) << 8)
-            | ((_data[offset + 2] & 0xff) << 16) | ((_data[offset + 3] & 0xff) << 24));
+        int pos = _dataOffset + offset;
+        int datum = ((_data[pos] & 0xff) | ((_data[pos + 1] & 0xff) << 8)
+            | ((_data[pos + 2] & 0xff) << 16) | ((_data[pos + 3] & 0xff) << 24));
 
         if (_validator.validate(datum)) {
           _curSec = targetSec;
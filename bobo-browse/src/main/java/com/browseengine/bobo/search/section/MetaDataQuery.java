@@ -6,8 +6,14 @@ package com.browseengine.bobo.search.section;
 import java.io.IOException;
 
 import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
 
 public abstract class MetaDataQuery extends Query {
   protected Term _term;
@@ -23,4 +29,39 @@ public abstract class MetaDataQuery extends Query {
   public abstract SectionSearchQueryPlan getPlan(AtomicReader reader) throws IOException;
 
   public abstract SectionSearchQueryPlan getPlan(MetaDataCache cache) throws IOException;
+
+  /**
+   * Metadata queries are only searched as part of a {@link SectionSearchQuery}, which translates
+   * them to query plans. The weight only takes part in the normalization of the enclosing query.
+   */
+  @Override
+  public Weight createWeight(IndexSearcher searcher) throws IOException {
+    return new Weight() {
+      @Override
+      public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+        return new Explanation(getBoost(), MetaDataQuery.this.toString());
+      }
+
+      @Override
+      public Query getQuery() {
+        return MetaDataQuery.this;
+      }
+
+      @Override
+      public float getValueForNormalization() throws IOException {
+        return getBoost() * getBoost();
+      }
+
+      @Override
+      public void normalize(float norm, float topLevelBoost) {
+      }
+
+      @Override
+      public Scorer scorer(AtomicReaderContext context, boolean scoreDocsInOrder,
+          boolean topScorer, Bits acceptDocs) throws IOException {
+        throw new UnsupportedOperationException(MetaDataQuery.this
+            + " can only be searched within a SectionSearchQuery");
+      }
+    };
+  }
 }
@@ -74,6 +74,7 @@ public class SectionSearchQuery extends Query {
     private int _curDoc = -1;
     private final float _curScr;
     private final SectionSearchQueryPlan _plan;
+    private final long _cost;
 
     public SectionSearchScorer(Weight weight, float score, AtomicReader reader) throws IOException {
       super(weight);
@@ -83,7 +84,10 @@ public class SectionSearchQuery extends Query {
       _plan = builer.getPlan(_query);
       if (_plan != null) {
         _curDoc = -1;
+        // plans are not estimated, any doc of the segment may match
+        _cost = reader.maxDoc();
       } else {
+        _cost = 0;
         _curDoc = DocIdSetIterator.NO_MORE_DOCS;
         ;
       }
@@ -121,8 +125,7 @@ public class SectionSearchQuery extends Query {
 
     @Override
     public long cost() {
-      // TODO Auto-generated method stub
-      return 0;
+      return _cost;
     }
   }
 
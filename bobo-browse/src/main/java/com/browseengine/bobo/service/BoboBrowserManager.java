@@ -0,0 +1,319 @@
+package com.browseengine.bobo.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseException;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.facets.FacetHandler;
+
+/**
+ * Shares the browsers of the current point in time of an index between requests, in the spirit
+ * of Lucene's <code>SearcherManager</code>.
+ * <p>
+ * Browsers are pooled per reader: {@link #acquire()} hands out an idle browser, or creates one,
+ * and {@link #release(BoboBrowser)} gives it back for the next request. {@link #maybeRefresh()},
+ * on demand or on the schedule of {@link #startRefresh(long, TimeUnit)}, reopens the reader
+ * incrementally with {@link BoboMultiReader#openIfChanged(BoboMultiReader, DirectoryReader)},
+ * runs the warming requests on it and only then swaps it in. The previous reader and its
+ * browsers are closed once the last browser acquired on it is released.
+ */
+public class BoboBrowserManager implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(BoboBrowserManager.class);
+
+  /**
+   * Notified after a new reader was swapped in.
+   */
+  public static interface RefreshListener {
+    /**
+     * @param oldReader reader browsers were acquired on so far, still open until released.
+     * @param newReader reader browsers are acquired on from now on.
+     */
+    void afterRefresh(BoboMultiReader oldReader, BoboMultiReader newReader);
+  }
+
+  private final List<BrowseRequest> _warmingRequests = new CopyOnWriteArrayList<>();
+  private final List<RefreshListener> _listeners = new CopyOnWriteArrayList<>();
+  private final ConcurrentHashMap<BoboBrowser, Generation> _acquired = new ConcurrentHashMap<>();
+  private final Object _refreshLock = new Object();
+  private volatile Generation _current;
+  private ScheduledExecutorService _refreshExecutor = null;
+
+  /**
+   * @param reader directory reader, owned by the manager from now on.
+   * @param facetHandlers facet handlers, null to load the ones declared in the index.
+   * @throws IOException io.
+   */
+  public BoboBrowserManager(DirectoryReader reader, Collection<FacetHandler<?>> facetHandlers)
+      throws IOException {
+    this(BoboMultiReader.getInstance(reader, facetHandlers), reader);
+  }
+
+  /**
+   * @param boboReader bobo reader, owned by the manager from now on.
+   * @param reader directory reader wrapped by <code>boboReader</code>, owned by the manager from
+   *          now on.
+   */
+  public BoboBrowserManager(BoboMultiReader boboReader, DirectoryReader reader) {
+    _current = new Generation(boboReader, reader);
+  }
+
+  /**
+   * Adds a request browsed on every new reader before it is swapped in, typically one per sort
+   * and facet the requests use, so that the first requests on the reader do not load the data.
+   * @param req warming request.
+   */
+  public void addWarmingRequest(BrowseRequest req) {
+    _warmingRequests.add(req);
+  }
+
+  public void addRefreshListener(RefreshListener listener) {
+    _listeners.add(listener);
+  }
+
+  /**
+   * Gets a browser on the current reader, which must be released with
+   * {@link #release(BoboBrowser)} once the request is done. Field values of the hits are read
+   * lazily from the reader, they must be read or resolved with
+   * {@link BrowseResult#resolveFieldValues()} before the browser is released.
+   * @return browser, not shared with other threads until released.
+   * @throws IOException if the browser could not be created.
+   */
+  public BoboBrowser acquire() throws IOException {
+    while (true) {
+      Generation generation = _current;
+      if (generation == null) {
+        throw new IllegalStateException("browser manager is closed");
+      }
+      if (generation.tryIncRef()) {
+        BoboBrowser browser = generation._idleBrowsers.poll();
+        if (browser == null) {
+          try {
+            browser = new BoboBrowser(generation._boboReader);
+          } catch (IOException e) {
+            generation.decRef();
+            throw e;
+          }
+        }
+        _acquired.put(browser, generation);
+        return browser;
+      }
+      // the generation was closed since it was read, the next read sees its successor
+    }
+  }
+
+  /**
+   * Gives back a browser, which must not be used afterwards. Its reader is closed once all its
+   * browsers are released, if it is no longer the current one.
+   * @param browser browser from {@link #acquire()}.
+   * @throws IOException if the reader of the browser failed to close.
+   */
+  public void release(BoboBrowser browser) throws IOException {
+    Generation generation = _acquired.remove(browser);
+    if (generation == null) {
+      throw new IllegalArgumentException("browser was not acquired from this manager");
+    }
+    try {
+      browser.clearRuntimeFacetHandlers();
+      if (generation == _current) {
+        generation._idleBrowsers.offer(browser);
+      } else {
+        browser.close();
+      }
+    } finally {
+      generation.decRef();
+    }
+  }
+
+  /**
+   * Browses on an acquired browser.
+   * @param req browse request.
+   * @return browse result, its hits no longer reference the reader.
+   * @throws BrowseException if the browse or the browser failed.
+   */
+  public BrowseResult browse(BrowseRequest req) throws BrowseException {
+    BoboBrowser browser;
+    try {
+      browser = acquire();
+    } catch (IOException e) {
+      throw new BrowseException("failed to create BoboBrowser", e);
+    }
+    try {
+      return browser.browse(req).resolveFieldValues();
+    } finally {
+      try {
+        release(browser);
+      } catch (IOException e) {
+        logger.error(e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Reopens the reader if the index changed, warms the new reader and swaps it in. Concurrent
+   * calls wait for each other, browsers can be acquired all along.
+   * @return true if a new reader was swapped in.
+   * @throws IOException if the reader could not be reopened.
+   */
+  public boolean maybeRefresh() throws IOException {
+    synchronized (_refreshLock) {
+      Generation current = _current;
+      if (current == null) {
+        throw new IllegalStateException("browser manager is closed");
+      }
+      DirectoryReader newReader = DirectoryReader.openIfChanged(current._reader);
+      if (newReader == null) {
+        return false;
+      }
+      Generation generation;
+      try {
+        generation = new Generation(BoboMultiReader.openIfChanged(current._boboReader, newReader),
+            newReader);
+      } catch (IOException e) {
+        newReader.close();
+        throw e;
+      }
+      warm(generation);
+      _current = generation;
+      for (RefreshListener listener : _listeners) {
+        listener.afterRefresh(current._boboReader, generation._boboReader);
+      }
+      current.decRef();
+      return true;
+    }
+  }
+
+  private void warm(Generation generation) {
+    if (_warmingRequests.isEmpty()) {
+      return;
+    }
+    BoboBrowser browser;
+    try {
+      browser = new BoboBrowser(generation._boboReader);
+    } catch (IOException e) {
+      logger.error("failed to create warming browser: " + e.getMessage(), e);
+      return;
+    }
+    for (BrowseRequest req : _warmingRequests) {
+      try {
+        BrowseResult result = browser.browse(req);
+        result.close();
+      } catch (Exception e) {
+        logger.error("failed to warm with: " + req + ": " + e.getMessage(), e);
+      }
+      browser.clearRuntimeFacetHandlers();
+    }
+    generation._idleBrowsers.offer(browser);
+  }
+
+  /**
+   * Calls {@link #maybeRefresh()} on a background thread with the given delay between calls.
+   * @param delay delay between the end of a refresh and the start of the next one.
+   * @param unit unit of the delay.
+   */
+  public synchronized void startRefresh(long delay, TimeUnit unit) {
+    if (_refreshExecutor != null) {
+      throw new IllegalStateException("refresh already started");
+    }
+    _refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "bobo-browser-refresh");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    _refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          maybeRefresh();
+        } catch (Exception e) {
+          logger.error("failed to refresh: " + e.getMessage(), e);
+        }
+      }
+    }, delay, delay, unit);
+  }
+
+  /**
+   * @return number of browsers acquired and not released yet.
+   */
+  public int getNumAcquired() {
+    return _acquired.size();
+  }
+
+  /**
+   * Stops the refresh and closes the current reader once its browsers are released.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (_refreshExecutor != null) {
+        _refreshExecutor.shutdownNow();
+        _refreshExecutor = null;
+      }
+    }
+    Generation current;
+    synchronized (_refreshLock) {
+      current = _current;
+      _current = null;
+    }
+    if (current != null) {
+      current.decRef();
+    }
+  }
+
+  /**
+   * A reader with its pooled browsers. The manager holds a reference while the generation is
+   * current, each acquired browser holds another.
+   */
+  private static final class Generation {
+    private final BoboMultiReader _boboReader;
+    private final DirectoryReader _reader;
+    private final ConcurrentLinkedQueue<BoboBrowser> _idleBrowsers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _refCount = new AtomicInteger(1);
+
+    Generation(BoboMultiReader boboReader, DirectoryReader reader) {
+      _boboReader = boboReader;
+      _reader = reader;
+    }
+
+    boolean tryIncRef() {
+      int count;
+      while ((count = _refCount.get()) > 0) {
+        if (_refCount.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void decRef() throws IOException {
+      if (_refCount.decrementAndGet() == 0) {
+        BoboBrowser browser;
+        while ((browser = _idleBrowsers.poll()) != null) {
+          browser.close();
+        }
+        _boboReader.close();
+        _reader.close();
+      }
+    }
+  }
+}
@@ -2,14 +2,15 @@ package com.browseengine.bobo.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.store.FSDirectory;
 
-import com.browseengine.bobo.api.BoboBrowser;
-import com.browseengine.bobo.api.BoboMultiReader;
 import com.browseengine.bobo.api.BrowseRequest;
 import com.browseengine.bobo.api.BrowseResult;
 
@@ -17,7 +18,9 @@ public class BoboService {
   private static final Logger logger = LoggerFactory.getLogger(BoboService.class);
 
   private final File _idxDir;
-  private BoboMultiReader _boboReader;
+  private BoboBrowserManager _browserManager;
+  private long _refreshIntervalMillis = 0L;
+  private final List<BrowseRequest> _warmingRequests = new ArrayList<>();
 
   public BoboService(String path) {
     this(new File(path));
@@ -25,43 +28,60 @@ public class BoboService {
 
   public BoboService(File idxDir) {
     _idxDir = idxDir;
-    _boboReader = null;
+    _browserManager = null;
+  }
+
+  /**
+   * Sets how often the index is checked for changes once started, a changed index is reopened
+   * incrementally and swapped in after warming.
+   * @param refreshIntervalMillis delay between checks in milliseconds, 0 to never refresh.
+   */
+  public void setRefreshInterval(long refreshIntervalMillis) {
+    _refreshIntervalMillis = refreshIntervalMillis;
+  }
+
+  /**
+   * Adds a request browsed on every refreshed reader before it serves requests, must be called
+   * before {@link #start()}.
+   * @param req warming request.
+   */
+  public void addWarmingRequest(BrowseRequest req) {
+    _warmingRequests.add(req);
+  }
+
+  public BoboBrowserManager getBrowserManager() {
+    return _browserManager;
   }
 
   public BrowseResult browse(BrowseRequest req) {
-    BoboBrowser browser = null;
     try {
-      browser = new BoboBrowser(_boboReader);
-      return browser.browse(req);
+      return _browserManager.browse(req);
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
       return new BrowseResult();
-    } finally {
-      if (browser != null) {
-        try {
-          browser.close();
-        } catch (IOException e) {
-          logger.error(e.getMessage());
-        }
-      }
     }
   }
 
   public void start() throws IOException {
     DirectoryReader reader = DirectoryReader.open(FSDirectory.open(_idxDir));
     try {
-      _boboReader = BoboMultiReader.getInstance(reader);
+      _browserManager = new BoboBrowserManager(reader, null);
     } catch (IOException ioe) {
-      if (reader != null) {
-        reader.close();
-      }
+      reader.close();
+      throw ioe;
+    }
+    for (BrowseRequest req : _warmingRequests) {
+      _browserManager.addWarmingRequest(req);
+    }
+    if (_refreshIntervalMillis > 0) {
+      _browserManager.startRefresh(_refreshIntervalMillis, TimeUnit.MILLISECONDS);
     }
   }
 
   public void shutdown() {
-    if (_boboReader != null) {
+    if (_browserManager != null) {
       try {
-        _boboReader.close();
+        _browserManager.close();
       } catch (IOException e) {
         logger.error(e.getMessage());
       }
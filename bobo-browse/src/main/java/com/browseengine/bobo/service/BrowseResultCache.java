@@ -0,0 +1,310 @@
+package com.browseengine.bobo.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseFacet;
+import com.browseengine.bobo.api.BrowseHit;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.api.FacetAccessible;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.api.MappedFacetAccessible;
+
+/**
+ * Bounded LRU cache of whole browse results, so that repeated requests are not executed again,
+ * see {@link com.browseengine.bobo.impl.DefaultBrowseServiceImpl#setResultCache(BrowseResultCache)}.
+ * <p>
+ * Entries are keyed by reader and a canonical form of the request: selections sorted by field
+ * and value, facet specs sorted by field, plus query, filter, sort, paging, search after cursor,
+ * stored fields, fetched fields, term vectors and grouping. Queries, sort fields and cursors
+ * compare by value, filters and custom comparator factories by identity unless they override
+ * equals. Requests with runtime facet handler data, a map reduce function, doc id cache
+ * collection or stats collection are not cached, nor are results with group accessibles or
+ * errors.
+ * <p>
+ * Facets are cached as {@link MappedFacetAccessible} snapshots of the facets returned for the
+ * spec, so {@link FacetAccessible#getFacet(String)} only finds those values on cached results.
+ * The sort collector is not kept. Cached hits are shared between results and must not be
+ * modified. Entries of a reader are dropped when it is closed or
+ * {@link #invalidate(BoboMultiReader) invalidated}.
+ */
+public class BrowseResultCache {
+  private final int _maxSize;
+  private final LinkedHashMap<Key, BrowseResult> _cache;
+  private final Set<BoboMultiReader> _readers = Collections
+      .newSetFromMap(new IdentityHashMap<BoboMultiReader, Boolean>());
+
+  private long _hitCount = 0;
+  private long _missCount = 0;
+  private long _evictionCount = 0;
+
+  /**
+   * @param maxSize maximum number of cached results.
+   */
+  public BrowseResultCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    _maxSize = maxSize;
+    _cache = new LinkedHashMap<Key, BrowseResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, BrowseResult> eldest) {
+        if (size() > _maxSize) {
+          _evictionCount++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Builds the cache key of a request, before it is browsed as browsing may rewrite the request.
+   *
+   * @param reader reader the request is browsed on.
+   * @param req request.
+   * @return key, or null if the request is not cacheable.
+   */
+  public Object getKey(BoboMultiReader reader, BrowseRequest req) {
+    List<Object> requestKey = getRequestKey(req);
+    return requestKey == null ? null : new Key(reader, requestKey);
+  }
+
+  /**
+   * Gets a cached result.
+   *
+   * @param key key from {@link #getKey(BoboMultiReader, BrowseRequest)}.
+   * @return copy of the cached result, or null if not cached.
+   */
+  public BrowseResult get(Object key) {
+    BrowseResult snapshot;
+    synchronized (this) {
+      snapshot = _cache.get(key);
+      if (snapshot == null) {
+        _missCount++;
+        return null;
+      }
+      _hitCount++;
+    }
+    return copy(snapshot);
+  }
+
+  /**
+   * Caches a result. The result is copied, the caller keeps its ownership.
+   *
+   * @param key key from {@link #getKey(BoboMultiReader, BrowseRequest)}.
+   * @param result result of the request.
+   * @return true if the result was cached.
+   */
+  public boolean put(Object key, BrowseResult result) {
+    if (result.getGroupAccessibles() != null || result.getMapReduceResult() != null
+        || !result.getBoboErrors().isEmpty()) {
+      return false;
+    }
+    BrowseResult snapshot = snapshot(result);
+    BoboMultiReader reader = ((Key) key)._reader;
+    synchronized (this) {
+      _cache.put((Key) key, snapshot);
+      if (!_readers.add(reader)) {
+        return true;
+      }
+    }
+    watch(reader);
+    return true;
+  }
+
+  /**
+   * Drops the entries of a reader, called when the reader is replaced by a newer one.
+   *
+   * @param reader reader whose results are dropped.
+   */
+  public synchronized void invalidate(BoboMultiReader reader) {
+    _readers.remove(reader);
+    Iterator<Key> iter = _cache.keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next()._reader == reader) {
+        iter.remove();
+      }
+    }
+  }
+
+  public int getMaxSize() {
+    return _maxSize;
+  }
+
+  public synchronized int size() {
+    return _cache.size();
+  }
+
+  public synchronized long getHitCount() {
+    return _hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return _missCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return _evictionCount;
+  }
+
+  /**
+   * Drops all entries, the statistics are kept.
+   */
+  public synchronized void clear() {
+    _cache.clear();
+    _readers.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "BrowseResultCache[size=" + _cache.size() + ", maxSize=" + _maxSize + ", hits="
+        + _hitCount + ", misses=" + _missCount + ", evictions=" + _evictionCount + "]";
+  }
+
+  private void watch(final BoboMultiReader reader) {
+    reader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+      @Override
+      public void onClose(IndexReader closed) {
+        invalidate(reader);
+      }
+    });
+  }
+
+  /**
+   * Builds the canonical key of a request.
+   *
+   * @param req request.
+   * @return key, or null if the request is not cacheable.
+   */
+  static List<Object> getRequestKey(BrowseRequest req) {
+    Map<String, ?> handlerData = req.getFacetHandlerDataMap();
+    // stats describe one execution of the request and are not served from the cache
+    if ((handlerData != null && !handlerData.isEmpty()) || req.getMapReduceWrapper() != null
+        || req.getCollectDocIdCache() || req.isCollectStats()) {
+      return null;
+    }
+
+    TreeMap<String, List<Object>> selections = new TreeMap<>();
+    for (BrowseSelection sel : req.getSelections()) {
+      selections.put(sel.getFieldName(), Arrays.<Object> asList(sortedList(sel.getValues()),
+        sortedList(sel.getNotValues()), sel.getSelectionOperation(),
+        sel.getSelectionProperties().clone()));
+    }
+
+    TreeMap<String, List<Object>> facetSpecs = new TreeMap<>();
+    Map<String, FacetSpec> specMap = req.getFacetSpecs();
+    if (specMap != null) {
+      for (Map.Entry<String, FacetSpec> entry : specMap.entrySet()) {
+        FacetSpec spec = entry.getValue();
+        facetSpecs.put(entry.getKey(), spec == null ? null : Arrays.<Object> asList(
+          spec.getOrderBy(), spec.getMaxCount(), spec.isExpandSelection(), spec.getMinHitCount(),
+          spec.getCustomComparatorFactory(), copy(spec.getProperties())));
+      }
+    }
+
+    // browsing runs null queries as match all, the key must not change when the request is
+    // modified later
+    Query query = req.getQuery();
+    if (query == null) {
+      query = new MatchAllDocsQuery();
+    }
+    String[] groupBy = req.getGroupBy();
+    Set<String> termVectors = req.getTermVectorsToFetch();
+    Set<String> fields = req.getFieldsToFetch();
+    return Arrays.<Object> asList(query.clone(), req.getFilter(), selections, facetSpecs,
+      Arrays.asList(req.getSort()), req.getOffset(), req.getCount(), req.isFetchStoredFields(),
+      req.isShowExplanation(), groupBy == null ? null : Arrays.asList(groupBy),
+      req.getMaxPerGroup(), termVectors == null ? null : new TreeSet<>(termVectors),
+      fields == null ? null : new TreeSet<>(fields), req.getSearchAfter());
+  }
+
+  private static Map<String, String> copy(Map<String, String> map) {
+    return map == null ? null : new HashMap<>(map);
+  }
+
+  private static List<String> sortedList(String[] values) {
+    List<String> list = Arrays.asList(values);
+    Collections.sort(list);
+    return list;
+  }
+
+  private static BrowseResult snapshot(BrowseResult result) {
+    BrowseResult snapshot = new BrowseResult();
+    snapshot.setNumHits(result.getNumHits());
+    snapshot.setNumGroups(result.getNumGroups());
+    snapshot.setTotalDocs(result.getTotalDocs());
+    snapshot.setTime(result.getTime());
+    snapshot.setCursor(result.getCursor());
+    BrowseHit[] hits = result.resolveFieldValues().getHits();
+    snapshot.setHits(hits == null ? null : hits.clone());
+    for (Map.Entry<String, FacetAccessible> entry : result.getFacetMap().entrySet()) {
+      FacetAccessible facets = entry.getValue();
+      if (facets == null) {
+        continue;
+      }
+      List<BrowseFacet> list = new ArrayList<>(facets.getFacets());
+      snapshot.addFacets(entry.getKey(),
+        new MappedFacetAccessible(list.toArray(new BrowseFacet[list.size()])));
+    }
+    return snapshot;
+  }
+
+  private static BrowseResult copy(BrowseResult snapshot) {
+    BrowseResult result = new BrowseResult();
+    result.setNumHits(snapshot.getNumHits());
+    result.setNumGroups(snapshot.getNumGroups());
+    result.setTotalDocs(snapshot.getTotalDocs());
+    result.setTime(snapshot.getTime());
+    result.setCursor(snapshot.getCursor());
+    BrowseHit[] hits = snapshot.getHits();
+    result.setHits(hits == null ? null : hits.clone());
+    result.addAll(snapshot.getFacetMap());
+    return result;
+  }
+
+  private static final class Key {
+    private final BoboMultiReader _reader;
+    private final List<Object> _request;
+    private final int _hashCode;
+
+    Key(BoboMultiReader reader, List<Object> request) {
+      _reader = reader;
+      _request = request;
+      _hashCode = System.identityHashCode(reader) * 31 + request.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return _reader == other._reader && _request.equals(other._request);
+    }
+  }
+}
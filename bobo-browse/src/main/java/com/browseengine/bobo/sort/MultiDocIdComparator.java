@@ -1,5 +1,8 @@
 package com.browseengine.bobo.sort;
 
+import java.io.Serializable;
+import java.util.Arrays;
+
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Scorer;
 
@@ -42,9 +45,23 @@ public class MultiDocIdComparator extends DocComparator {
       _comparators = comparators;
     }
 
+    /**
+     * @return the values of the doc, detached from the comparators.
+     */
+    public MultiValueComparable getValues() {
+      Comparable<?>[] values = new Comparable<?>[_comparators.length];
+      for (int i = 0; i < values.length; ++i) {
+        values[i] = _comparators[i].value(_doc);
+      }
+      return new MultiValueComparable(values);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public int compareTo(Object o) {
+      if (o instanceof MultiValueComparable) {
+        return -((MultiValueComparable) o).compareTo(this);
+      }
       MultiDocIdComparable other = (MultiDocIdComparable) o;
       Comparable c1, c2;
       for (int i = 0; i < _comparators.length; ++i) {
@@ -58,4 +75,55 @@ public class MultiDocIdComparator extends DocComparator {
       return 0;
     }
   }
+
+  /**
+   * Values of a doc for each sort field, comparable with the {@link MultiDocIdComparable}s of the
+   * same sort.
+   */
+  @SuppressWarnings("rawtypes")
+  public static class MultiValueComparable implements Comparable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Comparable<?>[] _values;
+
+    public MultiValueComparable(Comparable<?>[] values) {
+      _values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int compareTo(Object o) {
+      for (int i = 0; i < _values.length; ++i) {
+        Comparable c1 = _values[i];
+        Comparable c2;
+        if (o instanceof MultiDocIdComparable) {
+          MultiDocIdComparable other = (MultiDocIdComparable) o;
+          c2 = other._comparators[i].value(other._doc);
+        } else {
+          c2 = ((MultiValueComparable) o)._values[i];
+        }
+        int v = c1.compareTo(c2);
+        if (v != 0) {
+          return v;
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(_values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof MultiValueComparable
+          && Arrays.equals(_values, ((MultiValueComparable) o)._values);
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(_values);
+    }
+  }
 }
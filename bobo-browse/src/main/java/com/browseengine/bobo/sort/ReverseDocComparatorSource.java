@@ -60,6 +60,20 @@ public class ReverseDocComparatorSource extends DocComparatorSource {
         }
       }
 
+      @Override
+      public int hashCode() {
+        return _inner == null ? 0 : ~_inner.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (!(o instanceof ReverseComparable)) {
+          return false;
+        }
+        Comparable inner = ((ReverseComparable) o)._inner;
+        return _inner == null ? inner == null : _inner.equals(inner);
+      }
+
       @Override
       public String toString() {
         StringBuilder buf = new StringBuilder();
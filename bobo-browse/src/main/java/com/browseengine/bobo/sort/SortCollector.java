@@ -19,6 +19,7 @@ import org.apache.lucene.search.SortField;
 import com.browseengine.bobo.api.BoboCustomSortField;
 import com.browseengine.bobo.api.BoboSegmentReader;
 import com.browseengine.bobo.api.Browsable;
+import com.browseengine.bobo.api.BrowseCursor;
 import com.browseengine.bobo.api.BrowseHit;
 import com.browseengine.bobo.api.FacetAccessible;
 import com.browseengine.bobo.facets.FacetHandler;
@@ -116,6 +117,8 @@ public abstract class SortCollector extends Collector {
   protected Collector _collector = null;
   protected final SortField[] _sortFields;
   protected final boolean _fetchStoredFields;
+  protected Set<String> _fieldsToFetch = null;
+  protected BrowseCursor _searchAfter = null;
   protected boolean _closed = false;
 
   protected SortCollector(SortField[] sortFields, boolean fetchStoredFields) {
@@ -247,6 +250,24 @@ public abstract class SortCollector extends Collector {
         fetchStoredFields, termVectorsToFetch, groupBy, maxPerGroup, collectDocIdCache);
   }
 
+  /**
+   * @return true if collected hits are only counted: no hits are kept, grouped or passed on to a
+   *         wrapped collector, so a segment's hits can be counted with
+   *         {@link #addTotalHits(int)} instead.
+   */
+  public boolean isCountOnly() {
+    return false;
+  }
+
+  /**
+   * Counts hits of the current segment without collecting them, only valid if
+   * {@link #isCountOnly()}.
+   * @param numHits number of hits.
+   */
+  public void addTotalHits(int numHits) {
+    throw new UnsupportedOperationException();
+  }
+
   public SortCollector setCollector(Collector collector) {
     _collector = collector;
     return this;
@@ -256,6 +277,34 @@ public abstract class SortCollector extends Collector {
     return _collector;
   }
 
+  /**
+   * Restricts the facet values and stored fields of the hits to the given fields.
+   * @param fieldsToFetch field names, null for all fields.
+   * @return self
+   */
+  public SortCollector setFieldsToFetch(Set<String> fieldsToFetch) {
+    _fieldsToFetch = fieldsToFetch;
+    return this;
+  }
+
+  public Set<String> getFieldsToFetch() {
+    return _fieldsToFetch;
+  }
+
+  /**
+   * Only keeps the hits sorting after the cursor, must be set before collecting.
+   * @param searchAfter cursor, null to keep all hits.
+   * @return self
+   */
+  public SortCollector setSearchAfter(BrowseCursor searchAfter) {
+    _searchAfter = searchAfter;
+    return this;
+  }
+
+  public BrowseCursor getSearchAfter() {
+    return _searchAfter;
+  }
+
   public void close() {
     if (!_closed) {
       _closed = true;
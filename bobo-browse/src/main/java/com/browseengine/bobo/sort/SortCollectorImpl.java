@@ -1,11 +1,12 @@
 package com.browseengine.bobo.sort;
 
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -34,11 +35,15 @@ import com.browseengine.bobo.api.BrowseHit;
 import com.browseengine.bobo.api.BrowseHit.BoboTerm;
 import com.browseengine.bobo.api.FacetAccessible;
 import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.api.MultiBoboBrowser;
 import com.browseengine.bobo.facets.CombinedFacetAccessible;
 import com.browseengine.bobo.facets.FacetCountCollector;
 import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.RuntimeFacetHandler;
 import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.GlobalOrdinalMap;
 import com.browseengine.bobo.facets.data.PrimitiveLongArrayWrapper;
+import com.browseengine.bobo.facets.data.TermValueList;
 import com.browseengine.bobo.util.ListMerger;
 
 public class SortCollectorImpl extends SortCollector {
@@ -77,6 +82,8 @@ public class SortCollectorImpl extends SortCollector {
   private ScoreDoc _bottom;
   private ScoreDoc _tmpScoreDoc;
   private boolean _queueFull;
+  // bottom of the last full queue of a previous segment, docs sorting after it are not competitive
+  private MyScoreDoc _globalBottom;
   private DocComparator _currentComparator;
   private final DocComparatorSource _compSource;
   private DocIDPriorityQueue _currentQueue;
@@ -87,6 +94,7 @@ public class SortCollectorImpl extends SortCollector {
   private Scorer _scorer;
   private final int _offset;
   private final int _count;
+  private final int _maxPerGroup;
 
   private final Browsable _boboBrowser;
   private final boolean _collectDocIdCache;
@@ -135,6 +143,7 @@ public class SortCollectorImpl extends SortCollector {
     _numHits = offset + count;
     _offset = offset;
     _count = count;
+    _maxPerGroup = maxPerGroup;
     _totalHits = 0;
     _queueFull = false;
     _doScoring = doScoring;
@@ -277,12 +286,14 @@ public class SortCollectorImpl extends SortCollector {
           _tmpScoreDoc.doc = doc;
           _tmpScoreDoc.score = score;
 
-          if (_currentComparator.compare(_bottom, _tmpScoreDoc) > 0) {
+          if (_currentComparator.compare(_bottom, _tmpScoreDoc) > 0
+              && (_searchAfter == null || compare(_currentComparator.value(_tmpScoreDoc), doc
+                  + _currentQueue.base, _searchAfter.getValue(), _searchAfter.getDocid()) > 0)) {
             ScoreDoc tmp = _bottom;
             _bottom = _currentQueue.replace(_tmpScoreDoc);
             _tmpScoreDoc = tmp;
           }
-        } else {
+        } else if (isCompetitive(doc, score)) {
           _bottom = _currentQueue.add(new MyScoreDoc(doc, score, _currentQueue, _currentReader));
           _queueFull = (_currentQueue.size >= _numHits);
         }
@@ -292,12 +303,59 @@ public class SortCollectorImpl extends SortCollector {
     if (_collector != null) _collector.collect(doc);
   }
 
+  /**
+   * Checks a doc of the current segment against the cursor and against the bottom carried over
+   * from a previous segment, using the segment independent sort values the queues are merged with.
+   * @return whether the doc sorts after the cursor and before the carried bottom.
+   */
+  private boolean isCompetitive(int doc, float score) {
+    if (_searchAfter == null && _globalBottom == null) {
+      return true;
+    }
+    _tmpScoreDoc.doc = doc;
+    _tmpScoreDoc.score = score;
+    Comparable<?> value = _currentComparator.value(_tmpScoreDoc);
+    int globalDoc = doc + _currentQueue.base;
+    if (_searchAfter != null
+        && compare(value, globalDoc, _searchAfter.getValue(), _searchAfter.getDocid()) <= 0) {
+      return false;
+    }
+    return _globalBottom == null
+        || compare(value, globalDoc, _globalBottom.getValue(), _globalBottom.doc
+            + _globalBottom.queue.base) < 0;
+  }
+
+  /**
+   * Compares segment independent sort values, ties are broken by global doc id as in the merge.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static int compare(Comparable value, int doc, Comparable other, int otherDoc) {
+    if (value == null) {
+      if (other != null) {
+        return -1;
+      }
+    } else if (other == null) {
+      return 1;
+    } else {
+      int v = value.compareTo(other);
+      if (v != 0) {
+        return v;
+      }
+    }
+    return doc - otherDoc;
+  }
+
   @Override
   public void setNextReader(AtomicReaderContext context) throws IOException {
     AtomicReader reader = context.reader();
     if (!(reader instanceof BoboSegmentReader)) {
       throw new IllegalStateException("The reader is not instance of " + BoboSegmentReader.class);
     }
+    if (_queueFull && groupBy == null) {
+      // a full queue only holds docs sorting before the previous bottom, so its bottom is at least
+      // as competitive
+      _globalBottom = (MyScoreDoc) _bottom;
+    }
     _currentReader = (BoboSegmentReader) reader;
     int docBase = context.docBase;
     _currentComparator = _compSource.getComparator(reader, docBase);
@@ -329,12 +387,80 @@ public class SortCollectorImpl extends SortCollector {
     _queueFull = false;
   }
 
+  /**
+   * Absorbs a collector that was filled independently, typically on another thread for another
+   * segment, so that {@link #topDocs()} merges its queues, group counts and cached doc ids as if
+   * they had been collected by this instance. Both collectors must have been built for the same
+   * request.
+   * @param other collector to merge into this one
+   */
+  public void merge(SortCollectorImpl other) {
+    _totalHits += other._totalHits;
+    _pqList.addAll(other._pqList);
+    other._pqList.clear();
+    if (_facetAccessibleLists != null && other._facetAccessibleLists != null) {
+      for (int i = 0; i < _facetAccessibleLists.length; ++i) {
+        _facetAccessibleLists[i].addAll(other._facetAccessibleLists[i]);
+      }
+    }
+    if (contextList != null && other.contextList != null) {
+      // re-append the cached doc ids so that the blocks stay contiguous across contexts
+      Iterator<int[]> docIter = other.docidarraylist.iterator();
+      Iterator<float[]> scoreIter = other.scorearraylist == null ? null : other.scorearraylist
+          .iterator();
+      int[] docs = null;
+      float[] scores = null;
+      int cursor = BLOCK_SIZE;
+      for (CollectorContext ctx : other.contextList) {
+        _currentContext = new CollectorContext(ctx.reader, ctx.base, ctx.comparator);
+        contextList.add(_currentContext);
+        for (int i = 0; i < ctx.length; ++i) {
+          if (cursor == BLOCK_SIZE) {
+            docs = docIter.next();
+            if (scoreIter != null) scores = scoreIter.next();
+            cursor = 0;
+          }
+          cacheDocId(docs[cursor], scores == null ? 0.0f : scores[cursor]);
+          ++cursor;
+        }
+      }
+      other.close();
+    }
+  }
+
+  private void cacheDocId(int doc, float score) {
+    if (_docIdArrayCursor == BLOCK_SIZE || _currentDocIdArray == null) {
+      _currentDocIdArray = intarraymgr.get(BLOCK_SIZE);
+      docidarraylist.add(_currentDocIdArray);
+      if (_doScoring) {
+        _currentScoreArray = floatarraymgr.get(BLOCK_SIZE);
+        scorearraylist.add(_currentScoreArray);
+      }
+      _docIdCacheCapacity += BLOCK_SIZE;
+      _docIdArrayCursor = 0;
+    }
+    _currentDocIdArray[_docIdArrayCursor] = doc;
+    if (_doScoring) _currentScoreArray[_docIdArrayCursor] = score;
+    ++_docIdArrayCursor;
+    ++_currentContext.length;
+  }
+
   @Override
   public void setScorer(Scorer scorer) throws IOException {
     _scorer = scorer;
     _currentComparator.setScorer(scorer);
   }
 
+  @Override
+  public boolean isCountOnly() {
+    return _count <= 0 && groupBy == null && _collector == null;
+  }
+
+  @Override
+  public void addTotalHits(int numHits) {
+    _totalHits += numHits;
+  }
+
   @Override
   public int getTotalHits() {
     return _totalHits;
@@ -363,6 +489,7 @@ public class SortCollectorImpl extends SortCollector {
     }
 
     List<MyScoreDoc> resList;
+    List<MyScoreDoc>[] groupDocs = null;
     if (_count > 0) {
       if (groupBy == null) {
         resList = ListMerger.mergeLists(_offset, _count, iterList, MERGE_COMPATATOR);
@@ -381,54 +508,317 @@ public class SortCollectorImpl extends SortCollector {
         }
         resList = new ArrayList<>(_count);
         Iterator<MyScoreDoc> mergedIter = ListMerger.mergeLists(iterList, MERGE_COMPATATOR);
-        Set<Object> groupSet = new HashSet<>(_offset + _count);
         int offsetLeft = _offset;
-        while (mergedIter.hasNext()) {
-          MyScoreDoc scoreDoc = mergedIter.next();
-          Object[] vals = groupBy.getRawFieldValues(scoreDoc.reader, scoreDoc.doc);
-          rawGroupValue = null;
-          if (vals != null && vals.length > 0) rawGroupValue = vals[0];
-
-          if (rawGroupValueType == 0) {
-            if (rawGroupValue != null) {
-              if (rawGroupValue instanceof long[]) rawGroupValueType = 2;
-              else rawGroupValueType = 1;
+        GlobalOrdinalMap ordinalMap = getGroupOrdinalMap();
+        if (ordinalMap != null) {
+          IntOpenHashSet groupSet = new IntOpenHashSet(_offset + _count);
+          while (mergedIter.hasNext()) {
+            MyScoreDoc scoreDoc = mergedIter.next();
+            if (groupSet.add(getGlobalGroup(ordinalMap, scoreDoc.reader, scoreDoc.doc))) {
+              if (offsetLeft > 0) --offsetLeft;
+              else {
+                resList.add(scoreDoc);
+                if (resList.size() >= _count) break;
+              }
             }
           }
-          if (rawGroupValueType == 2) {
-            primitiveLongArrayWrapperTmp.data = (long[]) rawGroupValue;
-            rawGroupValue = primitiveLongArrayWrapperTmp;
-          }
+        } else {
+          Set<Object> groupSet = new HashSet<>(_offset + _count);
+          while (mergedIter.hasNext()) {
+            MyScoreDoc scoreDoc = mergedIter.next();
+            Object[] vals = groupBy.getRawFieldValues(scoreDoc.reader, scoreDoc.doc);
+            rawGroupValue = null;
+            if (vals != null && vals.length > 0) rawGroupValue = vals[0];
+
+            if (rawGroupValueType == 0) {
+              if (rawGroupValue != null) {
+                if (rawGroupValue instanceof long[]) rawGroupValueType = 2;
+                else rawGroupValueType = 1;
+              }
+            }
+            if (rawGroupValueType == 2) {
+              primitiveLongArrayWrapperTmp.data = (long[]) rawGroupValue;
+              rawGroupValue = primitiveLongArrayWrapperTmp;
+            }
 
-          if (!groupSet.contains(rawGroupValue)) {
-            if (offsetLeft > 0) --offsetLeft;
-            else {
-              resList.add(scoreDoc);
-              if (resList.size() >= _count) break;
+            if (!groupSet.contains(rawGroupValue)) {
+              if (offsetLeft > 0) --offsetLeft;
+              else {
+                resList.add(scoreDoc);
+                if (resList.size() >= _count) break;
+              }
+              groupSet.add(rawGroupValueType == 2 ? new PrimitiveLongArrayWrapper(
+                  primitiveLongArrayWrapperTmp.data) : rawGroupValue);
             }
-            groupSet.add(new PrimitiveLongArrayWrapper(primitiveLongArrayWrapperTmp.data));
           }
         }
+        if (_maxPerGroup > 1 && _facetAccessibleLists == null && !resList.isEmpty()) {
+          groupDocs = collectGroupDocs(resList, ordinalMap);
+        }
       }
     } else resList = Collections.emptyList();
 
     Map<String, FacetHandler<?>> facetHandlerMap = _boboBrowser.getFacetHandlerMap();
-    return buildHits(resList.toArray(new MyScoreDoc[resList.size()]), _sortFields, facetHandlerMap,
-      _fetchStoredFields, _termVectorsToFetch, groupBy, _groupAccessibles);
+    BrowseHit[] hits = buildHits(resList.toArray(new MyScoreDoc[resList.size()]), _sortFields,
+      facetHandlerMap, _fetchStoredFields, _fieldsToFetch, _termVectorsToFetch, groupBy,
+      _groupAccessibles);
+    if (groupDocs != null) {
+      for (int i = 0; i < hits.length; ++i) {
+        hits[i].setGroupHits(buildHits(groupDocs[i].toArray(new MyScoreDoc[groupDocs[i].size()]),
+          _sortFields, facetHandlerMap, _fetchStoredFields, _fieldsToFetch, _termVectorsToFetch,
+          groupBy, _groupAccessibles));
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * @return global ordinals of the group by facet covering all collected segments, null if the
+   *         browser has none.
+   */
+  private GlobalOrdinalMap getGroupOrdinalMap() {
+    if (!(_boboBrowser instanceof MultiBoboBrowser) || contextList == null) {
+      return null;
+    }
+    GlobalOrdinalMap ordinalMap = ((MultiBoboBrowser) _boboBrowser).getGlobalOrdinalMap(groupBy
+        .getName());
+    if (ordinalMap == null) {
+      return null;
+    }
+    for (CollectorContext context : contextList) {
+      FacetDataCache<?> dataCache = (FacetDataCache<?>) groupBy.getFacetData(context.reader);
+      if (ordinalMap.getSegmentOrdinals(dataCache) == null) {
+        return null;
+      }
+    }
+    return ordinalMap;
+  }
+
+  private int getGlobalGroup(GlobalOrdinalMap ordinalMap, BoboSegmentReader reader, int doc) {
+    FacetDataCache<?> dataCache = (FacetDataCache<?>) groupBy.getFacetData(reader);
+    return ordinalMap.getSegmentOrdinals(dataCache)[dataCache.orderArray.get(doc)];
   }
 
+  /**
+   * Gathers the top {@link #_maxPerGroup} docs of each group of the hits from the cached doc ids.
+   * Each segment keeps a bounded queue of doc ids per group, keyed on the order index of the
+   * group value; the segments are then merged per group on their sort values.
+   * @param groupHits first hit of each group.
+   * @param ordinalMap global ordinals of the group by facet, null to look the group values up in
+   *          each segment.
+   * @return docs of each group in sort order, starting with its first hit.
+   */
+  @SuppressWarnings("unchecked")
+  private List<MyScoreDoc>[] collectGroupDocs(List<MyScoreDoc> groupHits,
+      GlobalOrdinalMap ordinalMap) {
+    int numGroups = groupHits.size();
+    Int2IntOpenHashMap globalGroups = null;
+    Object[] rawGroups = null;
+    if (ordinalMap != null) {
+      globalGroups = new Int2IntOpenHashMap(numGroups);
+      globalGroups.defaultReturnValue(-1);
+      for (int i = 0; i < numGroups; ++i) {
+        MyScoreDoc hit = groupHits.get(i);
+        globalGroups.put(getGlobalGroup(ordinalMap, hit.reader, hit.doc), i);
+      }
+    } else {
+      rawGroups = new Object[numGroups];
+      for (int i = 0; i < numGroups; ++i) {
+        MyScoreDoc hit = groupHits.get(i);
+        FacetDataCache<?> dataCache = (FacetDataCache<?>) groupBy.getFacetData(hit.reader);
+        rawGroups[i] = dataCache.valArray.getRawValue(dataCache.orderArray.get(hit.doc));
+      }
+    }
+
+    List<MyScoreDoc>[] groupDocs = new List[numGroups];
+    for (int i = 0; i < numGroups; ++i) {
+      groupDocs[i] = new ArrayList<>(_maxPerGroup);
+    }
+    GroupQueues queues = new GroupQueues(numGroups, _maxPerGroup);
+    Iterator<int[]> docIter = docidarraylist.iterator();
+    Iterator<float[]> scoreIter = scorearraylist == null ? null : scorearraylist.iterator();
+    int[] docs = null;
+    float[] scores = null;
+    int cursor = BLOCK_SIZE;
+    for (CollectorContext context : contextList) {
+      FacetDataCache<?> dataCache = (FacetDataCache<?>) groupBy.getFacetData(context.reader);
+      int[] segmentOrds = null;
+      Int2IntOpenHashMap groups;
+      if (globalGroups != null) {
+        segmentOrds = ordinalMap.getSegmentOrdinals(dataCache);
+        groups = globalGroups;
+      } else {
+        groups = getSegmentGroups(dataCache, rawGroups);
+      }
+      queues.setComparator(context.comparator);
+      for (int i = 0; i < context.length; ++i) {
+        if (cursor == BLOCK_SIZE) {
+          docs = docIter.next();
+          if (scoreIter != null) scores = scoreIter.next();
+          cursor = 0;
+        }
+        int doc = docs[cursor];
+        float score = scores == null ? 0.0f : scores[cursor];
+        ++cursor;
+        int ord = dataCache.orderArray.get(doc);
+        int group = groups.get(segmentOrds == null ? ord : segmentOrds[ord]);
+        if (group >= 0) {
+          queues.add(group, doc, score);
+        }
+      }
+      DocIDPriorityQueue queue = new DocIDPriorityQueue(context.comparator, 0, context.base);
+      for (int group = 0; group < numGroups; ++group) {
+        queues.drain(group, queue, context.reader, groupDocs[group]);
+      }
+    }
+
+    for (int i = 0; i < numGroups; ++i) {
+      List<MyScoreDoc> list = groupDocs[i];
+      Collections.sort(list, MERGE_COMPATATOR);
+      if (list.size() > _maxPerGroup) {
+        groupDocs[i] = new ArrayList<>(list.subList(0, _maxPerGroup));
+      }
+    }
+    return groupDocs;
+  }
+
+  /**
+   * @return result group by order index of the segment, -1 for other values.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Int2IntOpenHashMap getSegmentGroups(FacetDataCache<?> dataCache,
+      Object[] rawGroups) {
+    Int2IntOpenHashMap groups = new Int2IntOpenHashMap(rawGroups.length);
+    groups.defaultReturnValue(-1);
+    for (int i = 0; i < rawGroups.length; ++i) {
+      int ord = rawGroups[i] == null ? 0 : ((TermValueList) dataCache.valArray)
+          .indexOfWithType(rawGroups[i]);
+      if (ord >= 0) {
+        groups.put(ord, i);
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Bounded queues of the docs of a segment for a fixed number of groups, held in flat primitive
+   * arrays. Each queue is a heap with its worst doc on top.
+   */
+  private static final class GroupQueues {
+    private final int _maxSize;
+    private final int[] _docs;
+    private final float[] _scores;
+    private final int[] _sizes;
+    private final ScoreDoc _doc1 = new ScoreDoc(0, 0.0f);
+    private final ScoreDoc _doc2 = new ScoreDoc(0, 0.0f);
+    private DocComparator _comparator;
+
+    GroupQueues(int numGroups, int maxSize) {
+      _maxSize = maxSize;
+      _docs = new int[numGroups * maxSize];
+      _scores = new float[numGroups * maxSize];
+      _sizes = new int[numGroups];
+    }
+
+    void setComparator(DocComparator comparator) {
+      _comparator = comparator;
+    }
+
+    void add(int group, int doc, float score) {
+      int base = group * _maxSize;
+      int size = _sizes[group];
+      if (size < _maxSize) {
+        // up heap
+        int i = size;
+        while (i > 0) {
+          int parent = (i - 1) >>> 1;
+          if (compare(doc, score, base + parent) <= 0) {
+            break;
+          }
+          _docs[base + i] = _docs[base + parent];
+          _scores[base + i] = _scores[base + parent];
+          i = parent;
+        }
+        _docs[base + i] = doc;
+        _scores[base + i] = score;
+        _sizes[group] = size + 1;
+      } else if (compare(doc, score, base) < 0) {
+        // down heap from the replaced top
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= size) {
+            break;
+          }
+          if (child + 1 < size && compare(_docs[base + child + 1], _scores[base + child + 1],
+            base + child) > 0) {
+            ++child;
+          }
+          if (compare(doc, score, base + child) >= 0) {
+            break;
+          }
+          _docs[base + i] = _docs[base + child];
+          _scores[base + i] = _scores[base + child];
+          i = child;
+        }
+        _docs[base + i] = doc;
+        _scores[base + i] = score;
+      }
+    }
+
+    /**
+     * Moves the docs of a group to the list and empties its queue.
+     */
+    void drain(int group, DocIDPriorityQueue queue, BoboSegmentReader reader,
+        List<MyScoreDoc> list) {
+      int base = group * _maxSize;
+      for (int i = 0; i < _sizes[group]; ++i) {
+        list.add(new MyScoreDoc(_docs[base + i], _scores[base + i], queue, reader));
+      }
+      _sizes[group] = 0;
+    }
+
+    private int compare(int doc, float score, int index) {
+      _doc1.doc = doc;
+      _doc1.score = score;
+      _doc2.doc = _docs[index];
+      _doc2.score = _scores[index];
+      int v = _comparator.compare(_doc1, _doc2);
+      return v != 0 ? v : doc - _docs[index];
+    }
+  }
+
+  /**
+   * Builds the hits. Values of runtime facet handlers are read up front as their facet data
+   * goes away with the browser, values of the other handlers are read lazily by the hits.
+   */
   protected static BrowseHit[] buildHits(MyScoreDoc[] scoreDocs, SortField[] sortFields,
       Map<String, FacetHandler<?>> facetHandlerMap, boolean fetchStoredFields,
-      Set<String> termVectorsToFetch, FacetHandler<?> groupBy,
+      Set<String> fieldsToFetch, Set<String> termVectorsToFetch, FacetHandler<?> groupBy,
       CombinedFacetAccessible[] groupAccessibles) throws IOException {
     BrowseHit[] hits = new BrowseHit[scoreDocs.length];
-    Collection<FacetHandler<?>> facetHandlers = facetHandlerMap.values();
+    List<FacetHandler<?>> runtimeFacetHandlers = new ArrayList<>();
+    Map<String, FacetHandler<?>> lazyFacetHandlers = new HashMap<>();
+    for (Map.Entry<String, FacetHandler<?>> entry : facetHandlerMap.entrySet()) {
+      if (fieldsToFetch != null && !fieldsToFetch.contains(entry.getKey())) {
+        continue;
+      }
+      if (entry.getValue() instanceof RuntimeFacetHandler) {
+        runtimeFacetHandlers.add(entry.getValue());
+      } else {
+        lazyFacetHandlers.put(entry.getKey(), entry.getValue());
+      }
+    }
     for (int i = scoreDocs.length - 1; i >= 0; i--) {
       MyScoreDoc fdoc = scoreDocs[i];
       BoboSegmentReader reader = fdoc.reader;
       BrowseHit hit = new BrowseHit();
       if (fetchStoredFields) {
-        hit.setStoredFields(reader.document(fdoc.doc));
+        if (fieldsToFetch != null) {
+          hit.setStoredFields(reader.getStoredFields(fdoc.doc, fieldsToFetch));
+        } else {
+          hit.setStoredFields(reader.document(fdoc.doc));
+        }
       }
       if (termVectorsToFetch != null && termVectorsToFetch.size() > 0) {
         Map<String, List<BoboTerm>> tvMap = new HashMap<>();
@@ -466,12 +856,13 @@ public class SortCollectorImpl extends SortCollector {
       }
       Map<String, String[]> map = new HashMap<>();
       Map<String, Object[]> rawMap = new HashMap<>();
-      for (FacetHandler<?> facetHandler : facetHandlers) {
+      for (FacetHandler<?> facetHandler : runtimeFacetHandlers) {
         map.put(facetHandler.getName(), facetHandler.getFieldValues(reader, fdoc.doc));
         rawMap.put(facetHandler.getName(), facetHandler.getRawFieldValues(reader, fdoc.doc));
       }
       hit.setFieldValues(map);
       hit.setRawFieldValues(rawMap);
+      hit.setLazyFieldValues(reader, fdoc.doc, lazyFacetHandlers);
       hit.setDocid(fdoc.doc + fdoc.queue.base);
       hit.setScore(fdoc.score);
       hit.setComparable(fdoc.getValue());
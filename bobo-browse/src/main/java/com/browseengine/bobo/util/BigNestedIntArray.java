@@ -3,6 +3,9 @@
  */
 package com.browseengine.bobo.util;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -309,6 +312,54 @@ public final class BigNestedIntArray {
 		return _size;
 	}
 
+	/**
+	 * writes the loaded pages so that they can be restored by {@link #read(IntBuffer)}
+	 *
+	 * @param out .
+	 * @throws IOException io.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(_size);
+		if (_list == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(_list.length);
+		for (int[] page : _list) {
+			if (page == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(page.length);
+				for (int val : page) {
+					out.writeInt(val);
+				}
+			}
+		}
+	}
+
+	/**
+	 * restores pages written by {@link #write(DataOutput)}, instead of loading
+	 *
+	 * @param in positioned at the start of the written pages, advanced past them.
+	 */
+	public void read(IntBuffer in) {
+		_size = in.get();
+		int numPages = in.get();
+		if (numPages < 0) {
+			_list = null;
+			return;
+		}
+		int[][] list = new int[numPages][];
+		for (int i = 0; i < numPages; i++) {
+			int len = in.get();
+			if (len >= 0) {
+				list[i] = new int[len];
+				in.get(list[i]);
+			}
+		}
+		_list = list;
+	}
+
 	/**
 	 * gets an int data at [id][idx]
 	 *
@@ -0,0 +1,163 @@
+package com.browseengine.bobo.util;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * BigSegmentedArray over a {@link ShortBuffer}, a slice of a memory mapped file or direct memory
+ * from {@link #allocate(int)}, so that the values do not live on the Java heap. The size is fixed
+ * by the buffer, and the array is read-only if the buffer is. Memory owned by the array is
+ * released by {@link #close()}, the array then throws {@link AlreadyClosedException} when used.
+ */
+public final class DirectBigShortArray extends BigSegmentedArray implements Closeable {
+
+  /* Remember that 2^SHIFT_SIZE = BLOCK_SIZE */
+  final private static int BLOCK_SIZE = 2048;
+  final private static int SHIFT_SIZE = 11;
+
+  private ShortBuffer _buffer;
+  private ByteBuffer _owner;
+
+  /**
+   * @param buffer backing buffer, must hold at least {@link #capacity()} values.
+   * @param size number of values.
+   */
+  public DirectBigShortArray(ShortBuffer buffer, int size) {
+    this(buffer, size, null);
+  }
+
+  /**
+   * @param buffer backing buffer, must hold at least {@link #capacity()} values.
+   * @param size number of values.
+   * @param owner buffer <code>buffer</code> is a view of, freed by {@link #close()}, may be null.
+   */
+  public DirectBigShortArray(ShortBuffer buffer, int size, ByteBuffer owner) {
+    super(size);
+    if (buffer.capacity() < capacity()) {
+      throw new IllegalArgumentException("buffer too small: " + buffer.capacity() + " < "
+          + capacity());
+    }
+    _buffer = buffer;
+    _owner = owner;
+  }
+
+  /**
+   * Allocates a zero filled array in direct memory.
+   *
+   * @param size number of values.
+   * @return array owning its memory.
+   */
+  public static DirectBigShortArray allocate(int size) {
+    int capacity = ((size >> SHIFT_SIZE) + 1) << SHIFT_SIZE;
+    ByteBuffer owner = ByteBuffer.allocateDirect(capacity * 2).order(ByteOrder.nativeOrder());
+    return new DirectBigShortArray(owner.asShortBuffer(), size, owner);
+  }
+
+  @Override
+  public final void add(int docId, int val) {
+    buffer().put(docId, (short) val);
+  }
+
+  @Override
+  public final int get(int docId) {
+    return buffer().get(docId);
+  }
+
+  @Override
+  public final int findValue(int val, int docId, int maxId) {
+    final ShortBuffer buffer = buffer();
+    while (true) {
+      if (buffer.get(docId) == val) return docId;
+      if (docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findValues(OpenBitSet bitset, int docId, int maxId) {
+    final ShortBuffer buffer = buffer();
+    while (true) {
+      if (bitset.fastGet(buffer.get(docId))) return docId;
+      if (docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findValueRange(int minVal, int maxVal, int docId, int maxId) {
+    final ShortBuffer buffer = buffer();
+    while (true) {
+      int val = buffer.get(docId);
+      if (val >= minVal && val <= maxVal) return docId;
+      if (docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final int findBits(int bits, int docId, int maxId) {
+    final ShortBuffer buffer = buffer();
+    while (true) {
+      if ((buffer.get(docId) & bits) != 0) return docId;
+      if (docId++ >= maxId) break;
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  @Override
+  public final void fill(int val) {
+    final ShortBuffer buffer = buffer();
+    short shortVal = (short) val;
+    int capacity = capacity();
+    for (int i = 0; i < capacity; ++i) {
+      buffer.put(i, shortVal);
+    }
+  }
+
+  @Override
+  public void ensureCapacity(int size) {
+    if (((size >> SHIFT_SIZE) + 1) > _numrows) {
+      throw new UnsupportedOperationException("fixed size array, cannot grow to: " + size);
+    }
+  }
+
+  @Override
+  final int getBlockSize() {
+    return BLOCK_SIZE;
+  }
+
+  @Override
+  final int getShiftSize() {
+    return SHIFT_SIZE;
+  }
+
+  @Override
+  public int maxValue() {
+    return Short.MAX_VALUE;
+  }
+
+  private ShortBuffer buffer() {
+    ShortBuffer buffer = _buffer;
+    if (buffer == null) {
+      throw new AlreadyClosedException("this array is closed, its memory is released");
+    }
+    return buffer;
+  }
+
+  /**
+   * Releases the memory owned by this array, does nothing if already closed.
+   */
+  @Override
+  public synchronized void close() {
+    ByteBuffer owner = _owner;
+    _owner = null;
+    _buffer = null;
+    DirectBufferUtil.free(owner);
+  }
+}
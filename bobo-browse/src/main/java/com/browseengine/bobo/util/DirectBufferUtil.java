@@ -0,0 +1,59 @@
+package com.browseengine.bobo.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Releases direct and mapped buffers right away instead of waiting for the garbage collector to
+ * find them, which may take long as the buffers themselves barely take heap.
+ */
+public final class DirectBufferUtil {
+  private static final Logger logger = LoggerFactory.getLogger(DirectBufferUtil.class);
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (Exception e) {
+      logger.info("direct buffers cannot be freed explicitly, left to the garbage collector: "
+          + e);
+      unsafe = null;
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private DirectBufferUtil() {
+  }
+
+  /**
+   * Frees a direct or mapped buffer, the buffer and all views of it must not be accessed
+   * anymore. Heap buffers are left alone.
+   *
+   * @param buffer buffer returned by {@link ByteBuffer#allocateDirect(int)} or a file mapping,
+   *          not a slice or duplicate of it.
+   */
+  public static void free(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+      return;
+    }
+    try {
+      INVOKE_CLEANER.invoke(UNSAFE, buffer);
+    } catch (Exception e) {
+      logger.warn("unable to free direct buffer", e);
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package com.browseengine.bobo.util;
+
+import java.util.Arrays;
+
+/**
+ * Grid over the unit cube of the x, y, z coordinates of {@link GeoMatchUtil}, with the doc ids of
+ * a segment sorted by cell. A search box, as the bounding box of a geo range, then only reads the
+ * docs of the cells it overlaps instead of all docs of the segment.
+ * <p>
+ * Only the non-empty cells are kept, as sorted cell ids with the offsets of their docs, so the
+ * memory of a grid depends on the docs of the segment and not on the number of cells.
+ */
+public final class GeoGrid {
+  /**
+   * Maximum number of cells along each axis.
+   */
+  public static final int MAX_CELLS_PER_AXIS = 256;
+
+  // candidates are not collected when the cells of a box hold more than 1 / 8 of the docs,
+  // reading the coordinates of all docs in order is then about as fast
+  private static final int MAX_CANDIDATES_SHIFT = 3;
+
+  private final int _cellsPerAxis;
+  // ids of the non-empty cells, ascending
+  private final int[] _cellIds;
+  // offset of the docs of each non-empty cell in _docs, followed by the number of docs
+  private final int[] _cellStarts;
+  private final int[] _docs;
+
+  private GeoGrid(int cellsPerAxis, int[] cellIds, int[] cellStarts, int[] docs) {
+    _cellsPerAxis = cellsPerAxis;
+    _cellIds = cellIds;
+    _cellStarts = cellStarts;
+    _docs = docs;
+  }
+
+  /**
+   * Builds the grid of the coordinates of a segment.
+   *
+   * @param xvals x coordinates by doc id.
+   * @param yvals y coordinates by doc id.
+   * @param zvals z coordinates by doc id.
+   * @param maxDoc segment max doc.
+   * @param cellsPerAxis number of cells along each axis, at most {@link #MAX_CELLS_PER_AXIS}.
+   * @return grid.
+   */
+  public static GeoGrid build(BigFloatArray xvals, BigFloatArray yvals, BigFloatArray zvals,
+      int maxDoc, int cellsPerAxis) {
+    if (cellsPerAxis <= 0 || cellsPerAxis > MAX_CELLS_PER_AXIS) {
+      throw new IllegalArgumentException("cellsPerAxis must be in [1, " + MAX_CELLS_PER_AXIS
+          + "]: " + cellsPerAxis);
+    }
+    // cell in the high bits, so that docs are sorted by cell and stay ascending within a cell
+    long[] entries = new long[maxDoc];
+    for (int doc = 0; doc < maxDoc; ++doc) {
+      long cell = cell(cellsPerAxis, axisCell(cellsPerAxis, xvals.get(doc)),
+        axisCell(cellsPerAxis, yvals.get(doc)), axisCell(cellsPerAxis, zvals.get(doc)));
+      entries[doc] = (cell << 32) | doc;
+    }
+    Arrays.sort(entries);
+    int[] docs = new int[maxDoc];
+    int[] cellIds = new int[maxDoc];
+    int[] cellStarts = new int[maxDoc + 1];
+    int numCells = 0;
+    for (int i = 0; i < maxDoc; ++i) {
+      int cell = (int) (entries[i] >>> 32);
+      if (numCells == 0 || cellIds[numCells - 1] != cell) {
+        cellIds[numCells] = cell;
+        cellStarts[numCells++] = i;
+      }
+      docs[i] = (int) entries[i];
+    }
+    cellStarts[numCells] = maxDoc;
+    return new GeoGrid(cellsPerAxis, Arrays.copyOf(cellIds, numCells), Arrays.copyOf(cellStarts,
+      numCells + 1), docs);
+  }
+
+  /**
+   * Gets the docs of the cells overlapping a box, a superset of the docs inside the box.
+   *
+   * @return doc ids, ascending, or null if the cells hold too many docs for the candidates to be
+   *         cheaper than checking all docs.
+   */
+  public int[] getCandidates(float xl, float xu, float yl, float yu, float zl, float zu) {
+    int x0 = axisCell(_cellsPerAxis, xl);
+    int x1 = axisCell(_cellsPerAxis, xu);
+    int y0 = axisCell(_cellsPerAxis, yl);
+    int y1 = axisCell(_cellsPerAxis, yu);
+    int z0 = axisCell(_cellsPerAxis, zl);
+    int z1 = axisCell(_cellsPerAxis, zu);
+    // the cells of an x, y column along z have consecutive ids, so they are one range of _cellIds
+    int total = 0;
+    int numRuns = 0;
+    for (int x = x0; x <= x1; ++x) {
+      for (int y = y0; y <= y1; ++y) {
+        int cell = cell(_cellsPerAxis, x, y, z0);
+        int from = lowerBound(cell);
+        int to = lowerBound(cell + z1 - z0 + 1);
+        total += _cellStarts[to] - _cellStarts[from];
+        numRuns += to - from;
+      }
+    }
+    if (total > _docs.length >>> MAX_CANDIDATES_SHIFT) {
+      return null;
+    }
+    // the docs of each cell are a sorted run
+    int[] runPositions = new int[numRuns];
+    int[] runEnds = new int[numRuns];
+    int n = 0;
+    for (int x = x0; x <= x1; ++x) {
+      for (int y = y0; y <= y1; ++y) {
+        int cell = cell(_cellsPerAxis, x, y, z0);
+        int to = lowerBound(cell + z1 - z0 + 1);
+        for (int i = lowerBound(cell); i < to; ++i) {
+          runPositions[n] = _cellStarts[i];
+          runEnds[n++] = _cellStarts[i + 1];
+        }
+      }
+    }
+    return mergeRuns(runPositions, runEnds, total);
+  }
+
+  /**
+   * @return number of cells along each axis.
+   */
+  public int getCellsPerAxis() {
+    return _cellsPerAxis;
+  }
+
+  /**
+   * Merges sorted runs of docs with a heap of the runs by their next doc.
+   */
+  private int[] mergeRuns(int[] runPositions, int[] runEnds, int total) {
+    int[] candidates = new int[total];
+    int size = runPositions.length;
+    if (size == 1) {
+      System.arraycopy(_docs, runPositions[0], candidates, 0, total);
+      return candidates;
+    }
+    int[] heap = new int[size];
+    for (int i = 0; i < size; ++i) {
+      heap[i] = i;
+    }
+    for (int i = (size >> 1) - 1; i >= 0; --i) {
+      downRuns(heap, size, i, runPositions);
+    }
+    for (int n = 0; n < total; ++n) {
+      int run = heap[0];
+      candidates[n] = _docs[runPositions[run]++];
+      if (runPositions[run] == runEnds[run]) {
+        heap[0] = heap[--size];
+      }
+      if (size > 0) {
+        downRuns(heap, size, 0, runPositions);
+      }
+    }
+    return candidates;
+  }
+
+  private void downRuns(int[] heap, int size, int i, int[] runPositions) {
+    int run = heap[i];
+    int doc = _docs[runPositions[run]];
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size
+          && _docs[runPositions[heap[child + 1]]] < _docs[runPositions[heap[child]]]) {
+        child++;
+      }
+      if (_docs[runPositions[heap[child]]] >= doc) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = run;
+  }
+
+  /**
+   * @return index of the first non-empty cell with an id not less than the given one.
+   */
+  private int lowerBound(int cell) {
+    int pos = Arrays.binarySearch(_cellIds, cell);
+    return pos < 0 ? -pos - 1 : pos;
+  }
+
+  private static int cell(int cellsPerAxis, int x, int y, int z) {
+    return (x * cellsPerAxis + y) * cellsPerAxis + z;
+  }
+
+  private static int axisCell(int cellsPerAxis, float value) {
+    // NaN casts to 0
+    int cell = (int) ((value + 1.0f) * 0.5f * cellsPerAxis);
+    if (cell < 0) {
+      return 0;
+    }
+    return cell >= cellsPerAxis ? cellsPerAxis - 1 : cell;
+  }
+}
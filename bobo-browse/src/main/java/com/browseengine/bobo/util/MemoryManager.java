@@ -93,6 +93,8 @@ public class MemoryManager<T> implements MemoryManagerAdminMBean {
    * @return an initialized instance of type T. The size of the instance may not be the same as the requested size.
    */
   public T get(int reqsize) {
+    // instances are not pooled, every request allocates
+    _miss.incrementAndGet();
     return _initializer.newInstance(reqsize);
     // long t0 = System.currentTimeMillis();
     // int size = reqsize;
@@ -0,0 +1,222 @@
+package com.browseengine.bobo.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.GlobalOrdinalMap;
+import com.browseengine.bobo.facets.data.PredefinedTermListFactory;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+public class BoboMultiReaderTest {
+  private static final String BLUE = "blue";
+  private static final String RED = "red";
+
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testOpenIfChangedReusesFacetData() throws Exception {
+    String color = "color";
+
+    Document doc1 = new Document();
+    doc1.add(new StringField(color, RED, Store.YES));
+    m_indexWriter.addDocument(doc1);
+    m_indexWriter.commit();
+
+    SimpleFacetHandler colorHandler = new SimpleFacetHandler(color);
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] { colorHandler });
+
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter, true);
+    BoboMultiReader boboMultiReader = BoboMultiReader.getInstance(reader, handlerList);
+    assertNull(BoboMultiReader.openIfChanged(boboMultiReader));
+
+    Document doc2 = new Document();
+    doc2.add(new StringField(color, BLUE, Store.YES));
+    m_indexWriter.addDocument(doc2);
+    m_indexWriter.commit();
+
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader, m_indexWriter, true);
+    BoboMultiReader reopened = BoboMultiReader.openIfChanged(boboMultiReader, newReader);
+
+    List<BoboSegmentReader> oldSegments = boboMultiReader.getSubReaders();
+    List<BoboSegmentReader> newSegments = reopened.getSubReaders();
+    assertEquals(1, oldSegments.size());
+    assertEquals(2, newSegments.size());
+    assertSame(oldSegments.get(0).getFacetData(color), newSegments.get(0).getFacetData(color));
+    assertNotNull(newSegments.get(1).getFacetData(color));
+
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    br.setOffset(0);
+    BrowseSelection blue = new BrowseSelection(color);
+    blue.addValue(BLUE);
+    br.addSelection(blue);
+
+    BoboBrowser browser = new BoboBrowser(reopened);
+    BrowseResult result = browser.browse(br);
+    assertEquals("should be 1 hit", 1, result.getNumHits());
+    assertEquals("should be doc 1", 1, result.getHits()[0].getDocid());
+    result.close();
+    reader.close();
+    newReader.close();
+  }
+
+  @Test
+  public void testTopFacetsAcrossSegments() throws Exception {
+    for (int seg = 0; seg < 3; ++seg) {
+      for (int i = 0; i < 50; ++i) {
+        Document doc = new Document();
+        doc.add(new StringField("color", "c" + ((i * 7 + seg) % (13 + seg * 5)), Store.NO));
+        doc.add(new StringField("tag", "t" + (i % (seg + 4)), Store.NO));
+        doc.add(new StringField("tag", "t" + (i % 9 + 10), Store.NO));
+        m_indexWriter.addDocument(doc);
+      }
+      m_indexWriter.commit();
+    }
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new MultiValueFacetHandler("tag") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    assertEquals(3, boboReader.getSubReaders().size());
+
+    // the bounded top facets must be the head of all facets by hits
+    for (String name : new String[] { "color", "tag" }) {
+      for (int minHits : new int[] { 1, 12 }) {
+        List<BrowseFacet> all = browseTopFacets(boboReader, name, 0, minHits);
+        for (int max : new int[] { 1, 5, 17, 100 }) {
+          List<BrowseFacet> top = browseTopFacets(boboReader, name, max, minHits);
+          assertEquals(all.subList(0, Math.min(max, all.size())).toString(), top.toString());
+        }
+      }
+    }
+    reader.close();
+  }
+
+  @Test
+  public void testGlobalOrdinalMap() throws Exception {
+    for (int seg = 0; seg < 3; ++seg) {
+      for (int i = 0; i < 20; ++i) {
+        Document doc = new Document();
+        doc.add(new StringField("color", "c" + ((i * 3 + seg) % (7 + seg * 2)), Store.NO));
+        doc.add(new StringField("size", String.format("%03d", i * seg), Store.NO));
+        m_indexWriter.addDocument(doc);
+      }
+      m_indexWriter.commit();
+    }
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new SimpleFacetHandler("size",
+            new PredefinedTermListFactory<>(Integer.class, "000")) });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    // top facets are only merged on string dictionaries
+    assertNull(boboReader.getGlobalOrdinalMap("size"));
+    // concurrent first calls share one build
+    final BoboMultiReader sharedReader = boboReader;
+    final GlobalOrdinalMap[] maps = new GlobalOrdinalMap[4];
+    Thread[] threads = new Thread[maps.length];
+    for (int i = 0; i < threads.length; ++i) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          maps[index] = sharedReader.getGlobalOrdinalMap("color");
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    GlobalOrdinalMap map = boboReader.getGlobalOrdinalMap("color");
+    assertNotNull(map);
+    for (GlobalOrdinalMap other : maps) {
+      assertSame(map, other);
+    }
+    assertGlobalOrdinals(boboReader, map);
+    String facets = browseTopFacets(boboReader, "color", 5, 1).toString();
+
+    // a reopen adding a segment extends the map of the previous generation
+    for (int i = 0; i < 20; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", (i % 2 == 0 ? "b" : "d") + i, Store.NO));
+      m_indexWriter.addDocument(doc);
+    }
+    m_indexWriter.commit();
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    BoboMultiReader reopened = BoboMultiReader.openIfChanged(boboReader, newReader);
+    assertEquals(4, reopened.getSubReaders().size());
+    GlobalOrdinalMap extended = reopened.getGlobalOrdinalMap("color");
+    assertNotNull(extended);
+    assertTrue(extended != map);
+    assertEquals(map.size() + 20, extended.size());
+    assertGlobalOrdinals(reopened, extended);
+    assertEquals(facets, browseTopFacets(boboReader, "color", 5, 1).toString());
+    newReader.close();
+    reader.close();
+  }
+
+  private static void assertGlobalOrdinals(BoboMultiReader reader, GlobalOrdinalMap map) {
+    for (int i = 2; i < map.size(); ++i) {
+      assertTrue(map.getValue(i - 1).compareTo(map.getValue(i)) < 0);
+    }
+    for (BoboSegmentReader segment : reader.getSubReaders()) {
+      FacetDataCache<?> cache = (FacetDataCache<?>) segment.getFacetData("color");
+      int[] ords = map.getSegmentOrdinals(cache);
+      assertNotNull(ords);
+      for (int i = 1; i < ords.length; ++i) {
+        assertEquals(cache.valArray.get(i), map.getValue(ords[i]));
+      }
+    }
+  }
+
+  private static List<BrowseFacet> browseTopFacets(BoboMultiReader reader, String name, int max,
+      int minHits) throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(0);
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSpec.FacetSortSpec.OrderHitsDesc);
+    spec.setMaxCount(max);
+    spec.setMinHitCount(minHits);
+    br.setFacetSpec(name, spec);
+    BoboBrowser browser = new BoboBrowser(reader);
+    BrowseResult result = browser.browse(br);
+    List<BrowseFacet> facets = new ArrayList<>(result.getFacetAccessor(name).getFacets());
+    result.close();
+    return facets;
+  }
+}
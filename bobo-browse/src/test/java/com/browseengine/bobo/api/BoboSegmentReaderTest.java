@@ -0,0 +1,132 @@
+package com.browseengine.bobo.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.search.section.IntMetaDataQuery;
+import com.browseengine.bobo.search.section.SectionSearchQuery;
+
+public class BoboSegmentReaderTest {
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testMetaDataCache() throws Exception {
+    Random random = new Random(3);
+    for (int i = 0; i < 400; ++i) {
+      byte[] payload = new byte[4 * (1 + random.nextInt(3))];
+      for (int j = 0; j < payload.length; j += 4) {
+        payload[j] = (byte) random.nextInt(10);
+      }
+      Document doc = new Document();
+      doc.add(new TextField("meta", new PayloadTokenStream("sec", payload)));
+      m_indexWriter.addDocument(doc);
+      if (i == 150) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader,
+      new ArrayList<FacetHandler<?>>());
+    Term term = new Term("meta", "sec");
+    boboReader.loadMetaDataCaches(term);
+    for (BoboSegmentReader segment : boboReader.getSubReaders()) {
+      assertTrue(segment.getMetaDataCacheSize() > 0);
+      assertSame(segment.get(term), segment.get(term));
+    }
+    IndexSearcher plainSearcher = new IndexSearcher(reader);
+    IndexSearcher boboSearcher = new IndexSearcher(boboReader);
+    for (IntMetaDataQuery.Validator validator : new IntMetaDataQuery.Validator[] {
+        new IntMetaDataQuery.SimpleValueValidator(7),
+        new IntMetaDataQuery.SimpleRangeValidator(2, 4) }) {
+      Query query = new SectionSearchQuery(new IntMetaDataQuery(term, validator));
+      TopDocs expected = plainSearcher.search(query, 1000);
+      TopDocs actual = boboSearcher.search(query, 1000);
+      assertTrue(expected.totalHits > 0);
+      assertEquals(expected.totalHits, actual.totalHits);
+      for (int i = 0; i < expected.scoreDocs.length; ++i) {
+        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      }
+    }
+
+    // nothing is cached over budget
+    BoboMultiReader budgetReader = BoboMultiReader.getInstance(reader,
+      new ArrayList<FacetHandler<?>>());
+    budgetReader.setMetaDataCacheBudget(0);
+    budgetReader.loadMetaDataCaches(term);
+    for (BoboSegmentReader segment : budgetReader.getSubReaders()) {
+      assertNull(segment.get(term));
+      assertEquals(0, segment.getMetaDataCacheSize());
+    }
+    reader.close();
+  }
+
+  private static final class PayloadTokenStream extends TokenStream {
+    private final CharTermAttribute _termAtt = addAttribute(CharTermAttribute.class);
+    private final PayloadAttribute _payloadAtt = addAttribute(PayloadAttribute.class);
+    private final String _term;
+    private final byte[] _payload;
+    private boolean _done = false;
+
+    PayloadTokenStream(String term, byte[] payload) {
+      _term = term;
+      _payload = payload;
+    }
+
+    @Override
+    public boolean incrementToken() {
+      if (_done) {
+        return false;
+      }
+      clearAttributes();
+      _termAtt.append(_term);
+      _payloadAtt.setPayload(new BytesRef(_payload));
+      _done = true;
+      return true;
+    }
+
+    @Override
+    public void reset() {
+      _done = false;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.browseengine.bobo.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.management.ObjectName;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+import com.browseengine.bobo.jmx.BrowseStatsAggregator;
+import com.browseengine.bobo.jmx.JMXUtil;
+
+public class BrowseStatsTest {
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testBrowseStats() throws Exception {
+    for (int i = 0; i < 900; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", "c" + (i % 7), Store.NO));
+      doc.add(new StringField("tag", "t" + (i % 5), Store.NO));
+      doc.add(new StringField("type", i % 3 == 0 ? "rare" : "common", Store.NO));
+      m_indexWriter.addDocument(doc);
+      if (i == 300) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new SimpleFacetHandler("tag") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    BrowseStatsAggregator aggregator = BrowseStatsAggregator.getInstance();
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+      new ObjectName(JMXUtil.JMX_DOMAIN, "name", "BrowseStats")));
+    long numBrowses = aggregator.getNumBrowses();
+
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    br.setQuery(new QueryParser(Version.LUCENE_43, "type", new StandardAnalyzer(
+        Version.LUCENE_43)).parse("type:common"));
+    BrowseSelection sel = new BrowseSelection("tag");
+    sel.addValue("t1");
+    br.addSelection(sel);
+    FacetSpec expandSpec = new FacetSpec();
+    expandSpec.setExpandSelection(true);
+    br.setFacetSpec("tag", expandSpec);
+    br.setFacetSpec("color", new FacetSpec());
+
+    BrowseResult result = new BoboBrowser(boboReader).browse(br);
+    assertNull(result.getStats());
+    result.close();
+
+    br.setCollectStats(true);
+    result = new BoboBrowser(boboReader).browse(br);
+    BrowseStats stats = result.getStats();
+    assertNotNull(stats);
+    // every common doc is validated, those of other tags miss the tag post filter
+    assertEquals(600, stats.getDocsValidated());
+    assertEquals(result.getNumHits(), stats.getDocsScored());
+    assertEquals(600 - result.getNumHits(), stats.getPostFilterMisses());
+    assertEquals(boboReader.getSubReaders().size(), stats.getSegmentSearchTimes().length);
+    assertEquals(new TreeSet<>(Arrays.asList("color", "tag")), stats.getFacetTimes().keySet());
+    assertTrue(stats.getCountBytes() > 0);
+    assertTrue(stats.getTotalTime() > 0);
+    assertTrue(stats.getSearchTime() > 0);
+    assertTrue(stats.getTotalTime() >= stats.getHitsTime());
+    result.close();
+
+    assertEquals(numBrowses + 1, aggregator.getNumBrowses());
+    assertNotNull(aggregator.getFacetTimeHistogram("tag"));
+    assertTrue(aggregator.getTimePercentile("total", 100) > 0);
+    reader.close();
+  }
+}
@@ -0,0 +1,101 @@
+package com.browseengine.bobo.facets.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+import com.browseengine.bobo.util.DirectBigByteArray;
+
+public class FacetDataCacheTest {
+  private static final String BLUE = "blue";
+  private static final String RED = "red";
+
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testOffHeapFacetData() throws Exception {
+    String color = "color";
+    for (String value : new String[] { RED, BLUE, RED }) {
+      Document doc = new Document();
+      doc.add(new StringField(color, value, Store.YES));
+      m_indexWriter.addDocument(doc);
+    }
+    m_indexWriter.commit();
+
+    SimpleFacetHandler colorHandler = new SimpleFacetHandler(color);
+    colorHandler.setOffHeap(true);
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] { colorHandler });
+
+    // not a near real time reader, the writer would keep the segment core open
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboMultiReader = BoboMultiReader.getInstance(reader, handlerList);
+    FacetDataCache<?> data = (FacetDataCache<?>) boboMultiReader.getSubReaders().get(0)
+        .getFacetData(color);
+    assertTrue(data.orderArray instanceof DirectBigByteArray);
+    assertEquals("[red(2), blue(1)]", browseFacets(boboMultiReader, color));
+
+    // the direct memory is released with the segment
+    reader.close();
+    try {
+      data.orderArray.get(0);
+      fail("facet data must be released when the segment is closed");
+    } catch (AlreadyClosedException e) {
+      // expected
+    }
+  }
+
+  private static String browseFacets(BoboMultiReader reader, String... names) throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSpec.FacetSortSpec.OrderHitsDesc);
+    StringBuilder buf = new StringBuilder();
+    for (String name : names) {
+      br.setFacetSpec(name, spec);
+    }
+    BoboBrowser browser = new BoboBrowser(reader);
+    BrowseResult result = browser.browse(br);
+    for (String name : names) {
+      buf.append(result.getFacetAccessor(name).getFacets());
+    }
+    result.close();
+    return buf.toString();
+  }
+}
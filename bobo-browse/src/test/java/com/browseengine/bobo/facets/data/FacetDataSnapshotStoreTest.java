@@ -0,0 +1,159 @@
+package com.browseengine.bobo.facets.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+import com.browseengine.bobo.util.BigByteArray;
+import com.browseengine.bobo.util.DirectBigByteArray;
+
+public class FacetDataSnapshotStoreTest {
+  private static final String BLUE = "blue";
+  private static final String RED = "red";
+
+  private IndexWriter m_indexWriter;
+
+  @Rule
+  public TemporaryFolder m_tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testFacetDataSnapshot() throws Exception {
+    String color = "color";
+    String tag = "tag";
+
+    for (String[] values : new String[][] { { RED, "a", "b" }, { BLUE, "b" }, { RED, "c" } }) {
+      Document doc = new Document();
+      doc.add(new StringField("id", values[0] + values.length, Store.YES));
+      doc.add(new StringField(color, values[0], Store.YES));
+      for (int i = 1; i < values.length; i++) {
+        doc.add(new StringField(tag, values[i], Store.YES));
+      }
+      m_indexWriter.addDocument(doc);
+    }
+    m_indexWriter.commit();
+
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler(color), new MultiValueFacetHandler(tag) });
+    File dir = m_tempFolder.newFolder("snapshots");
+    FacetDataSnapshotStore store = new FacetDataSnapshotStore(dir);
+
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter, true);
+    BoboMultiReader loaded = BoboMultiReader.getInstance(reader, handlerList, null, store);
+    assertEquals(2, dir.list().length);
+    FacetDataCache<?> loadedData = (FacetDataCache<?>) loaded.getSubReaders().get(0)
+        .getFacetData(color);
+    assertTrue(loadedData.orderArray instanceof BigByteArray);
+
+    BoboMultiReader mapped = BoboMultiReader.getInstance(reader, handlerList, null, store);
+    FacetDataCache<?> mappedData = (FacetDataCache<?>) mapped.getSubReaders().get(0)
+        .getFacetData(color);
+    assertTrue(mappedData.orderArray instanceof DirectBigByteArray);
+    assertEquals(browseFacets(loaded, color, tag), browseFacets(mapped, color, tag));
+    assertEquals("[red(2), blue(1)][b(2), a(1), c(1)]", browseFacets(mapped, color, tag));
+
+    // a deletion makes the snapshot stale, it is reloaded and written again
+    m_indexWriter.deleteDocuments(new Term("id", BLUE + 2));
+    m_indexWriter.commit();
+    DirectoryReader newReader = DirectoryReader.open(m_indexWriter, true);
+    BoboMultiReader reloaded = BoboMultiReader.getInstance(newReader, handlerList, null, store);
+    FacetDataCache<?> reloadedData = (FacetDataCache<?>) reloaded.getSubReaders().get(0)
+        .getFacetData(color);
+    assertTrue(reloadedData.orderArray instanceof BigByteArray);
+    assertEquals("[red(2)][a(1), b(1), c(1)]", browseFacets(reloaded, color, tag));
+    assertEquals(0, store.removeStaleSnapshots(newReader));
+    assertEquals(2, dir.list().length);
+
+    reader.close();
+    newReader.close();
+  }
+
+  @Test
+  public void testFacetDataSnapshotOfRebuiltIndex() throws Exception {
+    String color = "color";
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler(color) });
+    FacetDataSnapshotStore store = new FacetDataSnapshotStore(m_tempFolder.newFolder("snapshots"));
+
+    // both indexes have a single segment _0 with the same doc and term counts
+    String[][] indexes = new String[][] { { RED, BLUE, RED }, { BLUE, RED, BLUE } };
+    String[] expected = new String[] { "[red(2), blue(1)]", "[blue(2), red(1)]" };
+    for (int i = 0; i < indexes.length; ++i) {
+      IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+          Version.LUCENE_43));
+      IndexWriter writer = new IndexWriter(new RAMDirectory(), config);
+      for (String value : indexes[i]) {
+        Document doc = new Document();
+        doc.add(new StringField(color, value, Store.YES));
+        writer.addDocument(doc);
+      }
+      writer.commit();
+      DirectoryReader reader = DirectoryReader.open(writer.getDirectory());
+      BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList, null, store);
+      FacetDataCache<?> data = (FacetDataCache<?>) boboReader.getSubReaders().get(0)
+          .getFacetData(color);
+      // the snapshot of the first index is not mapped for the second one
+      assertTrue(data.orderArray instanceof BigByteArray);
+      assertEquals(expected[i], browseFacets(boboReader, color));
+      reader.close();
+      writer.close();
+    }
+  }
+
+  private static String browseFacets(BoboMultiReader reader, String... names) throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSpec.FacetSortSpec.OrderHitsDesc);
+    StringBuilder buf = new StringBuilder();
+    for (String name : names) {
+      br.setFacetSpec(name, spec);
+    }
+    BoboBrowser browser = new BoboBrowser(reader);
+    BrowseResult result = browser.browse(br);
+    for (String name : names) {
+      buf.append(result.getFacetAccessor(name).getFacets());
+    }
+    result.close();
+    return buf.toString();
+  }
+}
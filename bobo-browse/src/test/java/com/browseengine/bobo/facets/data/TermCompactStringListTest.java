@@ -0,0 +1,176 @@
+package com.browseengine.bobo.facets.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetAccessible;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler.SimpleFacetCountCollector;
+import com.browseengine.bobo.facets.impl.TopFacetMerger;
+
+public class TermCompactStringListTest extends TestCase {
+
+  @Test
+  public void testSameValuesAsTermStringList() {
+    Random random = new Random(11);
+    TreeSet<String> set = new TreeSet<>();
+    while (set.size() < 500) {
+      StringBuilder buf = new StringBuilder("sku-");
+      for (int i = random.nextInt(12); i >= 0; --i) {
+        buf.append((char) ('a' + random.nextInt(4)));
+      }
+      if (random.nextInt(10) == 0) {
+        buf.append("\u00e9\u4e2d");
+      }
+      set.add(buf.toString());
+    }
+    TermStringList strings = new TermStringList();
+    TermCompactStringList compact = new TermCompactStringList();
+    strings.add(null);
+    compact.add(null);
+    strings.add("");
+    compact.add("");
+    for (String value : set) {
+      strings.add(value);
+      compact.add(value);
+    }
+    compact.seal();
+    assertEquals(strings.size(), compact.size());
+    for (int i = 0; i < strings.size(); ++i) {
+      assertEquals(strings.get(i), compact.get(i));
+      assertEquals(strings.indexOf(strings.get(i)), compact.indexOf(strings.get(i)));
+    }
+    for (String probe : new String[] { "a", "sku-", "sku-aab", "sku-dddddddddddddd", "z" }) {
+      assertEquals(probe, strings.indexOf(probe), compact.indexOf(probe));
+    }
+  }
+
+  @Test
+  public void testValuesInAscendingOrder() {
+    TermCompactStringList compact = new TermCompactStringList();
+    compact.add("b");
+    try {
+      compact.add("a");
+      fail("values must be added in ascending order");
+    } catch (RuntimeException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSameFacetsAsTermStringList() throws Exception {
+    Random random = new Random(11);
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_43,
+        new StandardAnalyzer(Version.LUCENE_43)));
+    for (int i = 0; i < 300; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", "c" + random.nextInt(40), Store.NO));
+      doc.add(new StringField("tag", "t" + random.nextInt(60), Store.NO));
+      doc.add(new StringField("tag", "u" + random.nextInt(60), Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new MultiValueFacetHandler("tag"),
+        new SimpleFacetHandler("compactColor", "color", TermListFactory.CompactStringListFactory),
+        new MultiValueFacetHandler("compactTag", "tag",
+            TermListFactory.CompactStringListFactory) });
+    DirectoryReader reader = DirectoryReader.open(dir);
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    assertEquals(browseFacets(boboReader, "color", "tag"),
+      browseFacets(boboReader, "compactColor", "compactTag"));
+    reader.close();
+  }
+
+  @Test
+  public void testTopFacetsMergedAcrossSegments() throws Exception {
+    Random random = new Random(13);
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_43,
+        new StandardAnalyzer(Version.LUCENE_43)));
+    for (int seg = 0; seg < 3; ++seg) {
+      for (int i = 0; i < 100; ++i) {
+        Document doc = new Document();
+        doc.add(new StringField("color", "c" + random.nextInt(30 + seg * 10), Store.NO));
+        writer.addDocument(doc);
+      }
+      writer.commit();
+    }
+    writer.close();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"),
+        new SimpleFacetHandler("compactColor", "color",
+            TermListFactory.CompactStringListFactory) });
+    DirectoryReader reader = DirectoryReader.open(dir);
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    assertEquals(3, boboReader.getSubReaders().size());
+    GlobalOrdinalMap map = boboReader.getGlobalOrdinalMap("compactColor");
+    assertNotNull(map);
+    assertEquals(boboReader.getGlobalOrdinalMap("color").size(), map.size());
+
+    TopFacetMerger expected = TopFacetMerger.newInstance(collectAll(boboReader, "color"), null);
+    List<FacetAccessible> compact = collectAll(boboReader, "compactColor");
+    for (GlobalOrdinalMap globalOrdinalMap : new GlobalOrdinalMap[] { null, map }) {
+      TopFacetMerger merger = TopFacetMerger.newInstance(compact, globalOrdinalMap);
+      assertNotNull(merger);
+      for (int max : new int[] { 1, 5, 100 }) {
+        assertEquals(expected.getTopFacets(max, 1).toString(),
+          merger.getTopFacets(max, 1).toString());
+      }
+    }
+    reader.close();
+  }
+
+  private static List<FacetAccessible> collectAll(BoboMultiReader reader, String name) {
+    List<FacetAccessible> list = new ArrayList<>();
+    for (BoboSegmentReader segment : reader.getSubReaders()) {
+      SimpleFacetCountCollector collector = new SimpleFacetCountCollector(name,
+          (FacetDataCache<?>) segment.getFacetData(name), 0, null, new FacetSpec());
+      collector.collectAll();
+      list.add(collector);
+    }
+    return list;
+  }
+
+  private static String browseFacets(BoboMultiReader reader, String... names) throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSpec.FacetSortSpec.OrderHitsDesc);
+    for (String name : names) {
+      br.setFacetSpec(name, spec);
+    }
+    BrowseResult result = new BoboBrowser(reader).browse(br);
+    StringBuilder buf = new StringBuilder();
+    for (String name : names) {
+      buf.append(result.getFacetAccessor(name).getFacets());
+    }
+    result.close();
+    return buf.toString();
+  }
+}
@@ -0,0 +1,130 @@
+package com.browseengine.bobo.facets.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.docidset.RandomAccessDocIdSet;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+public class RandomAccessAndFilterTest {
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testConjunctionCosts() throws Exception {
+    int numDocs = 1000;
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", "c" + (i % 7), Store.NO));
+      doc.add(new StringField("tag", "t" + (i % 5), Store.NO));
+      doc.add(new StringField("tag", "t" + ((i + 2) % 5), Store.NO));
+      doc.add(new StringField("type", i % 50 == 0 ? "rare" : "common", Store.NO));
+      m_indexWriter.addDocument(doc);
+      if (i == 400) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new MultiValueFacetHandler("tag") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+
+    for (BoboSegmentReader segment : boboReader.getSubReaders()) {
+      RandomAccessFilter colorFilter = segment.getFacetHandler("color").buildRandomAccessFilter(
+        "c1", null);
+      RandomAccessFilter tagFilter = segment.getFacetHandler("tag").buildRandomAccessFilter("t1",
+        null);
+      RandomAccessDocIdSet colorSet = colorFilter.getRandomAccessDocIdSet(segment);
+      RandomAccessDocIdSet tagSet = tagFilter.getRandomAccessDocIdSet(segment);
+      DocIdSetIterator colorIter = colorSet.iterator();
+      long colorCost = colorIter.cost();
+      int colorCount = 0;
+      while (colorIter.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+        colorCount++;
+      }
+      assertEquals(colorCount, colorCost);
+      long tagCost = tagSet.iterator().cost();
+      assertTrue(tagCost > colorCost);
+
+      RandomAccessDocIdSet andSet = new RandomAccessAndFilter(Arrays.asList(tagFilter,
+        colorFilter)).getRandomAccessDocIdSet(segment);
+      DocIdSetIterator andIter = andSet.iterator();
+      assertEquals(colorCost, andIter.cost());
+      int doc = andIter.nextDoc();
+      for (int i = 0; i < segment.maxDoc(); ++i) {
+        boolean expected = colorSet.get(i) && tagSet.get(i);
+        assertEquals(expected, andSet.get(i));
+        if (expected) {
+          assertEquals(i, doc);
+          doc = andIter.nextDoc();
+        }
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+    }
+
+    // the query leads for rare docs, the filter for common ones
+    for (String type : new String[] { "rare", "common" }) {
+      int expected = 0;
+      for (int i = 0; i < numDocs; ++i) {
+        if ((i % 50 == 0) == "rare".equals(type) && i % 7 == 1
+            && (i % 5 == 1 || (i + 2) % 5 == 1)) {
+          expected++;
+        }
+      }
+      BrowseRequest br = new BrowseRequest();
+      br.setCount(numDocs);
+      br.setQuery(new QueryParser(Version.LUCENE_43, "type", new StandardAnalyzer(
+          Version.LUCENE_43)).parse("type:" + type));
+      BrowseSelection colorSel = new BrowseSelection("color");
+      colorSel.addValue("c1");
+      br.addSelection(colorSel);
+      BrowseSelection tagSel = new BrowseSelection("tag");
+      tagSel.addValue("t1");
+      br.addSelection(tagSel);
+      BrowseResult result = new BoboBrowser(boboReader).browse(br);
+      assertEquals(type, expected, result.getNumHits());
+      assertEquals(type, expected, result.getHits().length);
+      result.close();
+    }
+    reader.close();
+  }
+}
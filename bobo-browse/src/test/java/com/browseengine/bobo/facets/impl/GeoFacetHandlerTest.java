@@ -0,0 +1,95 @@
+package com.browseengine.bobo.facets.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.api.BrowseHit;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.GeoFacetHandler.GeoFacetData;
+import com.browseengine.bobo.util.GeoGrid;
+
+public class GeoFacetHandlerTest extends TestCase {
+
+  @Test
+  public void testGridMatchesLinearScan() throws Exception {
+    Random random = new Random(42);
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_43,
+        new StandardAnalyzer(Version.LUCENE_43)));
+    for (int i = 0; i < 800; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("latitude", String.valueOf(random.nextInt(120) - 60), Store.NO));
+      doc.add(new StringField("longitude", String.valueOf(random.nextInt(360) - 180), Store.NO));
+      writer.addDocument(doc);
+      if (i == 300) {
+        writer.commit();
+      }
+    }
+    writer.close();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("latitude"), new SimpleFacetHandler("longitude"),
+        new GeoFacetHandler("distance", "latitude", "longitude"),
+        new GeoFacetHandler("gridDistance", "latitude", "longitude", true, 16),
+        new GeoFacetHandler("fineGridDistance", "latitude", "longitude", true,
+            GeoGrid.MAX_CELLS_PER_AXIS) });
+    DirectoryReader reader = DirectoryReader.open(dir);
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    assertEquals(2, boboReader.getSubReaders().size());
+    for (String range : new String[] { "30,75:500", "-45,-170:1200", "0,0:3000", "10,10:1" }) {
+      String expected = browseGeo(boboReader, "distance", range);
+      assertEquals(expected, browseGeo(boboReader, "gridDistance", range));
+      assertEquals(expected, browseGeo(boboReader, "fineGridDistance", range));
+    }
+
+    for (BoboSegmentReader segment : boboReader.getSubReaders()) {
+      GeoGrid grid = ((GeoFacetData) segment.getFacetData("fineGridDistance")).getGrid();
+      // the whole cube holds all docs, they are checked in order instead
+      assertNull(grid.getCandidates(-1, 1, -1, 1, -1, 1));
+      int[] candidates = grid.getCandidates(0.1f, 0.3f, -0.2f, 0.1f, 0.2f, 0.6f);
+      assertNotNull(candidates);
+      for (int i = 1; i < candidates.length; ++i) {
+        assertTrue(candidates[i - 1] < candidates[i]);
+      }
+    }
+    reader.close();
+  }
+
+  private static String browseGeo(BoboMultiReader reader, String name, String range)
+      throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(1000);
+    BrowseSelection sel = new BrowseSelection(name);
+    sel.addValue(range);
+    br.addSelection(sel);
+    br.setFacetSpec(name, new FacetSpec());
+    BrowseResult result = new BoboBrowser(reader).browse(br);
+    StringBuilder buf = new StringBuilder();
+    buf.append(result.getNumHits()).append(' ').append(result.getFacetAccessor(name).getFacets());
+    for (BrowseHit hit : result.getHits()) {
+      buf.append(' ').append(hit.getDocid());
+    }
+    result.close();
+    return buf.toString();
+  }
+}
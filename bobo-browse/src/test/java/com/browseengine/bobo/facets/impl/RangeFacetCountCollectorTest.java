@@ -0,0 +1,99 @@
+package com.browseengine.bobo.facets.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseFacet;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.filter.FacetRangeFilter;
+import com.browseengine.bobo.facets.range.MultiRangeFacetHandler;
+
+public class RangeFacetCountCollectorTest extends TestCase {
+
+  @Test
+  public void testRangeCounts() throws Exception {
+    int[] prices = new int[600];
+    Random random = new Random(7);
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_43,
+        new StandardAnalyzer(Version.LUCENE_43)));
+    for (int i = 0; i < prices.length; ++i) {
+      prices[i] = random.nextInt(100);
+      Document doc = new Document();
+      doc.add(new StringField("price", String.format("%03d", prices[i]), Store.NO));
+      doc.add(new StringField("size", String.format("%03d", prices[i]), Store.NO));
+      doc.add(new StringField("size", String.format("%03d", prices[i] / 2 + 100), Store.NO));
+      writer.addDocument(doc);
+      if (i == 250) {
+        writer.commit();
+      }
+    }
+    writer.close();
+    List<String> ranges = new ArrayList<>();
+    for (int i = 0; i < 100; i += 7) {
+      ranges.add(String.format("[%03d TO %03d]", i, i + 20));
+    }
+    ranges.add("[* TO 050]");
+    ranges.add("(030 TO *]");
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new RangeFacetHandler("price", ranges),
+        new MultiRangeFacetHandler("size", "size", null, null, ranges) });
+    DirectoryReader reader = DirectoryReader.open(dir);
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(0);
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSpec.FacetSortSpec.OrderValueAsc);
+    br.setFacetSpec("price", spec);
+    br.setFacetSpec("size", spec);
+    BrowseResult result = new BoboBrowser(boboReader).browse(br);
+    for (String range : ranges) {
+      String[] bounds = FacetRangeFilter.getRangeStrings(range);
+      int lower = "*".equals(bounds[0]) ? -1 : Integer.parseInt(bounds[0]);
+      int upper = "*".equals(bounds[1]) ? 1000 : Integer.parseInt(bounds[1]);
+      boolean incLower = Boolean.parseBoolean(bounds[2]);
+      int priceCount = 0;
+      int sizeCount = 0;
+      // multi value counts are per value, not per doc
+      for (int price : prices) {
+        if (inRange(price, lower, upper, incLower)) {
+          priceCount++;
+          sizeCount++;
+        }
+        if (inRange(price / 2 + 100, lower, upper, incLower)) {
+          sizeCount++;
+        }
+      }
+      assertEquals(range, priceCount, result.getFacetAccessor("price").getFacetHitsCount(range));
+      assertEquals(range, sizeCount, result.getFacetAccessor("size").getFacetHitsCount(range));
+      BrowseFacet facet = result.getFacetAccessor("price").getFacet(range);
+      assertEquals(range, priceCount, facet == null ? 0 : facet.getFacetValueHitCount());
+    }
+    result.close();
+    reader.close();
+  }
+
+  private static boolean inRange(int value, int lower, int upper, boolean incLower) {
+    return (incLower ? value >= lower : value > lower) && value <= upper;
+  }
+}
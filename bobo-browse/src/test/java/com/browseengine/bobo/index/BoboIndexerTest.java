@@ -0,0 +1,75 @@
+package com.browseengine.bobo.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+import com.browseengine.bobo.index.digest.DataDigester;
+
+public class BoboIndexerTest extends TestCase {
+  private static final String BLUE = "blue";
+  private static final String RED = "red";
+
+  @Test
+  public void testPipelinedIndexer() throws Exception {
+    DataDigester digester = new DataDigester() {
+      @Override
+      public void digest(DataHandler handler) throws IOException {
+        for (int i = 0; i < 2000; ++i) {
+          Document doc = new Document();
+          doc.add(new StringField("id", String.valueOf(i), Store.YES));
+          doc.add(new StringField("color", i % 3 == 0 ? BLUE : RED, Store.NO));
+          handler.handleDocument(doc);
+        }
+      }
+    };
+    for (int maxSegments : new int[] { 0, 2 }) {
+      RAMDirectory dir = new RAMDirectory();
+      BoboIndexer indexer = new BoboIndexer(digester, dir);
+      indexer.setNumThreads(3);
+      indexer.setBatchSize(64);
+      indexer.setQueueCapacity(2);
+      indexer.setMaxSegments(maxSegments);
+      indexer.index();
+      assertEquals(2000, indexer.getNumDocs());
+      assertEquals(32, indexer.getNumBatches());
+      assertTrue(indexer.getMaxQueueSize() <= 2);
+
+      DirectoryReader reader = DirectoryReader.open(dir);
+      assertEquals(2000, reader.numDocs());
+      if (maxSegments > 0) {
+        assertTrue(reader.leaves().size() <= maxSegments);
+      }
+      BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, Arrays
+          .asList(new FacetHandler<?>[] { new SimpleFacetHandler("color") }));
+      BrowseRequest br = new BrowseRequest();
+      br.setCount(0);
+      br.setFacetSpec("color", new FacetSpec());
+      BrowseResult result = new BoboBrowser(boboReader).browse(br);
+      assertEquals(667, result.getFacetAccessor("color").getFacet(BLUE).getFacetValueHitCount());
+      result.close();
+      TreeSet<String> ids = new TreeSet<>();
+      for (int i = 0; i < reader.maxDoc(); ++i) {
+        ids.add(reader.document(i).get("id"));
+      }
+      assertEquals(2000, ids.size());
+      reader.close();
+    }
+  }
+}
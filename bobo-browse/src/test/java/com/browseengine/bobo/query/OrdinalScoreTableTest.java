@@ -0,0 +1,126 @@
+package com.browseengine.bobo.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BoboSegmentReader;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.data.FacetDataCache;
+import com.browseengine.bobo.facets.data.PredefinedTermListFactory;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+import com.browseengine.bobo.query.scoring.BoboDocScorer;
+import com.browseengine.bobo.query.scoring.MultiplicativeFacetTermScoringFunctionFactory;
+
+public class OrdinalScoreTableTest extends TestCase {
+  private static final long NOW = 1000000000000L;
+
+  private RAMDirectory _dir;
+  private DirectoryReader _reader;
+  private BoboMultiReader _boboReader;
+
+  @Override
+  protected void setUp() throws Exception {
+    _dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(_dir, new IndexWriterConfig(Version.LUCENE_43,
+        new StandardAnalyzer(Version.LUCENE_43)));
+    String[] colors = new String[] { "red", "blue", "green" };
+    for (int i = 0; i < 30; ++i) {
+      Document doc = new Document();
+      // some docs have no value and are scored on slot 0
+      if (i % 4 != 3) {
+        doc.add(new StringField("color", colors[i % 3], Store.NO));
+      }
+      if (i % 5 != 4) {
+        doc.add(new StringField("time", String.format("%013d", NOW - i * 3600000L), Store.NO));
+      }
+      writer.addDocument(doc);
+      if (i == 14) {
+        writer.commit();
+      }
+    }
+    writer.close();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"),
+        new SimpleFacetHandler("time", new PredefinedTermListFactory<>(Long.class,
+            "0000000000000")) });
+    _reader = DirectoryReader.open(_dir);
+    _boboReader = BoboMultiReader.getInstance(_reader, handlerList);
+    assertEquals(2, _boboReader.getSubReaders().size());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    _reader.close();
+    _dir.close();
+  }
+
+  @Test
+  public void testRecencyBoostMatchesExplain() throws Exception {
+    Query query = new ScoreAdjusterQuery(new MatchAllDocsQuery(), new RecencyBoostScorerBuilder(
+        "time", 2.0f, NOW, 20L * 3600000L, TimeUnit.MILLISECONDS));
+    IndexSearcher searcher = new IndexSearcher(_boboReader);
+    ScoreDoc[] scoreDocs = searcher.search(query, 30).scoreDocs;
+    assertEquals(30, scoreDocs.length);
+    int noValue = 0;
+    for (ScoreDoc scoreDoc : scoreDocs) {
+      if (scoreDoc.doc % 5 == 4) {
+        noValue++;
+      }
+      Explanation explanation = searcher.explain(query, scoreDoc.doc);
+      assertEquals("doc " + scoreDoc.doc, explanation.getValue(), scoreDoc.score, 0.0f);
+    }
+    assertEquals(6, noValue);
+  }
+
+  @Test
+  public void testFacetBasedBoostMatchesExplain() throws Exception {
+    Map<String, Float> boosts = new HashMap<>();
+    boosts.put("red", 3.0f);
+    boosts.put("blue", 2.0f);
+    Map<String, Map<String, Float>> boostMaps = new HashMap<>();
+    boostMaps.put("color", boosts);
+    FacetBasedBoostScorerBuilder builder = new FacetBasedBoostScorerBuilder(boostMaps);
+    Explanation inner = new Explanation(1.0f, "inner");
+
+    int noValue = 0;
+    for (BoboSegmentReader segment : _boboReader.getSubReaders()) {
+      SimpleFacetHandler handler = (SimpleFacetHandler) segment.getFacetHandler("color");
+      BoboDocScorer scorer = handler.getDocScorer(segment,
+        new MultiplicativeFacetTermScoringFunctionFactory(), boosts);
+      OrdinalScoreTable table = scorer.getScoreTable();
+      FacetDataCache<?> dataCache = (FacetDataCache<?>) segment.getFacetData("color");
+      assertEquals(dataCache.valArray.size(), table.size());
+      for (int doc = 0; doc < segment.maxDoc(); ++doc) {
+        if (dataCache.orderArray.get(doc) == 0) {
+          noValue++;
+        }
+        Explanation facetExplanation = builder.explain(segment, doc, inner).getDetails()[0];
+        assertEquals("doc " + doc, facetExplanation.getValue(), table.score(doc), 0.0f);
+        assertEquals(scorer.score(doc), table.score(doc), 0.0f);
+      }
+    }
+    assertEquals(7, noValue);
+  }
+}
@@ -0,0 +1,175 @@
+package com.browseengine.bobo.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.BrowseSelection;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.MultiValueFacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+public class BoboSearcherTest {
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testBatchedFacetCounts() throws Exception {
+    // more hits than a count batch, with and without post filters
+    int numDocs = 2000;
+    int[] colorCounts = new int[7];
+    int[] tagCounts = new int[5];
+    int[] redTagCounts = new int[5];
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", "c" + (i % 7), Store.NO));
+      colorCounts[i % 7]++;
+      doc.add(new StringField("tag", "t" + (i % 5), Store.NO));
+      doc.add(new StringField("tag", "t" + ((i + 2) % 5), Store.NO));
+      tagCounts[i % 5]++;
+      tagCounts[(i + 2) % 5]++;
+      if (i % 7 == 0) {
+        redTagCounts[i % 5]++;
+        redTagCounts[(i + 2) % 5]++;
+      }
+      m_indexWriter.addDocument(doc);
+      if (i == 1200) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new MultiValueFacetHandler("tag") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(0);
+    br.setQuery(new QueryParser(Version.LUCENE_43, "color", new StandardAnalyzer(
+        Version.LUCENE_43)).parse("color:c0 OR color:c1 OR color:c2 OR color:c3 OR color:c4 OR "
+        + "color:c5 OR color:c6"));
+    FacetSpec spec = new FacetSpec();
+    spec.setExpandSelection(true);
+    br.setFacetSpec("color", spec);
+    br.setFacetSpec("tag", spec);
+    BrowseResult result = new BoboBrowser(boboReader).browse(br);
+    assertEquals(numDocs, result.getNumHits());
+    for (int i = 0; i < 7; ++i) {
+      assertEquals(colorCounts[i], result.getFacetAccessor("color").getFacet("c" + i)
+          .getFacetValueHitCount());
+    }
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(tagCounts[i], result.getFacetAccessor("tag").getFacet("t" + i)
+          .getFacetValueHitCount());
+    }
+    result.close();
+
+    BrowseSelection sel = new BrowseSelection("color");
+    sel.addValue("c0");
+    br.addSelection(sel);
+    result = new BoboBrowser(boboReader).browse(br);
+    assertEquals(colorCounts[0], result.getNumHits());
+    for (int i = 0; i < 7; ++i) {
+      assertEquals(colorCounts[i], result.getFacetAccessor("color").getFacet("c" + i)
+          .getFacetValueHitCount());
+    }
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(redTagCounts[i], result.getFacetAccessor("tag").getFacet("t" + i)
+          .getFacetValueHitCount());
+    }
+    result.close();
+    reader.close();
+  }
+
+  @Test
+  public void testDenseCountOnly() throws Exception {
+    for (int i = 0; i < 1500; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("id", String.valueOf(i), Store.NO));
+      doc.add(new StringField("color", "c" + (i % 7), Store.NO));
+      doc.add(new StringField("tag", "t" + (i % 5), Store.NO));
+      doc.add(new StringField("tag", "t" + ((i + 2) % 5), Store.NO));
+      doc.add(new StringField("type", i % 10 == 0 ? "rare" : "common", Store.NO));
+      m_indexWriter.addDocument(doc);
+      if (i == 700) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color"), new MultiValueFacetHandler("tag") });
+
+    // a segment without deletions, then one with
+    for (int pass = 0; pass < 2; ++pass) {
+      DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+      BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+      for (String query : new String[] { "type:common", "type:rare" }) {
+        for (boolean select : new boolean[] { false, true }) {
+          String expected = browseCounts(boboReader, query, select, 10);
+          assertEquals(expected, browseCounts(boboReader, query, select, 0));
+        }
+      }
+      reader.close();
+      for (int i = 0; i < 1500; i += 3) {
+        m_indexWriter.deleteDocuments(new Term("id", String.valueOf(i)));
+      }
+      m_indexWriter.commit();
+    }
+  }
+
+  private static String browseCounts(BoboMultiReader reader, String query, boolean select,
+      int count) throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(count);
+    br.setQuery(new QueryParser(Version.LUCENE_43, "type", new StandardAnalyzer(Version.LUCENE_43))
+        .parse(query));
+    if (select) {
+      BrowseSelection sel = new BrowseSelection("tag");
+      sel.addValue("t1");
+      sel.addValue("t2");
+      br.addSelection(sel);
+    }
+    FacetSpec spec = new FacetSpec();
+    spec.setOrderBy(FacetSpec.FacetSortSpec.OrderValueAsc);
+    br.setFacetSpec("color", spec);
+    br.setFacetSpec("tag", spec);
+    BrowseResult result = new BoboBrowser(reader).browse(br);
+    String counts = result.getNumHits() + " " + result.getFacetAccessor("color").getFacets() + " "
+        + result.getFacetAccessor("tag").getFacets();
+    result.close();
+    return counts;
+  }
+}
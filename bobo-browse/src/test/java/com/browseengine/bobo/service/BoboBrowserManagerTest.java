@@ -0,0 +1,123 @@
+package com.browseengine.bobo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseHit;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.api.FacetSpec;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+public class BoboBrowserManagerTest {
+  private static final String BLUE = "blue";
+  private static final String RED = "red";
+
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testBrowserManager() throws Exception {
+    for (int i = 0; i < 100; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", i % 2 == 0 ? BLUE : RED, Store.NO));
+      m_indexWriter.addDocument(doc);
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("color") });
+    BoboBrowserManager manager = new BoboBrowserManager(DirectoryReader.open(m_indexWriter
+        .getDirectory()), handlerList);
+    BrowseRequest warming = new BrowseRequest();
+    warming.setFacetSpec("color", new FacetSpec());
+    manager.addWarmingRequest(warming);
+    final List<BoboMultiReader> oldReaders = new ArrayList<>();
+    manager.addRefreshListener(new BoboBrowserManager.RefreshListener() {
+      @Override
+      public void afterRefresh(BoboMultiReader oldReader, BoboMultiReader newReader) {
+        oldReaders.add(oldReader);
+      }
+    });
+
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(5);
+    BoboBrowser browser = manager.acquire();
+    assertEquals(100, browser.browse(br).getNumHits());
+    manager.release(browser);
+    // released browsers serve the next requests
+    assertSame(browser, manager.acquire());
+    assertFalse(manager.maybeRefresh());
+
+    for (int i = 0; i < 10; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("color", BLUE, Store.NO));
+      m_indexWriter.addDocument(doc);
+    }
+    m_indexWriter.commit();
+    assertTrue(manager.maybeRefresh());
+    assertEquals(1, oldReaders.size());
+    // the old reader stays open for the browser still acquired on it
+    assertEquals(100, browser.browse(br).getNumHits());
+    assertTrue(oldReaders.get(0).getRefCount() > 0);
+    assertEquals(1, manager.getNumAcquired());
+    manager.release(browser);
+    assertEquals(0, oldReaders.get(0).getRefCount());
+
+    BrowseResult result = manager.browse(br);
+    assertEquals(110, result.getNumHits());
+    assertEquals(0, manager.getNumAcquired());
+
+    // the field values of returned hits outlive the reader they were browsed on
+    m_indexWriter.forceMerge(1);
+    m_indexWriter.commit();
+    assertTrue(manager.maybeRefresh());
+    assertEquals(0, oldReaders.get(1).getRefCount());
+    for (BrowseHit hit : result.getHits()) {
+      assertEquals(hit.getDocid() < 100 && hit.getDocid() % 2 == 1 ? RED : BLUE,
+        hit.getField("color"));
+    }
+    result.close();
+    manager.close();
+    try {
+      manager.acquire();
+      fail("acquired a browser from a closed manager");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package com.browseengine.bobo.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.browseengine.bobo.api.BoboBrowser;
+import com.browseengine.bobo.api.BoboMultiReader;
+import com.browseengine.bobo.api.BrowseCursor;
+import com.browseengine.bobo.api.BrowseHit;
+import com.browseengine.bobo.api.BrowseRequest;
+import com.browseengine.bobo.api.BrowseResult;
+import com.browseengine.bobo.facets.FacetHandler;
+import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
+
+public class SortCollectorImplTest {
+  private IndexWriter m_indexWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_43, new StandardAnalyzer(
+        Version.LUCENE_43));
+    config.setMaxBufferedDocs(1000);
+    m_indexWriter = new IndexWriter(new RAMDirectory(), config);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    m_indexWriter.close();
+  }
+
+  @Test
+  public void testDeepPagesAcrossSegments() throws Exception {
+    Random random = new Random(7);
+    int[] nums = new int[600];
+    for (int i = 0; i < nums.length; ++i) {
+      nums[i] = random.nextInt(97);
+      Document doc = new Document();
+      doc.add(new StringField("num", String.format("%03d", nums[i]), Store.NO));
+      m_indexWriter.addDocument(doc);
+      if (i % 150 == 149) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("num") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+    assertEquals(4, boboReader.getSubReaders().size());
+
+    for (final boolean reverse : new boolean[] { false, true }) {
+      Integer[] expected = new Integer[nums.length];
+      for (int i = 0; i < expected.length; ++i) {
+        expected[i] = i;
+      }
+      final int[] values = nums;
+      Arrays.sort(expected, new java.util.Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          int v = reverse ? values[o2] - values[o1] : values[o1] - values[o2];
+          return v != 0 ? v : o1 - o2;
+        }
+      });
+      for (int offset : new int[] { 0, 95, 400, 590 }) {
+        BrowseRequest br = new BrowseRequest();
+        br.setOffset(offset);
+        br.setCount(10);
+        br.setSort(new SortField[] { new SortField("num", SortField.Type.STRING, reverse) });
+        BrowseResult result = new BoboBrowser(boboReader).browse(br);
+        BrowseHit[] hits = result.getHits();
+        assertEquals(Math.min(10, nums.length - offset), hits.length);
+        for (int i = 0; i < hits.length; ++i) {
+          assertEquals(expected[offset + i].intValue(), hits[i].getDocid());
+        }
+        result.close();
+      }
+    }
+    reader.close();
+  }
+
+  @Test
+  public void testSearchAfter() throws Exception {
+    Random random = new Random(11);
+    for (int i = 0; i < 500; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("num", String.format("%03d", random.nextInt(41)), Store.NO));
+      doc.add(new StringField("tag", "t" + random.nextInt(3), Store.NO));
+      m_indexWriter.addDocument(doc);
+      if (i % 120 == 119) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("num"), new SimpleFacetHandler("tag") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+
+    SortField[][] sorts = new SortField[][] {
+        { new SortField("num", SortField.Type.STRING, true) },
+        { new SortField("tag", SortField.Type.STRING),
+            new SortField("num", SortField.Type.STRING, true) } };
+    for (SortField[] sort : sorts) {
+      BrowseRequest br = new BrowseRequest();
+      br.setCount(500);
+      br.setSort(sort);
+      BrowseResult result = new BoboBrowser(boboReader).browse(br);
+      BrowseHit[] all = result.getHits();
+      assertEquals(500, all.length);
+      result.close();
+
+      // walk the hits page by page with the cursor of the previous page
+      int seen = 0;
+      BrowseCursor cursor = null;
+      while (true) {
+        br = new BrowseRequest();
+        br.setCount(45);
+        br.setSort(sort);
+        br.setSearchAfter(cursor);
+        result = new BoboBrowser(boboReader).browse(br);
+        BrowseHit[] hits = result.getHits();
+        assertEquals(500, result.getNumHits());
+        for (BrowseHit hit : hits) {
+          assertEquals(all[seen++].getDocid(), hit.getDocid());
+        }
+        cursor = result.getCursor();
+        result.close();
+        if (hits.length == 0) {
+          assertNull(cursor);
+          break;
+        }
+      }
+      assertEquals(500, seen);
+    }
+    reader.close();
+  }
+
+  @Test
+  public void testMaxPerGroup() throws Exception {
+    Random random = new Random(5);
+    int[] products = new int[400];
+    int[] prices = new int[products.length];
+    for (int i = 0; i < products.length; ++i) {
+      products[i] = random.nextInt(30);
+      prices[i] = random.nextInt(500);
+      Document doc = new Document();
+      doc.add(new StringField("product", "p" + products[i], Store.NO));
+      doc.add(new StringField("price", String.format("%04d", prices[i]), Store.NO));
+      m_indexWriter.addDocument(doc);
+      if (i % 100 == 99) {
+        m_indexWriter.commit();
+      }
+    }
+    m_indexWriter.commit();
+    List<FacetHandler<?>> handlerList = Arrays.asList(new FacetHandler<?>[] {
+        new SimpleFacetHandler("product"), new SimpleFacetHandler("price") });
+    DirectoryReader reader = DirectoryReader.open(m_indexWriter.getDirectory());
+    BoboMultiReader boboReader = BoboMultiReader.getInstance(reader, handlerList);
+
+    // offers of each product by price then doc id
+    final int[] values = prices;
+    List<List<Integer>> offers = new ArrayList<>();
+    for (int p = 0; p < 30; ++p) {
+      offers.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < products.length; ++i) {
+      offers.get(products[i]).add(i);
+    }
+    java.util.Comparator<Integer> byPrice = new java.util.Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        int v = values[o1] - values[o2];
+        return v != 0 ? v : o1 - o2;
+      }
+    };
+    List<Integer> firstOffers = new ArrayList<>();
+    for (List<Integer> list : offers) {
+      java.util.Collections.sort(list, byPrice);
+      if (!list.isEmpty()) {
+        firstOffers.add(list.get(0));
+      }
+    }
+    java.util.Collections.sort(firstOffers, byPrice);
+
+    BrowseRequest br = new BrowseRequest();
+    br.setOffset(2);
+    br.setCount(8);
+    br.setSort(new SortField[] { new SortField("price", SortField.Type.STRING) });
+    br.setGroupBy(new String[] { "product" });
+    br.setMaxPerGroup(3);
+    BrowseResult result = new BoboBrowser(boboReader).browse(br);
+    BrowseHit[] hits = result.getHits();
+    assertEquals(8, hits.length);
+    for (int i = 0; i < hits.length; ++i) {
+      int first = firstOffers.get(i + 2);
+      assertEquals(first, hits[i].getDocid());
+      List<Integer> expected = offers.get(products[first]);
+      BrowseHit[] groupHits = hits[i].getGroupHits();
+      assertEquals(Math.min(3, expected.size()), groupHits.length);
+      for (int j = 0; j < groupHits.length; ++j) {
+        assertEquals(expected.get(j).intValue(), groupHits[j].getDocid());
+        assertEquals(hits[i].getGroupValue(), groupHits[j].getGroupValue());
+      }
+    }
+    result.close();
+
+    // without max per group only the first hit of each group is returned
+    br.setMaxPerGroup(0);
+    result = new BoboBrowser(boboReader).browse(br);
+    hits = result.getHits();
+    for (int i = 0; i < hits.length; ++i) {
+      assertEquals(firstOffers.get(i + 2).intValue(), hits[i].getDocid());
+      assertNull(hits[i].getGroupHits());
+    }
+    result.close();
+    reader.close();
+  }
+}
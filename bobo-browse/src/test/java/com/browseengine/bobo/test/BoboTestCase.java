@@ -47,6 +47,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
@@ -85,6 +89,7 @@ import com.browseengine.bobo.api.BoboCustomSortField;
 import com.browseengine.bobo.api.BoboMultiReader;
 import com.browseengine.bobo.api.BoboSegmentReader;
 import com.browseengine.bobo.api.Browsable;
+import com.browseengine.bobo.api.BrowseCursor;
 import com.browseengine.bobo.api.BrowseException;
 import com.browseengine.bobo.api.BrowseFacet;
 import com.browseengine.bobo.api.BrowseHit;
@@ -106,6 +111,8 @@ import com.browseengine.bobo.facets.data.FacetDataCache;
 import com.browseengine.bobo.facets.data.FacetDataFetcher;
 import com.browseengine.bobo.facets.data.PredefinedTermListFactory;
 import com.browseengine.bobo.facets.data.TermListFactory;
+import com.browseengine.bobo.facets.filter.FacetFilterCache;
+import com.browseengine.bobo.facets.filter.RandomAccessFilter;
 import com.browseengine.bobo.facets.impl.BucketFacetHandler;
 import com.browseengine.bobo.facets.impl.ComboFacetHandler;
 import com.browseengine.bobo.facets.impl.CompactMultiValueFacetHandler;
@@ -123,12 +130,14 @@ import com.browseengine.bobo.facets.impl.RangeFacetHandler;
 import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
 import com.browseengine.bobo.facets.impl.SimpleGroupbyFacetHandler;
 import com.browseengine.bobo.facets.impl.VirtualSimpleFacetHandler;
+import com.browseengine.bobo.impl.DefaultBrowseServiceImpl;
 import com.browseengine.bobo.index.BoboIndexer;
 import com.browseengine.bobo.index.digest.DataDigester;
 import com.browseengine.bobo.query.FacetBasedBoostScorerBuilder;
 import com.browseengine.bobo.query.RecencyBoostScorerBuilder;
 import com.browseengine.bobo.query.ScoreAdjusterQuery;
 import com.browseengine.bobo.query.scoring.FacetTermQuery;
+import com.browseengine.bobo.service.BrowseResultCache;
 import com.browseengine.bobo.sort.DocComparator;
 import com.browseengine.bobo.sort.DocComparatorSource;
 import com.browseengine.bobo.util.BigSegmentedArray;
@@ -798,6 +807,39 @@ public class BoboTestCase extends TestCase {
 
   }
 
+  public void testFieldsToFetch() throws Exception {
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    br.setOffset(0);
+
+    BrowseSelection storedSel = new BrowseSelection("testStored");
+    storedSel.addValue("stored");
+    br.addSelection(storedSel);
+    br.setFetchStoredFields(true);
+    br.setFieldsToFetch(new HashSet<String>(Arrays.asList("color", "testStored")));
+
+    BoboBrowser boboBrowser = newBrowser();
+    BrowseResult result = boboBrowser.browse(br);
+    boboBrowser.close();
+    assertEquals(1, result.getNumHits());
+    BrowseHit hit = result.getHits()[0];
+
+    // facet values of the projection are resolved on access, after the browser is closed
+    assertEquals("red", hit.getField("color"));
+    assertNull(hit.getField("shape"));
+    assertEquals(br.getFieldsToFetch(), hit.getFieldValues().keySet());
+    assertEquals(br.getFieldsToFetch(), hit.getRawFieldValues().keySet());
+
+    List<SerializableField> storedFields = hit.getStoredFields();
+    Set<String> storedNames = new HashSet<>();
+    for (SerializableField field : storedFields) {
+      storedNames.add(field.name());
+    }
+    assertEquals(br.getFieldsToFetch(), storedNames);
+    assertEquals("stored", hit.getFieldStringValue("testStored"));
+    result.close();
+  }
+
   public void testStoredField() throws Exception {
     BrowseRequest br = new BrowseRequest();
     br.setCount(10);
@@ -1190,6 +1232,35 @@ public class BoboTestCase extends TestCase {
     doTest(br, 2, null, new String[] { "2", "5" });
   }
 
+  public void testParallelFacetLoading() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    BoboMultiReader reader;
+    DirectoryReader srcReader = DirectoryReader.open(_indexDir);
+    try {
+      reader = BoboMultiReader.getInstance(srcReader, _fconf, executor);
+    } finally {
+      executor.shutdown();
+    }
+    BoboSegmentReader expected = newIndexReader().getSubReaders().get(0);
+    for (FacetHandler<?> handler : _fconf) {
+      String name = handler.getName();
+      assertEquals(name, expected.getFacetData(name) == null,
+        reader.getSubReaders().get(0).getFacetData(name) == null);
+    }
+
+    BrowseRequest br = new BrowseRequest();
+    br.setCount(10);
+    br.setOffset(0);
+
+    BrowseSelection sel = new BrowseSelection("colorShape");
+    sel.addValue("color:green");
+    sel.addValue("shape:rectangle");
+    sel.setSelectionOperation(ValueOperation.ValueOperationAnd);
+    br.addSelection(sel);
+
+    doTest(new BoboBrowser(reader), br, 1, null, new String[] { "6" });
+  }
+
   /**
    * This tests GeoSimpleFacetHandler
    * @throws Exception
@@ -2453,6 +2524,296 @@ public class BoboTestCase extends TestCase {
     multiBoboBrowser.close();
   }
 
+  public void testParallelMultiBrowser() throws Exception {
+    BrowseRequest browseRequest = new BrowseRequest();
+    browseRequest.setCount(10);
+    browseRequest.setOffset(0);
+
+    BrowseSelection colorSel = new BrowseSelection("color");
+    colorSel.addValue("red");
+    browseRequest.addSelection(colorSel);
+
+    BrowseSelection tageSel = new BrowseSelection("tag");
+    tageSel.addValue("rabbit");
+    browseRequest.addSelection(tageSel);
+
+    FacetSpec colorFacetSpec = new FacetSpec();
+    colorFacetSpec.setExpandSelection(true);
+    colorFacetSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    browseRequest.setFacetSpec("color", colorFacetSpec);
+    browseRequest.setFacetSpec("tag", new FacetSpec());
+
+    FacetSpec shapeSpec = new FacetSpec();
+    shapeSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    browseRequest.setFacetSpec("shape", shapeSpec);
+
+    FacetSpec dateSpec = new FacetSpec();
+    dateSpec.setExpandSelection(true);
+    browseRequest.setFacetSpec("date", dateSpec);
+
+    browseRequest
+        .setSort(new SortField[] { new SortField("compactnum", SortField.Type.CUSTOM, true) });
+
+    BoboBrowser boboBrowser = newBrowser();
+    MultiBoboBrowser multiBoboBrowser = new MultiBoboBrowser(new Browsable[] { boboBrowser,
+        boboBrowser, boboBrowser });
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    multiBoboBrowser.setExecutorService(executor);
+    try {
+      BrowseResult mergedResult = multiBoboBrowser.browse(browseRequest);
+
+      HashMap<String, List<BrowseFacet>> answer = new HashMap<>();
+      answer.put("color",
+        Arrays.asList(new BrowseFacet[] { new BrowseFacet("red", 6), new BrowseFacet("green", 3) }));
+      answer.put(
+        "tag",
+        Arrays.asList(new BrowseFacet[] { new BrowseFacet("animal", 3), new BrowseFacet("dog", 3),
+            new BrowseFacet("humane", 3), new BrowseFacet("pet", 3), new BrowseFacet("rabbit", 6) }));
+      answer.put("shape", Arrays.asList(new BrowseFacet[] { new BrowseFacet("square", 6) }));
+      answer.put("date",
+        Arrays.asList(new BrowseFacet[] { new BrowseFacet("[2000/01/01 TO 2003/05/05]", 3) }));
+
+      doTest(mergedResult, browseRequest, 6, answer, new String[] { "7", "7", "7", "1", "1", "1" });
+      mergedResult.close();
+    } finally {
+      executor.shutdown();
+      multiBoboBrowser.close();
+    }
+  }
+
+  public void testParallelMultiBrowserInterrupted() throws Exception {
+    BrowseRequest browseRequest = new BrowseRequest();
+    browseRequest.setCount(10);
+    browseRequest.setFacetSpec("color", new FacetSpec());
+
+    BoboBrowser boboBrowser = newBrowser();
+    MultiBoboBrowser multiBoboBrowser = new MultiBoboBrowser(new Browsable[] { boboBrowser,
+        boboBrowser, boboBrowser });
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    multiBoboBrowser.setExecutorService(executor);
+    // keeps the only thread busy, so the segments wait in the queue
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        release.await();
+        return null;
+      }
+    });
+    try {
+      Thread.currentThread().interrupt();
+      try {
+        multiBoboBrowser.browse(browseRequest);
+        fail("browse should fail when interrupted");
+      } catch (BrowseException e) {
+        assertTrue(e.getCause() instanceof InterruptedException);
+      }
+      assertTrue("interrupt flag should be restored", Thread.interrupted());
+    } finally {
+      Thread.interrupted();
+      release.countDown();
+      executor.shutdownNow();
+      multiBoboBrowser.close();
+    }
+  }
+
+  public void testFacetFilterCache() throws Exception {
+    BrowseRequest browseRequest = new BrowseRequest();
+    browseRequest.setCount(10);
+    browseRequest.setOffset(0);
+
+    BrowseSelection colorSel = new BrowseSelection("color");
+    colorSel.addValue("red");
+    browseRequest.addSelection(colorSel);
+
+    BrowseSelection tageSel = new BrowseSelection("tag");
+    tageSel.addValue("rabbit");
+    browseRequest.addSelection(tageSel);
+
+    FacetSpec colorFacetSpec = new FacetSpec();
+    colorFacetSpec.setExpandSelection(true);
+    colorFacetSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    browseRequest.setFacetSpec("color", colorFacetSpec);
+
+    FacetSpec shapeSpec = new FacetSpec();
+    shapeSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    browseRequest.setFacetSpec("shape", shapeSpec);
+
+    HashMap<String, List<BrowseFacet>> answer = new HashMap<>();
+    answer.put("color",
+      Arrays.asList(new BrowseFacet[] { new BrowseFacet("red", 2), new BrowseFacet("green", 1) }));
+    answer.put("shape", Arrays.asList(new BrowseFacet[] { new BrowseFacet("square", 2) }));
+
+    DirectoryReader srcReader = DirectoryReader.open(_indexDir);
+    BoboMultiReader reader = BoboMultiReader.getInstance(srcReader, _fconf);
+    FacetFilterCache filterCache = new FacetFilterCache(100);
+
+    BoboBrowser browser = new BoboBrowser(reader);
+    browser.setFilterCache(filterCache);
+    BrowseResult result = browser.browse(browseRequest);
+    doTest(result, browseRequest, 2, answer, new String[] { "1", "7" });
+    result.close();
+    assertEquals(0, filterCache.getHitCount());
+    long misses = filterCache.getMissCount();
+    assertTrue(misses > 0);
+    assertTrue(filterCache.size() > 0);
+
+    browser = new BoboBrowser(reader);
+    browser.setFilterCache(filterCache);
+    result = browser.browse(browseRequest);
+    doTest(result, browseRequest, 2, answer, new String[] { "1", "7" });
+    result.close();
+    assertEquals(misses, filterCache.getHitCount());
+    assertEquals(misses, filterCache.getMissCount());
+
+    // cached selections are not built again by their handler
+    FacetHandler<?> colorHandler = reader.getSubReaders().get(0).getFacetHandler("color");
+    RandomAccessFilter colorFilter = filterCache.getFilter(colorHandler, colorSel);
+    assertNotNull(colorFilter);
+    assertSame(colorFilter, filterCache.getFilter(colorHandler,
+      new BrowseSelection("color").addValue("red")));
+
+    // entries of a closed segment are dropped
+    srcReader.close();
+    assertEquals(0, filterCache.size());
+  }
+
+  public void testBrowseResultCache() throws Exception {
+    BrowseRequest browseRequest = new BrowseRequest();
+    browseRequest.setCount(10);
+    browseRequest.setOffset(0);
+
+    BrowseSelection colorSel = new BrowseSelection("color");
+    colorSel.addValue("red");
+    browseRequest.addSelection(colorSel);
+
+    BrowseSelection tageSel = new BrowseSelection("tag");
+    tageSel.addValue("rabbit");
+    browseRequest.addSelection(tageSel);
+
+    FacetSpec colorFacetSpec = new FacetSpec();
+    colorFacetSpec.setExpandSelection(true);
+    colorFacetSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    browseRequest.setFacetSpec("color", colorFacetSpec);
+
+    FacetSpec shapeSpec = new FacetSpec();
+    shapeSpec.setOrderBy(FacetSortSpec.OrderHitsDesc);
+    browseRequest.setFacetSpec("shape", shapeSpec);
+
+    HashMap<String, List<BrowseFacet>> answer = new HashMap<>();
+    answer.put("color",
+      Arrays.asList(new BrowseFacet[] { new BrowseFacet("red", 2), new BrowseFacet("green", 1) }));
+    answer.put("shape", Arrays.asList(new BrowseFacet[] { new BrowseFacet("square", 2) }));
+
+    DirectoryReader srcReader = DirectoryReader.open(_indexDir);
+    BoboMultiReader reader = BoboMultiReader.getInstance(srcReader, _fconf);
+    BrowseResultCache resultCache = new BrowseResultCache(10);
+    DefaultBrowseServiceImpl service = new DefaultBrowseServiceImpl(reader);
+    service.setResultCache(resultCache);
+
+    BrowseResult result = service.browse(browseRequest);
+    doTest(result, browseRequest, 2, answer, new String[] { "1", "7" });
+    result.close();
+    assertEquals(0, resultCache.getHitCount());
+    assertEquals(1, resultCache.size());
+
+    // same request built in another order
+    BrowseRequest sameRequest = new BrowseRequest();
+    sameRequest.setCount(10);
+    sameRequest.setFacetSpec("shape", shapeSpec.clone());
+    sameRequest.setFacetSpec("color", colorFacetSpec.clone());
+    sameRequest.addSelection(new BrowseSelection("tag").addValue("rabbit"));
+    sameRequest.addSelection(new BrowseSelection("color").addValue("red"));
+    result = service.browse(sameRequest);
+    doTest(result, sameRequest, 2, answer, new String[] { "1", "7" });
+    result.close();
+    assertEquals(1, resultCache.getHitCount());
+
+    // closing a cached result does not affect the cache
+    result = service.browse(browseRequest);
+    doTest(result, browseRequest, 2, answer, new String[] { "1", "7" });
+    result.close();
+    assertEquals(2, resultCache.getHitCount());
+
+    browseRequest.setOffset(1);
+    result = service.browse(browseRequest);
+    result.close();
+    assertEquals(2, resultCache.getHitCount());
+    assertEquals(2, resultCache.size());
+
+    // stats belong to one execution, requests collecting them are not cached
+    browseRequest.setCollectStats(true);
+    for (int i = 0; i < 2; ++i) {
+      result = service.browse(browseRequest);
+      assertNotNull(result.getStats());
+      result.close();
+    }
+    assertEquals(2, resultCache.getHitCount());
+    assertEquals(2, resultCache.size());
+
+    // swapping in a new reader drops the results of the old one
+    DirectoryReader newSrcReader = DirectoryReader.open(_indexDir);
+    BoboMultiReader newReader = BoboMultiReader.getInstance(newSrcReader, _fconf);
+    assertSame(reader, service.setReader(newReader));
+    assertEquals(0, resultCache.size());
+
+    service.close();
+    srcReader.close();
+    newSrcReader.close();
+  }
+
+  public void testBrowseResultCacheSearchAfter() throws Exception {
+    DirectoryReader srcReader = DirectoryReader.open(_indexDir);
+    BoboMultiReader reader = BoboMultiReader.getInstance(srcReader, _fconf);
+    SortField[] sort = new SortField[] { new SortField("number", SortField.Type.CUSTOM, true) };
+
+    BrowseRequest allRequest = new BrowseRequest();
+    allRequest.setCount(10);
+    allRequest.setSort(sort);
+    BoboBrowser browser = new BoboBrowser(reader);
+    BrowseResult result = browser.browse(allRequest);
+    BrowseHit[] all = result.getHits();
+    result.close();
+    browser.close();
+
+    BrowseResultCache resultCache = new BrowseResultCache(10);
+    DefaultBrowseServiceImpl service = new DefaultBrowseServiceImpl(reader);
+    service.setResultCache(resultCache);
+
+    // every page is browsed twice, the second time from the cache
+    int seen = 0;
+    BrowseCursor cursor = null;
+    for (int page = 0; page < 2; ++page) {
+      BrowseCursor nextCursor = null;
+      for (int pass = 0; pass < 2; ++pass) {
+        BrowseRequest br = new BrowseRequest();
+        br.setCount(3);
+        br.setSort(sort);
+        br.setSearchAfter(cursor);
+        result = service.browse(br);
+        BrowseHit[] hits = result.getHits();
+        assertEquals(3, hits.length);
+        for (int i = 0; i < hits.length; ++i) {
+          assertEquals(all[seen + i].getDocid(), hits[i].getDocid());
+        }
+        assertNotNull(result.getCursor());
+        if (pass == 0) {
+          nextCursor = result.getCursor();
+        } else {
+          assertEquals(nextCursor, result.getCursor());
+        }
+        result.close();
+      }
+      seen += 3;
+      cursor = nextCursor;
+    }
+    assertEquals(2, resultCache.getHitCount());
+    assertEquals(2, resultCache.size());
+
+    service.close();
+    srcReader.close();
+  }
+
   public void testFacetQueryBoost() throws Exception {
     BrowseSelection sel = new BrowseSelection("color");
     sel.addValue("red");
@@ -3,11 +3,15 @@ package com.browseengine.bobo.util.test;
 import junit.framework.TestCase;
 
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.AlreadyClosedException;
 
 import com.browseengine.bobo.util.BigByteArray;
 import com.browseengine.bobo.util.BigIntArray;
 import com.browseengine.bobo.util.BigSegmentedArray;
 import com.browseengine.bobo.util.BigShortArray;
+import com.browseengine.bobo.util.DirectBigByteArray;
+import com.browseengine.bobo.util.DirectBigIntArray;
+import com.browseengine.bobo.util.DirectBigShortArray;
 import com.browseengine.bobo.util.LazyBigIntArray;
 
 public class BigSegmentedArrayTest extends TestCase {
@@ -15,6 +19,9 @@ public class BigSegmentedArrayTest extends TestCase {
   public static void testEmptyArray() {
     emptyArrayTestHelper(new BigIntArray(0));
     emptyArrayTestHelper(new BigByteArray(0));
+    emptyArrayTestHelper(DirectBigIntArray.allocate(0));
+    emptyArrayTestHelper(DirectBigShortArray.allocate(0));
+    emptyArrayTestHelper(DirectBigByteArray.allocate(0));
     emptyArrayTestHelper(new BigShortArray(0));
     emptyArrayTestHelper(new LazyBigIntArray(0));
   }
@@ -29,6 +36,9 @@ public class BigSegmentedArrayTest extends TestCase {
     countUpTestHelper(new LazyBigIntArray(Short.MAX_VALUE * 2));
     countUpTestHelper(new BigShortArray(Short.MAX_VALUE * 2));
     countUpTestHelper(new BigByteArray(Short.MAX_VALUE * 2));
+    countUpTestHelper(DirectBigIntArray.allocate(Short.MAX_VALUE * 2));
+    countUpTestHelper(DirectBigShortArray.allocate(Short.MAX_VALUE * 2));
+    countUpTestHelper(DirectBigByteArray.allocate(Short.MAX_VALUE * 2));
   }
 
   private static void countUpTestHelper(BigSegmentedArray array) {
@@ -44,6 +54,9 @@ public class BigSegmentedArrayTest extends TestCase {
     findValueHelper(new LazyBigIntArray(Short.MAX_VALUE * 2));
     findValueHelper(new BigShortArray(Short.MAX_VALUE * 2));
     findValueHelper(new BigByteArray(Short.MAX_VALUE * 2));
+    findValueHelper(DirectBigIntArray.allocate(Short.MAX_VALUE * 2));
+    findValueHelper(DirectBigShortArray.allocate(Short.MAX_VALUE * 2));
+    findValueHelper(DirectBigByteArray.allocate(Short.MAX_VALUE * 2));
   }
 
   private static void findValueHelper(BigSegmentedArray array) {
@@ -67,6 +80,9 @@ public class BigSegmentedArrayTest extends TestCase {
     findValueRangeHelper(new LazyBigIntArray(Short.MAX_VALUE * 2));
     findValueRangeHelper(new BigShortArray(Short.MAX_VALUE * 2));
     findValueRangeHelper(new BigByteArray(Short.MAX_VALUE * 2));
+    findValueRangeHelper(DirectBigIntArray.allocate(Short.MAX_VALUE * 2));
+    findValueRangeHelper(DirectBigShortArray.allocate(Short.MAX_VALUE * 2));
+    findValueRangeHelper(DirectBigByteArray.allocate(Short.MAX_VALUE * 2));
   }
 
   private static void findValueRangeHelper(BigSegmentedArray array) {
@@ -90,6 +106,9 @@ public class BigSegmentedArrayTest extends TestCase {
     fillTestHelper(new LazyBigIntArray(Short.MAX_VALUE << 1));
     fillTestHelper(new BigShortArray(Short.MAX_VALUE << 1));
     fillTestHelper(new BigByteArray(Short.MAX_VALUE << 1));
+    fillTestHelper(DirectBigIntArray.allocate(Short.MAX_VALUE << 1));
+    fillTestHelper(DirectBigShortArray.allocate(Short.MAX_VALUE << 1));
+    fillTestHelper(DirectBigByteArray.allocate(Short.MAX_VALUE << 1));
   }
 
   private static void fillTestHelper(BigSegmentedArray array) {
@@ -121,4 +140,23 @@ public class BigSegmentedArrayTest extends TestCase {
     return array;
   }
 
+  public static void testCloseDirectArray() {
+    DirectBigIntArray array = DirectBigIntArray.allocate(Short.MAX_VALUE);
+    array.add(100, 7);
+    assertEquals(7, array.get(100));
+    array.close();
+    array.close();
+    try {
+      array.get(100);
+      fail("closed array must not be readable");
+    } catch (AlreadyClosedException e) {
+      // expected
+    }
+    try {
+      array.add(100, 8);
+      fail("closed array must not be writable");
+    } catch (AlreadyClosedException e) {
+      // expected
+    }
+  }
 }